@@ -0,0 +1,115 @@
+package com.stripe.build.dependencyanalyzer.analysis;
+
+import com.google.common.primitives.Ints;
+import com.stripe.build.dependencyanalyzer.database.Database;
+import com.stripe.build.dependencyanalyzer.database.Database.IdPairConsumer;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * A {@link DependencyGraphStore} backed by the database, whose ids are the database ids. Every
+ * table that is looked up by id is streamed once into a map when the store is loaded, while the
+ * imported symbols and dependency edges are streamed from the database on every pass.
+ */
+public class DatabaseGraphStore implements DependencyGraphStore {
+
+  private final Database database;
+  private final Map<Integer, BazelTarget> targetIdToBazelTarget = new HashMap<>();
+  private final Map<String, Integer> targetLabelToTargetId = new HashMap<>();
+  private final Map<Integer, String> symbolIdToFullyQualifiedName = new HashMap<>();
+  private final Map<Integer, Integer> symbolIdToExporterFileId = new HashMap<>();
+  private final Map<Integer, int[]> fileIdToTargetIds = new HashMap<>();
+  private final Map<Integer, int[]> exportedTargetIdToExporterTargetIds = new HashMap<>();
+
+  /**
+   * Reads the tables of the dependency graph that are looked up by id from the database.
+   *
+   * @param database database containing the dependency graph
+   * @return a store that reads the remaining tables from the database as they are needed
+   */
+  public static DatabaseGraphStore load(Database database) {
+    return new DatabaseGraphStore(database);
+  }
+
+  private DatabaseGraphStore(Database database) {
+    this.database = database;
+    database.forEachBazelTarget(
+        (targetId, targetLabel) -> {
+          targetIdToBazelTarget.put(targetId, new BazelTarget(targetId, targetLabel));
+          targetLabelToTargetId.put(targetLabel, targetId);
+        });
+    database.forEachSymbol(symbolIdToFullyQualifiedName::put);
+    database.forEachJavaFileExportedSymbol(
+        (fileId, symbolId) -> symbolIdToExporterFileId.put(symbolId, fileId));
+
+    Map<Integer, List<Integer>> fileTargets = new HashMap<>();
+    database.forEachJavaFileBazelTarget(
+        (fileId, targetId) ->
+            fileTargets.computeIfAbsent(fileId, k -> new ArrayList<>()).add(targetId));
+    fileTargets.forEach(
+        (fileId, targetIds) -> fileIdToTargetIds.put(fileId, Ints.toArray(targetIds)));
+
+    Map<Integer, List<Integer>> exporters = new HashMap<>();
+    database.forEachBazelExportEdge(
+        (exporterTargetId, exportedTargetId) ->
+            exporters
+                .computeIfAbsent(exportedTargetId, k -> new ArrayList<>())
+                .add(exporterTargetId));
+    exporters.forEach(
+        (targetId, exporterIds) ->
+            exportedTargetIdToExporterTargetIds.put(targetId, Ints.toArray(exporterIds)));
+  }
+
+  @Override
+  public Optional<String> getMetadata(String key) {
+    return database.getMetadata(key);
+  }
+
+  @Override
+  public BazelTarget getTarget(int targetId) {
+    return Objects.requireNonNull(targetIdToBazelTarget.get(targetId));
+  }
+
+  @Override
+  public OptionalInt findTargetId(String targetLabel) {
+    Integer targetId = targetLabelToTargetId.get(targetLabel);
+    return targetId == null ? OptionalInt.empty() : OptionalInt.of(targetId);
+  }
+
+  @Override
+  public String getSymbolName(int symbolId) {
+    return Objects.requireNonNull(symbolIdToFullyQualifiedName.get(symbolId));
+  }
+
+  @Override
+  public OptionalInt getExporterFileId(int symbolId) {
+    Integer fileId = symbolIdToExporterFileId.get(symbolId);
+    return fileId == null ? OptionalInt.empty() : OptionalInt.of(fileId);
+  }
+
+  @Override
+  public int[] getTargetIdsOfFile(int fileId) {
+    return Objects.requireNonNull(fileIdToTargetIds.get(fileId));
+  }
+
+  @Override
+  public int[] getExporterTargetIds(int exportedTargetId) {
+    return exportedTargetIdToExporterTargetIds.getOrDefault(exportedTargetId, new int[0]);
+  }
+
+  @Override
+  public void forEachImportedSymbol(IdPairConsumer consumer) {
+    database.forEachJavaFileImportedSymbol(consumer);
+  }
+
+  @Override
+  public void forEachDependencyEdge(IdPairConsumer consumer) {
+    database.forEachBazelEdge(consumer);
+  }
+}
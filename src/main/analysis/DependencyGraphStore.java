@@ -0,0 +1,41 @@
+package com.stripe.build.dependencyanalyzer.analysis;
+
+import com.stripe.build.dependencyanalyzer.database.Database.IdPairConsumer;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * The collected dependency graph that {@link UnusedDepsAnalyzer} runs against, either read from
+ * the database or memory-mapped from a {@link GraphSnapshot}. Targets, Java files and symbols are
+ * identified by int ids that are only meaningful within one store.
+ */
+public interface DependencyGraphStore {
+
+  /** Gets a metadata value that the database was collected with, like its symbol granularity. */
+  Optional<String> getMetadata(String key);
+
+  /** Gets a target by its id in this store, with the id it has in the database. */
+  BazelTarget getTarget(int targetId);
+
+  /** Finds the id of the target with a label, if it was collected. */
+  OptionalInt findTargetId(String targetLabel);
+
+  /** Gets the fully qualified name of a symbol. */
+  String getSymbolName(int symbolId);
+
+  /** Gets the id of the first-party Java file that exports a symbol, if it isn't third-party. */
+  OptionalInt getExporterFileId(int symbolId);
+
+  /** Gets the ids of the targets that have a Java file in their sources. */
+  int[] getTargetIdsOfFile(int fileId);
+
+  /** Gets the ids of the targets that export a target via the 'exports' Bazel rule attribute. */
+  int[] getExporterTargetIds(int exportedTargetId);
+
+  /** Streams the file id and symbol id of every symbol imported by a Java file. */
+  void forEachImportedSymbol(IdPairConsumer consumer);
+
+  /** Streams the from and to target ids of every dependency edge specified by a BUILD file. */
+  void forEachDependencyEdge(IdPairConsumer consumer);
+}
@@ -0,0 +1,263 @@
+package com.stripe.build.dependencyanalyzer.analysis;
+
+import com.stripe.build.dependencyanalyzer.database.Database.IdPairConsumer;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * A {@link DependencyGraphStore} memory-mapped from a snapshot file written by {@link
+ * GraphSnapshotWriter}, so that opening it reads nothing but its header, and repeated runs share
+ * the pages that the operating system has already cached.
+ *
+ * <p>The snapshot is columnar. Targets, Java files and symbols are numbered from 0, targets in the
+ * order of their labels, so that a label is found with a binary search. Labels, names and metadata
+ * are UTF-8 strings in an arena indexed by an array of offsets, and each relation is stored in
+ * compressed sparse row form: an array of offsets into an array of ids, indexed by the id that
+ * the relation is looked up with.
+ *
+ * <p>The file starts with {@link #MAGIC}, {@link #VERSION} and the number of sections, followed by
+ * the offset and length in bytes of every {@link Section}. All values are big-endian. Each section
+ * is mapped on its own, so none can be larger than 2GB.
+ */
+public final class GraphSnapshot implements DependencyGraphStore {
+
+  /** "UDGS", for unused deps graph snapshot. */
+  static final int MAGIC = 0x55444753;
+
+  static final int VERSION = 1;
+
+  /** The sections of a snapshot, in the order of their entries in the header. */
+  enum Section {
+    /** The database id of each target. */
+    TARGET_DATABASE_IDS,
+    TARGET_LABEL_OFFSETS,
+    TARGET_LABELS,
+    SYMBOL_NAME_OFFSETS,
+    SYMBOL_NAMES,
+    /** The file that exports each symbol, or -1 for a third-party symbol. */
+    SYMBOL_EXPORTER_FILES,
+    FILE_TARGET_OFFSETS,
+    FILE_TARGETS,
+    TARGET_DEPENDENCY_OFFSETS,
+    TARGET_DEPENDENCIES,
+    /** Exporters of each target, which is the reverse of the export edges. */
+    TARGET_EXPORTER_OFFSETS,
+    TARGET_EXPORTERS,
+    FILE_IMPORT_OFFSETS,
+    FILE_IMPORTS,
+    /** Keys and values of the metadata, alternating. */
+    METADATA_OFFSETS,
+    METADATA
+  }
+
+  static final int HEADER_SIZE = 3 * Integer.BYTES + Section.values().length * 2 * Long.BYTES;
+
+  private final IntBuffer targetDatabaseIds;
+  private final StringColumn targetLabels;
+  private final StringColumn symbolNames;
+  private final IntBuffer symbolExporterFiles;
+  private final AdjacencyColumn fileTargets;
+  private final AdjacencyColumn targetDependencies;
+  private final AdjacencyColumn targetExporters;
+  private final AdjacencyColumn fileImports;
+  private final StringColumn metadata;
+
+  /**
+   * Memory-maps a snapshot.
+   *
+   * @param snapshotFile a file written by {@link GraphSnapshotWriter}
+   * @return the snapshot, whose sections stay mapped for as long as it is reachable
+   * @throws IOException if error reading the header, or the file is not a snapshot of this version
+   */
+  public static GraphSnapshot open(Path snapshotFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_SIZE) {
+        throw new IOException(snapshotFile + " is too small to be a graph snapshot");
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException(snapshotFile + " is not a graph snapshot");
+      }
+      int version = header.getInt();
+      int sectionCount = header.getInt();
+      if (version != VERSION || sectionCount != Section.values().length) {
+        throw new IOException(
+            String.format(
+                "%s is a graph snapshot of version %d, but version %d is supported",
+                snapshotFile, version, VERSION));
+      }
+      Map<Section, ByteBuffer> sections = new EnumMap<>(Section.class);
+      for (Section section : Section.values()) {
+        long offset = header.getLong();
+        long length = header.getLong();
+        if (offset < HEADER_SIZE || length < 0 || offset + length > fileSize) {
+          throw new IOException(
+              String.format("%s has a truncated %s section", snapshotFile, section));
+        }
+        sections.put(section, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+      }
+      return new GraphSnapshot(sections);
+    }
+  }
+
+  /** Checks whether a file starts like a snapshot, rather than like a database. */
+  public static boolean isSnapshotFile(Path file) throws IOException {
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      byte[] magic = inputStream.readNBytes(Integer.BYTES);
+      return magic.length == Integer.BYTES && ByteBuffer.wrap(magic).getInt() == MAGIC;
+    }
+  }
+
+  private GraphSnapshot(Map<Section, ByteBuffer> sections) {
+    this.targetDatabaseIds = sections.get(Section.TARGET_DATABASE_IDS).asIntBuffer();
+    this.targetLabels =
+        new StringColumn(
+            sections.get(Section.TARGET_LABEL_OFFSETS), sections.get(Section.TARGET_LABELS));
+    this.symbolNames =
+        new StringColumn(
+            sections.get(Section.SYMBOL_NAME_OFFSETS), sections.get(Section.SYMBOL_NAMES));
+    this.symbolExporterFiles = sections.get(Section.SYMBOL_EXPORTER_FILES).asIntBuffer();
+    this.fileTargets =
+        new AdjacencyColumn(
+            sections.get(Section.FILE_TARGET_OFFSETS), sections.get(Section.FILE_TARGETS));
+    this.targetDependencies =
+        new AdjacencyColumn(
+            sections.get(Section.TARGET_DEPENDENCY_OFFSETS),
+            sections.get(Section.TARGET_DEPENDENCIES));
+    this.targetExporters =
+        new AdjacencyColumn(
+            sections.get(Section.TARGET_EXPORTER_OFFSETS), sections.get(Section.TARGET_EXPORTERS));
+    this.fileImports =
+        new AdjacencyColumn(
+            sections.get(Section.FILE_IMPORT_OFFSETS), sections.get(Section.FILE_IMPORTS));
+    this.metadata =
+        new StringColumn(sections.get(Section.METADATA_OFFSETS), sections.get(Section.METADATA));
+  }
+
+  @Override
+  public Optional<String> getMetadata(String key) {
+    for (int i = 0; i + 1 < metadata.size(); i += 2) {
+      if (metadata.get(i).equals(key)) {
+        return Optional.of(metadata.get(i + 1));
+      }
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public BazelTarget getTarget(int targetId) {
+    return new BazelTarget(targetDatabaseIds.get(targetId), targetLabels.get(targetId));
+  }
+
+  @Override
+  public OptionalInt findTargetId(String targetLabel) {
+    int low = 0;
+    int high = targetLabels.size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = targetLabels.get(middle).compareTo(targetLabel);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return OptionalInt.of(middle);
+      }
+    }
+    return OptionalInt.empty();
+  }
+
+  @Override
+  public String getSymbolName(int symbolId) {
+    return symbolNames.get(symbolId);
+  }
+
+  @Override
+  public OptionalInt getExporterFileId(int symbolId) {
+    int fileId = symbolExporterFiles.get(symbolId);
+    return fileId < 0 ? OptionalInt.empty() : OptionalInt.of(fileId);
+  }
+
+  @Override
+  public int[] getTargetIdsOfFile(int fileId) {
+    return fileTargets.get(fileId);
+  }
+
+  @Override
+  public int[] getExporterTargetIds(int exportedTargetId) {
+    return targetExporters.get(exportedTargetId);
+  }
+
+  @Override
+  public void forEachImportedSymbol(IdPairConsumer consumer) {
+    fileImports.forEach(consumer);
+  }
+
+  @Override
+  public void forEachDependencyEdge(IdPairConsumer consumer) {
+    targetDependencies.forEach(consumer);
+  }
+
+  /** Strings in a UTF-8 arena, where string i spans from offset i to offset i + 1. */
+  private static final class StringColumn {
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+
+    StringColumn(ByteBuffer offsets, ByteBuffer bytes) {
+      this.offsets = offsets.asIntBuffer();
+      this.bytes = bytes;
+    }
+
+    int size() {
+      return Math.max(offsets.limit() - 1, 0);
+    }
+
+    String get(int index) {
+      int start = offsets.get(index);
+      byte[] string = new byte[offsets.get(index + 1) - start];
+      // a duplicate, since the position of a shared buffer must not change
+      bytes.duplicate().position(start).get(string);
+      return new String(string, StandardCharsets.UTF_8);
+    }
+  }
+
+  /** A relation in compressed sparse row form, where row i spans from offset i to offset i + 1. */
+  private static final class AdjacencyColumn {
+    private final IntBuffer offsets;
+    private final IntBuffer ids;
+
+    AdjacencyColumn(ByteBuffer offsets, ByteBuffer ids) {
+      this.offsets = offsets.asIntBuffer();
+      this.ids = ids.asIntBuffer();
+    }
+
+    int[] get(int row) {
+      int start = offsets.get(row);
+      int[] rowIds = new int[offsets.get(row + 1) - start];
+      ids.duplicate().position(start).get(rowIds);
+      return rowIds;
+    }
+
+    void forEach(IdPairConsumer consumer) {
+      for (int row = 0; row + 1 < offsets.limit(); row++) {
+        int end = offsets.get(row + 1);
+        for (int i = offsets.get(row); i < end; i++) {
+          consumer.accept(row, ids.get(i));
+        }
+      }
+    }
+  }
+}
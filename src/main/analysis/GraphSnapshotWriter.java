@@ -0,0 +1,243 @@
+package com.stripe.build.dependencyanalyzer.analysis;
+
+import com.google.common.primitives.ImmutableIntArray;
+import com.stripe.build.dependencyanalyzer.analysis.GraphSnapshot.Section;
+import com.stripe.build.dependencyanalyzer.database.Database;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the dependency graph in a database to a {@link GraphSnapshot}, renumbering its targets,
+ * Java files and symbols from 0. Every table is streamed from the database once.
+ */
+public class GraphSnapshotWriter {
+
+  private GraphSnapshotWriter() {}
+
+  /**
+   * Writes a snapshot of the dependency graph in the database. The snapshot is written next to the
+   * file and then moved over it, so that a run that has the old snapshot mapped keeps reading it.
+   *
+   * @param database database containing the dependency graph
+   * @param snapshotFile file to write the snapshot to, which is replaced if it exists
+   * @return how long writing the snapshot took
+   * @throws IOException if error writing the snapshot, or a section is too large for it
+   */
+  public static Duration write(Database database, Path snapshotFile) throws IOException {
+    Instant startTime = Clock.systemUTC().instant();
+    Map<Section, Object> sections = new EnumMap<>(Section.class);
+
+    // targets are numbered in the order of their labels, so that they can be binary searched
+    List<BazelTarget> targets = new ArrayList<>();
+    database.forEachBazelTarget(
+        (targetId, targetLabel) -> targets.add(new BazelTarget(targetId, targetLabel)));
+    targets.sort(Comparator.comparing(BazelTarget::getTargetLabel));
+    DenseIds targetIds = new DenseIds();
+    StringColumnBuilder targetLabels = new StringColumnBuilder();
+    for (BazelTarget target : targets) {
+      targetIds.add(target.getTargetId());
+      targetLabels.add(target.getTargetLabel());
+    }
+    sections.put(
+        Section.TARGET_DATABASE_IDS,
+        targets.stream().mapToInt(BazelTarget::getTargetId).toArray());
+    targets.clear();
+    targetLabels.putSections(sections, Section.TARGET_LABEL_OFFSETS, Section.TARGET_LABELS);
+
+    DenseIds symbolIds = new DenseIds();
+    StringColumnBuilder symbolNames = new StringColumnBuilder();
+    database.forEachSymbol(
+        (symbolId, name) -> {
+          symbolIds.add(symbolId);
+          symbolNames.add(name);
+        });
+    symbolNames.putSections(sections, Section.SYMBOL_NAME_OFFSETS, Section.SYMBOL_NAMES);
+
+    DenseIds fileIds = new DenseIds();
+    database.forEachJavaFile((fileId, filePath) -> fileIds.add(fileId));
+
+    int[] symbolExporterFiles = new int[symbolIds.size()];
+    Arrays.fill(symbolExporterFiles, -1);
+    database.forEachJavaFileExportedSymbol(
+        (fileId, symbolId) ->
+            symbolExporterFiles[symbolIds.get(symbolId)] = fileIds.get(fileId));
+    sections.put(Section.SYMBOL_EXPORTER_FILES, symbolExporterFiles);
+
+    AdjacencyColumnBuilder fileTargets = new AdjacencyColumnBuilder(fileIds.size());
+    database.forEachJavaFileBazelTarget(
+        (fileId, targetId) -> fileTargets.add(fileIds.get(fileId), targetIds.get(targetId)));
+    fileTargets.putSections(sections, Section.FILE_TARGET_OFFSETS, Section.FILE_TARGETS);
+
+    AdjacencyColumnBuilder dependencies = new AdjacencyColumnBuilder(targetIds.size());
+    database.forEachBazelEdge(
+        (fromTargetId, toTargetId) ->
+            dependencies.add(targetIds.get(fromTargetId), targetIds.get(toTargetId)));
+    dependencies.putSections(
+        sections, Section.TARGET_DEPENDENCY_OFFSETS, Section.TARGET_DEPENDENCIES);
+
+    AdjacencyColumnBuilder exporters = new AdjacencyColumnBuilder(targetIds.size());
+    database.forEachBazelExportEdge(
+        (exporterTargetId, exportedTargetId) ->
+            exporters.add(targetIds.get(exportedTargetId), targetIds.get(exporterTargetId)));
+    exporters.putSections(sections, Section.TARGET_EXPORTER_OFFSETS, Section.TARGET_EXPORTERS);
+
+    AdjacencyColumnBuilder imports = new AdjacencyColumnBuilder(fileIds.size());
+    database.forEachJavaFileImportedSymbol(
+        (fileId, symbolId) -> imports.add(fileIds.get(fileId), symbolIds.get(symbolId)));
+    imports.putSections(sections, Section.FILE_IMPORT_OFFSETS, Section.FILE_IMPORTS);
+
+    StringColumnBuilder metadata = new StringColumnBuilder();
+    database
+        .getAllMetadata()
+        .forEach(
+            (key, value) -> {
+              metadata.add(key);
+              metadata.add(value);
+            });
+    metadata.putSections(sections, Section.METADATA_OFFSETS, Section.METADATA);
+
+    Path temporaryFile =
+        Files.createTempFile(
+            snapshotFile.toAbsolutePath().getParent(), snapshotFile.getFileName() + ".", ".tmp");
+    try {
+      writeSections(sections, temporaryFile);
+      Files.move(
+          temporaryFile,
+          snapshotFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+    return Duration.between(startTime, Clock.systemUTC().instant());
+  }
+
+  private static void writeSections(Map<Section, Object> sections, Path file) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(GraphSnapshot.MAGIC);
+      out.writeInt(GraphSnapshot.VERSION);
+      out.writeInt(Section.values().length);
+      long offset = GraphSnapshot.HEADER_SIZE;
+      for (Section section : Section.values()) {
+        long length = getByteLength(sections.get(section));
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException(
+              String.format("The %s section of %d bytes is too large to map", section, length));
+        }
+        out.writeLong(offset);
+        out.writeLong(length);
+        offset += length;
+      }
+      for (Section section : Section.values()) {
+        Object values = sections.get(section);
+        if (values instanceof int[]) {
+          for (int value : (int[]) values) {
+            out.writeInt(value);
+          }
+        } else {
+          out.write((byte[]) values);
+        }
+      }
+    }
+  }
+
+  private static long getByteLength(Object values) {
+    return values instanceof int[]
+        ? (long) ((int[]) values).length * Integer.BYTES
+        : ((byte[]) values).length;
+  }
+
+  /** Numbers database ids from 0 in the order they are added. */
+  private static final class DenseIds {
+    private int[] indexById = new int[0];
+    private int size;
+
+    void add(int databaseId) {
+      if (databaseId >= indexById.length) {
+        int length = Math.max(databaseId + 1, indexById.length * 2);
+        int oldLength = indexById.length;
+        indexById = Arrays.copyOf(indexById, length);
+        Arrays.fill(indexById, oldLength, length, -1);
+      }
+      indexById[databaseId] = size++;
+    }
+
+    int get(int databaseId) {
+      if (databaseId < 0 || databaseId >= indexById.length || indexById[databaseId] < 0) {
+        throw new IllegalStateException("Reference to missing row with id " + databaseId);
+      }
+      return indexById[databaseId];
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  private static final class StringColumnBuilder {
+    private final ImmutableIntArray.Builder offsets = ImmutableIntArray.builder().add(0);
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    void add(String string) {
+      bytes.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+      offsets.add(bytes.size());
+    }
+
+    void putSections(Map<Section, Object> sections, Section offsetsSection, Section bytesSection) {
+      sections.put(offsetsSection, offsets.build().toArray());
+      sections.put(bytesSection, bytes.toByteArray());
+    }
+  }
+
+  /** Collects the pairs of a relation, and sorts them into rows with a counting sort. */
+  private static final class AdjacencyColumnBuilder {
+    private final int rowCount;
+    private final ImmutableIntArray.Builder rows = ImmutableIntArray.builder();
+    private final ImmutableIntArray.Builder ids = ImmutableIntArray.builder();
+
+    AdjacencyColumnBuilder(int rowCount) {
+      this.rowCount = rowCount;
+    }
+
+    void add(int row, int id) {
+      rows.add(row);
+      ids.add(id);
+    }
+
+    void putSections(Map<Section, Object> sections, Section offsetsSection, Section idsSection) {
+      ImmutableIntArray pairRows = rows.build();
+      ImmutableIntArray pairIds = ids.build();
+      int[] offsets = new int[rowCount + 1];
+      for (int i = 0; i < pairRows.length(); i++) {
+        offsets[pairRows.get(i) + 1]++;
+      }
+      for (int row = 0; row < rowCount; row++) {
+        offsets[row + 1] += offsets[row];
+      }
+      int[] sortedIds = new int[pairIds.length()];
+      int[] next = Arrays.copyOf(offsets, rowCount);
+      for (int i = 0; i < pairRows.length(); i++) {
+        sortedIds[next[pairRows.get(i)]++] = pairIds.get(i);
+      }
+      sections.put(offsetsSection, offsets);
+      sections.put(idsSection, sortedIds);
+    }
+  }
+}
@@ -1,21 +1,34 @@
 package com.stripe.build.dependencyanalyzer.bazel;
 
 import com.google.auto.value.AutoValue;
+import java.nio.file.Path;
 import java.time.Duration;
 
 @AutoValue
 public abstract class BazelBuildResult {
   public abstract String getBazelOutput();
 
+  public abstract int getExitCode();
+
   public abstract Duration getTimeElapsed();
 
-  public static BazelBuildResult create(String bazelOutput, Duration timeElapsed) {
-    return new AutoValue_BazelBuildResult(bazelOutput, timeElapsed);
+  /** File that Bazel wrote the build events to, with {@code --build_event_json_file}. */
+  public abstract Path getBuildEventFile();
+
+  public static BazelBuildResult create(
+      String bazelOutput, int exitCode, Duration timeElapsed, Path buildEventFile) {
+    return new AutoValue_BazelBuildResult(bazelOutput, exitCode, timeElapsed, buildEventFile);
+  }
+
+  public boolean isSuccess() {
+    return getExitCode() == 0;
   }
 
   @Override
   public final String toString() {
-    return "Bazel build completed\n"
+    return (isSuccess()
+            ? "Bazel build completed\n"
+            : String.format("Bazel build failed with exit code %d\n", getExitCode()))
         + String.format("Time elapsed: %d seconds\n", getTimeElapsed().getSeconds());
   }
 }
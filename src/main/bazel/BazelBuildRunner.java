@@ -2,14 +2,12 @@ package com.stripe.build.dependencyanalyzer.bazel;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Clock;
-import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import org.apache.commons.io.IOUtils;
 
 public class BazelBuildRunner {
 
@@ -22,31 +20,46 @@ public class BazelBuildRunner {
   public static BazelBuildResult runBuild(
       String target, List<String> bazelFlags, Path bazelWorkspace, boolean streamOutput)
       throws IOException, InterruptedException {
-    return new BazelBuildRunner(bazelWorkspace).run(target, bazelFlags, streamOutput);
+    return startBuild(target, bazelFlags, bazelWorkspace, streamOutput).awaitResult();
   }
 
-  private BazelBuildResult run(String target, List<String> bazelFlags, boolean streamOutput)
-      throws IOException, InterruptedException {
+  /**
+   * Starts a build without waiting for it to finish, so that its build events can be read while
+   * it is running.
+   */
+  public static RunningBazelBuild startBuild(
+      String target, List<String> bazelFlags, Path bazelWorkspace, boolean streamOutput)
+      throws IOException {
+    return startBuild(List.of(target), bazelFlags, bazelWorkspace, streamOutput);
+  }
+
+  /** Starts a build of several target labels or patterns at once, like a shard of a pattern. */
+  public static RunningBazelBuild startBuild(
+      List<String> targets, List<String> bazelFlags, Path bazelWorkspace, boolean streamOutput)
+      throws IOException {
+    return new BazelBuildRunner(bazelWorkspace).start(targets, bazelFlags, streamOutput);
+  }
+
+  private RunningBazelBuild start(
+      List<String> targets, List<String> bazelFlags, boolean streamOutput) throws IOException {
     Instant startTime = Clock.systemUTC().instant();
+    // the build events name the exact outputs of every target, so that they don't have to be
+    // searched for in the bazel-bin
+    Path buildEventFile = Files.createTempFile("unused_deps", ".build_events.json");
+    buildEventFile.toFile().deleteOnExit();
     List<String> args = new ArrayList<>();
     args.add("bazel");
     args.add("build");
-    args.add(target);
+    args.addAll(targets);
     args.addAll(bazelFlags);
+    args.add("--build_event_json_file=" + buildEventFile);
     System.out.println("Running " + String.join(" ", args));
     var buildProcBuilder =
         new ProcessBuilder().directory(new File(bazelWorkspace.toString())).command(args);
-
-    String bazelOutput;
     if (streamOutput) {
-      Process buildProc = buildProcBuilder.inheritIO().start();
-      buildProc.waitFor();
-      bazelOutput = "Streamed above.";
-    } else {
-      Process buildProc = buildProcBuilder.start();
-      bazelOutput = IOUtils.toString(buildProc.getErrorStream(), StandardCharsets.UTF_8).trim();
+      buildProcBuilder.inheritIO();
     }
-    Instant endTime = Clock.systemUTC().instant();
-    return BazelBuildResult.create(bazelOutput, Duration.between(startTime, endTime));
+    return new RunningBazelBuild(
+        buildProcBuilder.start(), startTime, buildEventFile, streamOutput);
   }
 }
@@ -1,6 +1,7 @@
 package com.stripe.build.dependencyanalyzer.bazel;
 
 import com.google.auto.value.AutoValue;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -10,6 +11,10 @@ import java.util.Optional;
  */
 @AutoValue
 public abstract class BazelRuleLabel {
+
+  /** Target names that stand for every target of a package in a target pattern. */
+  private static final List<String> WILDCARD_TARGET_NAMES = List.of("all", "*", "all-targets");
+
   public abstract String value();
 
   public static BazelRuleLabel of(String value) {
@@ -29,4 +34,73 @@ public abstract class BazelRuleLabel {
 
     return Optional.of(BazelRuleLabel.of(value));
   }
+
+  /** Package of a label in the main repository, like {@code src/foo} for {@code //src/foo:bar}. */
+  public String getPackage() {
+    String label = value().substring(value().indexOf("//") + "//".length());
+    int colon = label.indexOf(':');
+    return colon < 0 ? label : label.substring(0, colon);
+  }
+
+  /**
+   * Checks that a target pattern is one that {@link #isInTargetPattern} can match, and rewrites it
+   * to its shortest form: {@code @//foo/...:all} becomes {@code //foo/...}.
+   *
+   * @param pattern a single target pattern of the main repository, like {@code //foo/...}, {@code
+   *     //foo/...:all}, {@code //foo:all} or {@code //foo:bar}
+   * @return the pattern, without a leading {@code @} or a wildcard after {@code /...}
+   * @throws IllegalArgumentException if the pattern has another form
+   */
+  public static String normalizeTargetPattern(String pattern) {
+    // "@//foo" and "@@//foo" name the main repository too
+    String normalized = pattern.replaceFirst("^@@?//", "//");
+    for (String name : WILDCARD_TARGET_NAMES) {
+      if (normalized.endsWith("/...:" + name)) {
+        normalized = normalized.substring(0, normalized.length() - name.length() - 1);
+      }
+    }
+    if (!normalized.startsWith("//")
+        || (normalized.contains("...") && !normalized.endsWith("/..."))) {
+      throw new IllegalArgumentException(
+          "Target pattern must be a single pattern of the main repository, like //foo/...,"
+              + " //foo/...:all, //foo:all or //foo:bar, got "
+              + pattern);
+    }
+    return normalized;
+  }
+
+  /**
+   * Whether this label matches a target pattern like {@code //foo/...}, {@code //foo:all} or
+   * {@code //foo:bar}, the same way the analyzer aspect matches the pattern it stops at.
+   *
+   * @throws IllegalArgumentException if the pattern has a form that {@link
+   *     #normalizeTargetPattern} rejects
+   */
+  public boolean isInTargetPattern(String targetPattern) {
+    String pattern = normalizeTargetPattern(targetPattern);
+    if (!value().startsWith("//")) {
+      return false;
+    }
+    String labelPackage = getPackage();
+    if (pattern.equals("//...")) {
+      return true;
+    }
+    if (pattern.endsWith("/...")) {
+      String prefix = pattern.substring(2, pattern.length() - "/...".length());
+      return labelPackage.equals(prefix) || labelPackage.startsWith(prefix + "/");
+    }
+    int colon = pattern.indexOf(':');
+    String patternPackage = colon < 0 ? pattern.substring(2) : pattern.substring(2, colon);
+    if (!labelPackage.equals(patternPackage)) {
+      return false;
+    }
+    String name = colon < 0 ? "" : pattern.substring(colon + 1);
+    if (WILDCARD_TARGET_NAMES.contains(name)) {
+      return true;
+    }
+    if (name.isEmpty()) {
+      name = patternPackage.substring(patternPackage.lastIndexOf('/') + 1);
+    }
+    return value().equals("//" + labelPackage + ":" + name);
+  }
 }
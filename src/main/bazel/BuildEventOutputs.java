@@ -0,0 +1,257 @@
+package com.stripe.build.dependencyanalyzer.bazel;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonStreamParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reads the files that a build produced for an output group from the build event file that Bazel
+ * writes with {@code --build_event_json_file}. Every line of the file is a build event. The files
+ * of an output group are announced in named sets of files, which can contain other sets, and each
+ * target or aspect refers to its sets once it has completed.
+ *
+ * <p>Bazel announces every named set before the first event that refers to it, so the files of a
+ * target are known as soon as it has completed, and the file can be followed while the build is
+ * still running.
+ */
+public class BuildEventOutputs {
+
+  /** How long to wait for Bazel to write more events once all of them have been read. */
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  /** Receives the files of an output group of each target, as soon as the target completes. */
+  @FunctionalInterface
+  public interface TargetOutputsListener {
+    void onTargetCompleted(String targetLabel, Set<Path> files) throws IOException;
+  }
+
+  private final Path bazelWorkspace;
+  private final String outputGroup;
+
+  /** Files directly in each named set, by the id of the set. */
+  private final Map<String, List<Path>> namedSetFiles = new HashMap<>();
+
+  /** Ids of the sets nested in each named set. */
+  private final Map<String, List<String>> namedSetChildren = new HashMap<>();
+
+  /** Ids of the named sets of the output group, by the label of the target that completed. */
+  private final Map<String, List<String>> targetLabelToNamedSets = new HashMap<>();
+
+  private BuildEventOutputs(Path bazelWorkspace, String outputGroup) {
+    this.bazelWorkspace = bazelWorkspace;
+    this.outputGroup = outputGroup;
+  }
+
+  /**
+   * Reads the files of an output group that every completed target or aspect produced.
+   *
+   * @param buildEventFile file written by Bazel with {@code --build_event_json_file}
+   * @param outputGroup name of the output group, like {@code unused_deps_analysis_file}
+   * @param bazelWorkspace Bazel workspace root directory, which relative file paths resolve against
+   * @return the files of the output group by target label, for targets that produced any
+   * @throws IOException if error occurs reading the build event file
+   */
+  public static Map<String, Set<Path>> getOutputGroupFiles(
+      Path buildEventFile, String outputGroup, Path bazelWorkspace) throws IOException {
+    BuildEventOutputs outputs = new BuildEventOutputs(bazelWorkspace, outputGroup);
+    try (Reader reader = Files.newBufferedReader(buildEventFile)) {
+      JsonStreamParser parser = new JsonStreamParser(reader);
+      while (parser.hasNext()) {
+        outputs.addEvent(parser.next().getAsJsonObject());
+      }
+    }
+    return outputs.resolveTargetFiles();
+  }
+
+  /**
+   * Follows the build event file of a running build, and hands the files of an output group of
+   * every target to the listener as soon as the target has completed. Returns once the last event
+   * has been read, or once the build has exited and no more events were written.
+   *
+   * @param build the running build, whose build event file is followed
+   * @param outputGroup name of the output group, like {@code unused_deps_analysis_file}
+   * @param bazelWorkspace Bazel workspace root directory, which relative file paths resolve against
+   * @param listener receives the files of every completed target that produced any, on the
+   *     calling thread
+   * @throws IOException if error occurs reading the build event file, or the listener throws
+   * @throws InterruptedException if interrupted while waiting for more events
+   */
+  public static void follow(
+      RunningBazelBuild build,
+      String outputGroup,
+      Path bazelWorkspace,
+      TargetOutputsListener listener)
+      throws IOException, InterruptedException {
+    BuildEventOutputs outputs = new BuildEventOutputs(bazelWorkspace, outputGroup);
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try (InputStream inputStream = Files.newInputStream(build.getBuildEventFile())) {
+      while (true) {
+        // checked before reading, so that nothing written before the build exited is missed
+        boolean running = build.isRunning();
+        int read = inputStream.read(buffer);
+        if (read < 0) {
+          if (!running) {
+            break;
+          }
+          Thread.sleep(POLL_INTERVAL_MILLIS);
+          continue;
+        }
+        for (int i = 0; i < read; i++) {
+          if (buffer[i] != '\n') {
+            line.write(buffer[i]);
+            continue;
+          }
+          boolean lastMessage = outputs.followEvent(line, listener);
+          line.reset();
+          if (lastMessage) {
+            return;
+          }
+        }
+      }
+    }
+    // a build that was killed may not have finished its last line
+    outputs.followEvent(line, listener);
+  }
+
+  /** Adds an event read from a line, and returns whether it was the last event of the build. */
+  private boolean followEvent(ByteArrayOutputStream line, TargetOutputsListener listener)
+      throws IOException {
+    String json = line.toString(StandardCharsets.UTF_8).trim();
+    if (json.isEmpty()) {
+      return false;
+    }
+    JsonObject event;
+    try {
+      event = JsonParser.parseString(json).getAsJsonObject();
+    } catch (JsonParseException | IllegalStateException e) {
+      throw new IOException("Malformed build event: " + json, e);
+    }
+    Optional<String> completedLabel = addEvent(event);
+    if (completedLabel.isPresent()) {
+      Set<Path> files = resolveFiles(targetLabelToNamedSets.get(completedLabel.get()));
+      if (!files.isEmpty()) {
+        listener.onTargetCompleted(completedLabel.get(), files);
+      }
+    }
+    return event.has("lastMessage") && event.get("lastMessage").getAsBoolean();
+  }
+
+  /**
+   * Adds a build event, and returns the label of the target if the event announced that it
+   * completed with files in the output group.
+   */
+  private Optional<String> addEvent(JsonObject event) {
+    JsonObject id = event.getAsJsonObject("id");
+    if (id == null) {
+      return Optional.empty();
+    }
+    if (id.has("namedSet") && event.has("namedSetOfFiles")) {
+      String setId = id.getAsJsonObject("namedSet").get("id").getAsString();
+      JsonObject namedSet = event.getAsJsonObject("namedSetOfFiles");
+      List<Path> files = new ArrayList<>();
+      if (namedSet.has("files")) {
+        for (JsonElement file : namedSet.getAsJsonArray("files")) {
+          files.add(toPath(file.getAsJsonObject()));
+        }
+      }
+      namedSetFiles.put(setId, files);
+      namedSetChildren.put(setId, getFileSetIds(namedSet));
+    } else if (id.has("targetCompleted") && event.has("completed")) {
+      // some versions of Bazel name the targets of the main repository "@//..." or "@@//..."
+      String label =
+          id.getAsJsonObject("targetCompleted")
+              .get("label")
+              .getAsString()
+              .replaceFirst("^@@?//", "//");
+      JsonObject completed = event.getAsJsonObject("completed");
+      if (!completed.has("outputGroup")) {
+        return Optional.empty();
+      }
+      for (JsonElement group : completed.getAsJsonArray("outputGroup")) {
+        JsonObject groupObject = group.getAsJsonObject();
+        if (outputGroup.equals(groupObject.get("name").getAsString())) {
+          targetLabelToNamedSets
+              .computeIfAbsent(label, l -> new ArrayList<>())
+              .addAll(getFileSetIds(groupObject));
+          return Optional.of(label);
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static List<String> getFileSetIds(JsonObject object) {
+    List<String> ids = new ArrayList<>();
+    if (object.has("fileSets")) {
+      for (JsonElement fileSet : object.getAsJsonArray("fileSets")) {
+        ids.add(fileSet.getAsJsonObject().get("id").getAsString());
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Files that were built locally have a {@code file://} URI. Otherwise the path of the file is
+   * made of its prefix, like {@code bazel-out/k8-fastbuild/bin}, and its name.
+   */
+  private Path toPath(JsonObject file) {
+    if (file.has("uri") && file.get("uri").getAsString().startsWith("file:")) {
+      return Path.of(URI.create(file.get("uri").getAsString()));
+    }
+    Path path = bazelWorkspace;
+    if (file.has("pathPrefix")) {
+      for (JsonElement prefix : file.getAsJsonArray("pathPrefix")) {
+        path = path.resolve(prefix.getAsString());
+      }
+    }
+    return path.resolve(file.get("name").getAsString());
+  }
+
+  private Map<String, Set<Path>> resolveTargetFiles() {
+    Map<String, Set<Path>> targetFiles = new HashMap<>();
+    targetLabelToNamedSets.forEach(
+        (label, setIds) -> {
+          Set<Path> files = resolveFiles(setIds);
+          if (!files.isEmpty()) {
+            targetFiles.put(label, files);
+          }
+        });
+    return targetFiles;
+  }
+
+  /** Collects the files of named sets and of every set nested in them. */
+  private Set<Path> resolveFiles(List<String> setIds) {
+    Set<Path> files = new LinkedHashSet<>();
+    Set<String> visited = new HashSet<>();
+    Deque<String> pending = new ArrayDeque<>(setIds);
+    while (!pending.isEmpty()) {
+      String setId = pending.pop();
+      if (visited.add(setId)) {
+        files.addAll(namedSetFiles.getOrDefault(setId, List.of()));
+        pending.addAll(namedSetChildren.getOrDefault(setId, List.of()));
+      }
+    }
+    return files;
+  }
+}
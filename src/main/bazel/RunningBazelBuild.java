@@ -0,0 +1,67 @@
+package com.stripe.build.dependencyanalyzer.bazel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A Bazel build that has been started by {@link BazelBuildRunner#startBuild}, whose build events
+ * can be read while it is still running.
+ */
+public class RunningBazelBuild {
+
+  private final Process process;
+  private final Instant startTime;
+  private final Path buildEventFile;
+  private final CompletableFuture<String> bazelOutput;
+
+  RunningBazelBuild(
+      Process process, Instant startTime, Path buildEventFile, boolean outputInherited) {
+    this.process = process;
+    this.startTime = startTime;
+    this.buildEventFile = buildEventFile;
+    // stderr is read on another thread, so that a full pipe never blocks the build
+    this.bazelOutput =
+        outputInherited
+            ? CompletableFuture.completedFuture("Streamed above.")
+            : CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    return IOUtils.toString(process.getErrorStream(), StandardCharsets.UTF_8)
+                        .trim();
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+  }
+
+  /** File that Bazel writes the build events to, with {@code --build_event_json_file}. */
+  public Path getBuildEventFile() {
+    return buildEventFile;
+  }
+
+  public boolean isRunning() {
+    return process.isAlive();
+  }
+
+  /** Waits for the build to finish. */
+  public BazelBuildResult awaitResult() throws IOException, InterruptedException {
+    int exitCode = process.waitFor();
+    String output;
+    try {
+      output = bazelOutput.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to read the output of Bazel", e.getCause());
+    }
+    Instant endTime = Clock.systemUTC().instant();
+    return BazelBuildResult.create(
+        output, exitCode, Duration.between(startTime, endTime), buildEventFile);
+  }
+}
@@ -2,8 +2,12 @@ package com.stripe.build.dependencyanalyzer.bazel;
 
 import com.google.devtools.build.lib.query2.proto.proto2api.Build;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.QueryResult;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Clock;
@@ -12,9 +16,12 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -33,6 +40,20 @@ public class TargetDependencyGraphLoader {
   private static final String DEPENDENCY_UNIVERSE_REGEX =
       String.format(":(%s)_", String.join("|", DEPENDENCY_UNIVERSES));
 
+  /** Rule attributes that the graph is made of, which are the only ones Bazel has to output. */
+  private static final List<String> RULE_ATTRIBUTES = List.of("deps", "exports");
+
+  /** Format that Bazel writes the query results in. */
+  public enum QueryOutput {
+    /**
+     * Length-delimited {@code Target} messages, which are parsed one at a time while the query is
+     * still running.
+     */
+    STREAMED_PROTO,
+    /** A single {@code QueryResult} message, for versions of Bazel without streamed_proto. */
+    PROTO
+  }
+
   private final Path bazelWorkspace;
 
   /**
@@ -41,6 +62,9 @@ public class TargetDependencyGraphLoader {
    */
   private final Map<String, Map<String, Integer>> ruleClassToAttributeNameToIndex = new HashMap<>();
 
+  /** The parts of every queried rule that the graph is made of, by label. */
+  private final Map<BazelRuleLabel, QueriedRule> labelToRule = new HashMap<>();
+
   private TargetDependencyGraphLoader(Path workingDirectory) {
     this.bazelWorkspace = workingDirectory;
   }
@@ -55,61 +79,111 @@ public class TargetDependencyGraphLoader {
    */
   public static TargetDependencyGraphLoadResult load(String target, Path bazelWorkspace)
       throws IOException {
-    return new TargetDependencyGraphLoader(bazelWorkspace).load(target);
+    return load(target, bazelWorkspace, QueryOutput.STREAMED_PROTO);
+  }
+
+  /**
+   * Queries Bazel to retrieve the dependency graph of a target, reading the results in the given
+   * format.
+   *
+   * @param target the root Bazel target to query
+   * @param bazelWorkspace Bazel workspace root directory (should contain a WORKSPACE file)
+   * @param queryOutput format that Bazel writes the query results in
+   * @return a {@link TargetDependencyGraphLoadResult} object containing the result
+   */
+  public static TargetDependencyGraphLoadResult load(
+      String target, Path bazelWorkspace, QueryOutput queryOutput) throws IOException {
+    return new TargetDependencyGraphLoader(bazelWorkspace).load(target, queryOutput);
   }
 
-  private TargetDependencyGraphLoadResult load(String target) throws IOException {
+  private TargetDependencyGraphLoadResult load(String target, QueryOutput queryOutput)
+      throws IOException {
     Instant startTime = Clock.systemUTC().instant();
 
     String bazelQuery = createBazelQueryString(target);
     var queryProcBuilder =
         new ProcessBuilder()
             .directory(new File(bazelWorkspace.toString()))
-            .command("bazel", "query", "--output=proto", "--keep_going", bazelQuery);
+            .command(
+                "bazel",
+                "query",
+                "--output=" + queryOutput.name().toLowerCase(Locale.ROOT),
+                "--proto:output_rule_attrs=" + String.join(",", RULE_ATTRIBUTES),
+                "--keep_going",
+                bazelQuery);
     Process queryProc = queryProcBuilder.start();
 
-    QueryResult queryResult =
-        QueryResult.parseFrom(IOUtils.toByteArray(queryProc.getInputStream()));
-    Map<BazelRuleLabel, ParsedBazelTarget> parsedTargets = parseQueryResult(queryResult);
-    String bazelErrors =
-        IOUtils.toString(queryProc.getErrorStream(), StandardCharsets.UTF_8).trim();
+    // stderr is read on another thread, so that a full pipe never blocks the query
+    CompletableFuture<String> bazelErrors =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return IOUtils.toString(queryProc.getErrorStream(), StandardCharsets.UTF_8)
+                    .trim();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    try (InputStream inputStream = new BufferedInputStream(queryProc.getInputStream())) {
+      if (queryOutput == QueryOutput.STREAMED_PROTO) {
+        Build.Target queriedTarget;
+        while ((queriedTarget = Build.Target.parseDelimitedFrom(inputStream)) != null) {
+          addTarget(queriedTarget);
+        }
+      } else {
+        QueryResult.parseFrom(inputStream).getTargetList().forEach(this::addTarget);
+      }
+    }
+    Map<BazelRuleLabel, ParsedBazelTarget> parsedTargets = parseQueriedRules();
+    String errors;
+    try {
+      errors = bazelErrors.get();
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to read the errors of the Bazel query", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading the errors of the Bazel query");
+    }
 
     Instant endTime = Clock.systemUTC().instant();
     return TargetDependencyGraphLoadResult.create(
-        target, bazelQuery, bazelErrors, parsedTargets, Duration.between(startTime, endTime));
+        target, bazelQuery, errors, parsedTargets, Duration.between(startTime, endTime));
   }
 
-  private Map<BazelRuleLabel, ParsedBazelTarget> parseQueryResult(QueryResult result) {
-    Map<BazelRuleLabel, Build.Rule> labelToRule = new HashMap<>();
-    for (Build.Target target : result.getTargetList()) {
-      if (target.hasRule()) {
-        Build.Rule targetRule = target.getRule();
-        labelToRule.put(
-            BazelRuleLabel.of(removeDependencyUniverseFromLabel(targetRule.getName())), targetRule);
-      }
+  /** Keeps only what the graph needs of a rule, rather than the whole message. */
+  private void addTarget(Build.Target target) {
+    if (!target.hasRule()) {
+      return;
     }
+    Build.Rule rule = target.getRule();
+    labelToRule.put(
+        BazelRuleLabel.of(removeDependencyUniverseFromLabel(rule.getName())),
+        new QueriedRule(
+            Directory.parse(rule.getLocation(), ""),
+            getValueListForAttribute(rule, "deps"),
+            getValueListForAttribute(rule, "exports")));
+  }
 
+  private Map<BazelRuleLabel, ParsedBazelTarget> parseQueriedRules() {
     Map<BazelRuleLabel, ParsedBazelTarget> labelToParsedTarget = new HashMap<>();
     for (var entry : labelToRule.entrySet()) {
       var label = entry.getKey();
       var rule = entry.getValue();
-      List<BazelRuleLabel> deps = getRuleLabelsForAttribute(rule, "deps", labelToRule.keySet());
-      List<BazelRuleLabel> exports =
-          getRuleLabelsForAttribute(rule, "exports", labelToRule.keySet());
+      List<BazelRuleLabel> deps = getRuleLabels(rule, rule.deps, labelToRule.keySet());
+      List<BazelRuleLabel> exports = getRuleLabels(rule, rule.exports, labelToRule.keySet());
       labelToParsedTarget.put(label, ParsedBazelTarget.create(label, deps, exports));
     }
     return labelToParsedTarget;
   }
 
-  private List<BazelRuleLabel> getRuleLabelsForAttribute(
-      Build.Rule rule, String attributeName, Set<BazelRuleLabel> validRuleLabels) {
-    Optional<Directory> parsedDirectory = Directory.parse(rule.getLocation(), "");
-    if (parsedDirectory.isEmpty()) {
+  private List<BazelRuleLabel> getRuleLabels(
+      QueriedRule rule, List<String> values, Set<BazelRuleLabel> validRuleLabels) {
+    if (rule.directory.isEmpty()) {
       return List.of();
     }
-    Directory directory = parsedDirectory.get();
+    Directory directory = rule.directory.get();
 
-    return getValueListForAttribute(rule, attributeName).stream()
+    return values.stream()
         .map(v -> BazelRuleLabel.fromInputLabel(directory, removeDependencyUniverseFromLabel(v)))
         .flatMap(Optional::stream)
         .filter(validRuleLabels::contains)
@@ -156,4 +230,17 @@ public class TargetDependencyGraphLoader {
   private String kind(Set<String> kinds, String expression) {
     return String.format("kind(\"%s\", %s)", String.join("|", kinds), expression);
   }
+
+  /** The directory and the raw dependency labels of a queried rule. */
+  private static final class QueriedRule {
+    private final Optional<Directory> directory;
+    private final List<String> deps;
+    private final List<String> exports;
+
+    private QueriedRule(Optional<Directory> directory, List<String> deps, List<String> exports) {
+      this.directory = directory;
+      this.deps = deps;
+      this.exports = exports;
+    }
+  }
 }
@@ -0,0 +1,338 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolGranularity;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the exported and imported symbols of every source file from the class files it was
+ * compiled to, as an alternative to running the compiler plugin that needs no recompilation: the
+ * output jars of a normal build are enough.
+ *
+ * <p>Class files are grouped by the source file they were compiled from, and produce the same
+ * {@link SymbolCollectionResult} records as the plugin. Since supertypes and inherited members can
+ * only be resolved once every class is known, all jars are added first and the results are built
+ * at the end.
+ *
+ * <p>The results are close to, but not exactly the same as, those of the plugin. Bytecode has no
+ * trace of annotations with source retention, of constants inlined by the compiler, or of types
+ * that were only needed to choose between overloads. Source file names are relative to the root
+ * of the package rather than to the workspace, and supertypes are only known for classes in the
+ * added jars and on the class path of the extractor, like those of the JDK.
+ */
+public class BytecodeSymbolExtractor {
+
+  private static final String CLASS_FILE_SUFFIX = ".class";
+  private static final String CONSTRUCTOR_NAME = "<init>";
+  private static final String STATIC_INITIALIZER_NAME = "<clinit>";
+
+  private final SymbolGranularity granularity;
+  private final Map<String, ClassFile> classesByName = new HashMap<>();
+  /** Classes that were not added but could be read from the runtime, like those of the JDK. */
+  private final Map<String, Optional<ClassFile>> runtimeClassesByName = new HashMap<>();
+  private final Map<String, ClassFile.InnerClass> innerClassesByName = new HashMap<>();
+  private final List<CompiledSourceFile> sourceFiles = new ArrayList<>();
+
+  public BytecodeSymbolExtractor() {
+    this(SymbolGranularity.MEMBER);
+  }
+
+  public BytecodeSymbolExtractor(SymbolGranularity granularity) {
+    this.granularity = granularity;
+  }
+
+  /** Adds every class file in a jar that was built for a Bazel target. */
+  public void addJar(Path jar, String bazelTargetLabel) throws IOException {
+    List<ClassFile> classFiles = new ArrayList<>();
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      for (JarEntry entry : (Iterable<JarEntry>) jarFile.stream()::iterator) {
+        if (entry.getName().endsWith(CLASS_FILE_SUFFIX)) {
+          try (InputStream inputStream = jarFile.getInputStream(entry)) {
+            classFiles.add(ClassFileParser.parse(inputStream));
+          }
+        }
+      }
+    }
+    addClassFiles(classFiles, bazelTargetLabel);
+  }
+
+  /** Adds the parsed class files of a Bazel target. */
+  public void addClassFiles(Collection<ClassFile> classFiles, String bazelTargetLabel) {
+    Map<String, CompiledSourceFile> targetSourceFiles = new LinkedHashMap<>();
+    for (ClassFile classFile : classFiles) {
+      if (classFile.hasAccessFlag(ClassFile.ACC_MODULE)) {
+        continue;
+      }
+      classesByName.put(classFile.getName(), classFile);
+      for (ClassFile.InnerClass innerClass : classFile.getInnerClasses()) {
+        innerClassesByName.putIfAbsent(innerClass.getName(), innerClass);
+      }
+      String sourceFileName = getSourceFileName(classFile);
+      targetSourceFiles
+          .computeIfAbsent(
+              sourceFileName,
+              name -> new CompiledSourceFile(name, getPackageName(classFile), bazelTargetLabel))
+          .classFiles
+          .add(classFile);
+    }
+    sourceFiles.addAll(targetSourceFiles.values());
+  }
+
+  /** Builds one result for every source file of every class file added so far. */
+  public List<SymbolCollectionResult> getResults() {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    for (CompiledSourceFile sourceFile : sourceFiles) {
+      results.add(
+          SymbolCollectionResult.create(
+              sourceFile.sourceFileName,
+              sourceFile.packageName,
+              sourceFile.bazelTargetLabel,
+              getExportedSymbols(sourceFile),
+              getImportedSymbols(sourceFile)));
+    }
+    return results;
+  }
+
+  private Set<String> getExportedSymbols(CompiledSourceFile sourceFile) {
+    Set<String> symbols = new TreeSet<>();
+    for (ClassFile classFile : sourceFile.classFiles) {
+      if (!isExported(classFile.getName())) {
+        continue;
+      }
+      symbols.add(getSymbolName(classFile.getName(), Optional.empty()));
+      for (ClassFile.Member field : classFile.getFields()) {
+        if (isExported(field)) {
+          symbols.add(getSymbolName(classFile.getName(), Optional.of(field.getName())));
+        }
+      }
+      for (ClassFile.Member method : classFile.getMethods()) {
+        if (isExported(method) && !method.getName().equals(STATIC_INITIALIZER_NAME)) {
+          symbols.add(getSymbolName(classFile.getName(), Optional.of(method.getName())));
+        }
+      }
+    }
+    return symbols;
+  }
+
+  private Set<String> getImportedSymbols(CompiledSourceFile sourceFile) {
+    Set<String> ownClasses = new HashSet<>();
+    sourceFile.classFiles.forEach(classFile -> ownClasses.add(classFile.getName()));
+
+    Set<String> referencedClasses = new HashSet<>();
+    Map<String, Set<String>> referencedMembers = new HashMap<>();
+    for (ClassFile classFile : sourceFile.classFiles) {
+      for (String classReference : classFile.getClassReferences()) {
+        referencedClasses.addAll(Descriptors.getClassNamesOfClassConstant(classReference));
+      }
+      referencedClasses.addAll(classFile.getTypeReferences());
+      for (ClassFile.MemberReference reference : classFile.getMemberReferences()) {
+        if (reference.getName().equals(CONSTRUCTOR_NAME)
+            && !isSuperOrThisConstructor(classFile, reference.getOwner())) {
+          // the plugin only sees explicit or implicit super() and this() calls as references to
+          // constructors, while new expressions reference the created class
+          referencedClasses.add(reference.getOwner());
+          continue;
+        }
+        String owner = getDeclaringClass(reference.getOwner(), reference.getName());
+        referencedClasses.add(owner);
+        referencedClasses.addAll(Descriptors.getClassNames(reference.getDescriptor()));
+        referencedMembers.computeIfAbsent(owner, o -> new HashSet<>()).add(reference.getName());
+      }
+    }
+    // like the plugin, a reference to a type is a reference to all of its supertypes
+    Set<String> closure = getSupertypeClosure(referencedClasses);
+
+    Set<String> symbols = new TreeSet<>();
+    for (String className : closure) {
+      if (!ownClasses.contains(className)) {
+        symbols.add(getSymbolName(className, Optional.empty()));
+      }
+    }
+    referencedMembers.forEach(
+        (owner, memberNames) -> {
+          if (!ownClasses.contains(owner)) {
+            memberNames.forEach(name -> symbols.add(getSymbolName(owner, Optional.of(name))));
+          }
+        });
+    return symbols;
+  }
+
+  private static boolean isSuperOrThisConstructor(ClassFile classFile, String owner) {
+    return owner.equals(classFile.getName())
+        || classFile.getSuperName().map(owner::equals).orElse(false);
+  }
+
+  private Set<String> getSupertypeClosure(Collection<String> classNames) {
+    Set<String> closure = new HashSet<>();
+    Deque<String> toVisit = new ArrayDeque<>(classNames);
+    while (!toVisit.isEmpty()) {
+      String className = toVisit.pop();
+      if (closure.add(className)) {
+        findClass(className)
+            .ifPresent(
+                classFile -> {
+                  classFile.getSuperName().ifPresent(toVisit::push);
+                  classFile.getInterfaceNames().forEach(toVisit::push);
+                });
+      }
+    }
+    return closure;
+  }
+
+  /**
+   * Finds an added class, or else reads it from the class path of the extractor itself, which
+   * covers the classes of the JDK.
+   */
+  private Optional<ClassFile> findClass(String className) {
+    ClassFile classFile = classesByName.get(className);
+    if (classFile != null) {
+      return Optional.of(classFile);
+    }
+    return runtimeClassesByName.computeIfAbsent(className, this::readRuntimeClass);
+  }
+
+  private Optional<ClassFile> readRuntimeClass(String className) {
+    try (InputStream inputStream =
+        ClassLoader.getSystemResourceAsStream(className + CLASS_FILE_SUFFIX)) {
+      if (inputStream == null) {
+        return Optional.empty();
+      }
+      ClassFile classFile = ClassFileParser.parse(inputStream);
+      for (ClassFile.InnerClass innerClass : classFile.getInnerClasses()) {
+        innerClassesByName.putIfAbsent(innerClass.getName(), innerClass);
+      }
+      return Optional.of(classFile);
+    } catch (IOException e) {
+      return Optional.empty(); // treated like any other class that is not known
+    }
+  }
+
+  /**
+   * Finds the class that declares a referenced member. The compiler names the class of the
+   * expression the member was selected from, which may inherit it from a supertype.
+   */
+  private String getDeclaringClass(String owner, String memberName) {
+    Deque<String> toVisit = new ArrayDeque<>();
+    toVisit.add(owner);
+    Set<String> visited = new HashSet<>();
+    while (!toVisit.isEmpty()) {
+      String className = toVisit.remove();
+      Optional<ClassFile> classFile = visited.add(className) ? findClass(className) : null;
+      if (classFile == null || classFile.isEmpty()) {
+        continue;
+      }
+      if (declaresMember(classFile.get(), memberName)) {
+        return className;
+      }
+      classFile.get().getSuperName().ifPresent(toVisit::add);
+      toVisit.addAll(classFile.get().getInterfaceNames());
+    }
+    return owner; // declared by a class that was not added, or not at all
+  }
+
+  private static boolean declaresMember(ClassFile classFile, String memberName) {
+    return classFile.getFields().stream().anyMatch(f -> f.getName().equals(memberName))
+        || classFile.getMethods().stream().anyMatch(m -> m.getName().equals(memberName));
+  }
+
+  /**
+   * Whether a class is visible outside of its source file: it must not be private, synthetic,
+   * anonymous or local, and neither may any class it is nested in.
+   */
+  private boolean isExported(String className) {
+    ClassFile classFile = classesByName.get(className);
+    if (classFile != null && classFile.hasAccessFlag(ClassFile.ACC_SYNTHETIC)) {
+      return false;
+    }
+    ClassFile.InnerClass innerClass = innerClassesByName.get(className);
+    if (innerClass == null) {
+      return true; // a top level class
+    }
+    return innerClass.isMember()
+        && !innerClass.hasAccessFlag(ClassFile.ACC_PRIVATE)
+        && !innerClass.hasAccessFlag(ClassFile.ACC_SYNTHETIC)
+        && isExported(innerClass.getOuterName().orElseThrow());
+  }
+
+  private static boolean isExported(ClassFile.Member member) {
+    return !member.hasAccessFlag(ClassFile.ACC_PRIVATE)
+        && !member.hasAccessFlag(ClassFile.ACC_SYNTHETIC)
+        && !member.hasAccessFlag(ClassFile.ACC_BRIDGE);
+  }
+
+  private String getSymbolName(String className, Optional<String> memberName) {
+    if (granularity == SymbolGranularity.CLASS) {
+      return getSourceName(getOutermostClass(className));
+    }
+    String classSourceName = getSourceName(className);
+    return memberName.map(name -> classSourceName + "." + name).orElse(classSourceName);
+  }
+
+  private String getOutermostClass(String className) {
+    ClassFile.InnerClass innerClass = innerClassesByName.get(className);
+    if (innerClass == null || innerClass.getOuterName().isEmpty()) {
+      return className;
+    }
+    return getOutermostClass(innerClass.getOuterName().get());
+  }
+
+  /**
+   * Converts the internal name of a class to its fully qualified source name. Nested classes are
+   * told apart from classes with a {@code $} in their name by their InnerClasses entries.
+   */
+  private String getSourceName(String className) {
+    ClassFile.InnerClass innerClass = innerClassesByName.get(className);
+    if (innerClass != null && innerClass.isMember()) {
+      return getSourceName(innerClass.getOuterName().get())
+          + "."
+          + innerClass.getSimpleName().get();
+    }
+    return className.replace('/', '.');
+  }
+
+  private static String getSourceFileName(ClassFile classFile) {
+    String name = classFile.getName();
+    int packageEnd = name.lastIndexOf('/');
+    String packagePath = name.substring(0, packageEnd + 1);
+    // without debugging information, fall back to the name of the outermost class
+    return packagePath
+        + classFile
+            .getSourceFileName()
+            .orElseGet(() -> name.substring(packageEnd + 1).split("\\$", 2)[0] + ".java");
+  }
+
+  private static String getPackageName(ClassFile classFile) {
+    String name = classFile.getName();
+    return name.substring(0, Math.max(0, name.lastIndexOf('/'))).replace('/', '.');
+  }
+
+  /** The class files compiled from one source file of a Bazel target. */
+  private static class CompiledSourceFile {
+    private final String sourceFileName;
+    private final String packageName;
+    private final String bazelTargetLabel;
+    private final List<ClassFile> classFiles = new ArrayList<>();
+
+    CompiledSourceFile(String sourceFileName, String packageName, String bazelTargetLabel) {
+      this.sourceFileName = sourceFileName;
+      this.packageName = packageName;
+      this.bazelTargetLabel = bazelTargetLabel;
+    }
+  }
+}
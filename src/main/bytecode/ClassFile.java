@@ -0,0 +1,149 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * The parts of a parsed class file that are needed to find the symbols it exports and imports.
+ * Class names are binary names in their internal form, like {@code com/foo/Outer$Inner}.
+ */
+@AutoValue
+public abstract class ClassFile {
+
+  public static final int ACC_PUBLIC = 0x0001;
+  public static final int ACC_PRIVATE = 0x0002;
+  public static final int ACC_BRIDGE = 0x0040;
+  public static final int ACC_SYNTHETIC = 0x1000;
+  public static final int ACC_MODULE = 0x8000;
+
+  public abstract String getName();
+
+  public abstract int getAccessFlags();
+
+  public abstract Optional<String> getSuperName();
+
+  public abstract ImmutableList<String> getInterfaceNames();
+
+  /** Name of the source file the class was compiled from, without its directory. */
+  public abstract Optional<String> getSourceFileName();
+
+  public abstract ImmutableList<Member> getFields();
+
+  public abstract ImmutableList<Member> getMethods();
+
+  /** Every entry of the InnerClasses attribute, which covers all nested classes referenced. */
+  public abstract ImmutableList<InnerClass> getInnerClasses();
+
+  /**
+   * Every class named by a class constant, which may be an array descriptor like {@code
+   * [Lcom/foo/Bar;}.
+   */
+  public abstract ImmutableSet<String> getClassReferences();
+
+  /** Every field and method referenced from the bytecode. */
+  public abstract ImmutableSet<MemberReference> getMemberReferences();
+
+  /**
+   * Classes named by the descriptors and generic signatures of the declared fields, methods and
+   * local variables and by annotations, which do not need a class constant.
+   */
+  public abstract ImmutableSet<String> getTypeReferences();
+
+  public boolean hasAccessFlag(int flag) {
+    return (getAccessFlags() & flag) != 0;
+  }
+
+  /** Finds the InnerClasses entry that describes this class, if it is a nested class. */
+  public Optional<InnerClass> getOwnInnerClass() {
+    return getInnerClasses().stream().filter(c -> c.getName().equals(getName())).findFirst();
+  }
+
+  public static ClassFile create(
+      String name,
+      int accessFlags,
+      Optional<String> superName,
+      Collection<String> interfaceNames,
+      Optional<String> sourceFileName,
+      Collection<Member> fields,
+      Collection<Member> methods,
+      Collection<InnerClass> innerClasses,
+      Collection<String> classReferences,
+      Collection<MemberReference> memberReferences,
+      Collection<String> typeReferences) {
+    return new AutoValue_ClassFile(
+        name,
+        accessFlags,
+        superName,
+        ImmutableList.copyOf(interfaceNames),
+        sourceFileName,
+        ImmutableList.copyOf(fields),
+        ImmutableList.copyOf(methods),
+        ImmutableList.copyOf(innerClasses),
+        ImmutableSet.copyOf(classReferences),
+        ImmutableSet.copyOf(memberReferences),
+        ImmutableSet.copyOf(typeReferences));
+  }
+
+  /** A field or method declared by the class. */
+  @AutoValue
+  public abstract static class Member {
+    public abstract String getName();
+
+    public abstract String getDescriptor();
+
+    public abstract int getAccessFlags();
+
+    public boolean hasAccessFlag(int flag) {
+      return (getAccessFlags() & flag) != 0;
+    }
+
+    public static Member create(String name, String descriptor, int accessFlags) {
+      return new AutoValue_ClassFile_Member(name, descriptor, accessFlags);
+    }
+  }
+
+  /** A field or method of some class, as referenced by a Fieldref or Methodref constant. */
+  @AutoValue
+  public abstract static class MemberReference {
+    public abstract String getOwner();
+
+    public abstract String getName();
+
+    public abstract String getDescriptor();
+
+    public static MemberReference create(String owner, String name, String descriptor) {
+      return new AutoValue_ClassFile_MemberReference(owner, name, descriptor);
+    }
+  }
+
+  /**
+   * An entry of the InnerClasses attribute. Anonymous classes have no simple name, and local
+   * classes have no outer class.
+   */
+  @AutoValue
+  public abstract static class InnerClass {
+    public abstract String getName();
+
+    public abstract Optional<String> getOuterName();
+
+    public abstract Optional<String> getSimpleName();
+
+    public abstract int getAccessFlags();
+
+    public boolean hasAccessFlag(int flag) {
+      return (getAccessFlags() & flag) != 0;
+    }
+
+    public boolean isMember() {
+      return getOuterName().isPresent() && getSimpleName().isPresent();
+    }
+
+    public static InnerClass create(
+        String name, Optional<String> outerName, Optional<String> simpleName, int accessFlags) {
+      return new AutoValue_ClassFile_InnerClass(name, outerName, simpleName, accessFlags);
+    }
+  }
+}
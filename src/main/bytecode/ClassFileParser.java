@@ -0,0 +1,381 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Parses the class file format (JVMS chapter 4) far enough to find the names a class declares and
+ * references. Bytecode instructions are skipped, since every class, field and method they refer to
+ * is also in the constant pool.
+ */
+public class ClassFileParser {
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  private final DataInputStream input;
+  private int[] tags;
+  private String[] utf8s;
+  /** First index of each constant: name, class, name and type, kind or descriptor index. */
+  private int[] firstIndices;
+  /** Second index of each constant: the name and type or descriptor index, if there is one. */
+  private int[] secondIndices;
+
+  private final Set<String> typeReferences = new LinkedHashSet<>();
+  /** Method handles of bootstrap methods, which only the compiler refers to. */
+  private final Set<Integer> bootstrapMethodHandles = new HashSet<>();
+
+  public static ClassFile parse(byte[] bytes) throws IOException {
+    return parse(new ByteArrayInputStream(bytes));
+  }
+
+  public static ClassFile parse(InputStream inputStream) throws IOException {
+    return new ClassFileParser(inputStream).parseClassFile();
+  }
+
+  private ClassFileParser(InputStream inputStream) {
+    this.input = new DataInputStream(inputStream);
+  }
+
+  private ClassFile parseClassFile() throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a class file: bad magic number");
+    }
+    input.readUnsignedShort(); // minor version
+    input.readUnsignedShort(); // major version
+    readConstantPool();
+
+    int accessFlags = input.readUnsignedShort();
+    String name = getClassName(input.readUnsignedShort());
+    int superIndex = input.readUnsignedShort();
+    Optional<String> superName =
+        superIndex == 0 ? Optional.empty() : Optional.of(getClassName(superIndex));
+    int interfaceCount = input.readUnsignedShort();
+    List<String> interfaceNames = new ArrayList<>(interfaceCount);
+    for (int i = 0; i < interfaceCount; i++) {
+      interfaceNames.add(getClassName(input.readUnsignedShort()));
+    }
+
+    List<ClassFile.Member> fields = readMembers();
+    List<ClassFile.Member> methods = readMembers();
+
+    Optional<String> sourceFileName = Optional.empty();
+    List<ClassFile.InnerClass> innerClasses = new ArrayList<>();
+    int attributeCount = input.readUnsignedShort();
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = getUtf8(input.readUnsignedShort());
+      int length = input.readInt();
+      switch (attributeName) {
+        case "SourceFile":
+          sourceFileName = Optional.of(getUtf8(input.readUnsignedShort()));
+          break;
+        case "InnerClasses":
+          innerClasses.addAll(readInnerClasses());
+          break;
+        case "BootstrapMethods":
+          readBootstrapMethods();
+          break;
+        default:
+          readAttribute(attributeName, length);
+      }
+    }
+
+    // the bootstrap methods of invokedynamic, like those for lambdas and string concatenation,
+    // are not referenced by the source code
+    Set<Integer> bootstrapMethods = new HashSet<>();
+    Set<Integer> bootstrapClasses = new HashSet<>();
+    for (int handle : bootstrapMethodHandles) {
+      int method = secondIndices[handle];
+      bootstrapMethods.add(method);
+      bootstrapClasses.add(firstIndices[method]);
+    }
+
+    Set<String> classReferences = new LinkedHashSet<>();
+    Set<ClassFile.MemberReference> memberReferences = new LinkedHashSet<>();
+    for (int i = 1; i < tags.length; i++) {
+      switch (tags[i]) {
+        case CONSTANT_CLASS:
+          if (!bootstrapClasses.contains(i)) {
+            classReferences.add(getUtf8(firstIndices[i]));
+          }
+          break;
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+          if (bootstrapMethods.contains(i)) {
+            break;
+          }
+          int nameAndType = secondIndices[i];
+          memberReferences.add(
+              ClassFile.MemberReference.create(
+                  getClassName(firstIndices[i]),
+                  getUtf8(firstIndices[nameAndType]),
+                  getUtf8(secondIndices[nameAndType])));
+          break;
+        case CONSTANT_METHOD_TYPE:
+          addTypeReferences(getUtf8(firstIndices[i]));
+          break;
+        default:
+          break;
+      }
+    }
+
+    return ClassFile.create(
+        name,
+        accessFlags,
+        superName,
+        interfaceNames,
+        sourceFileName,
+        fields,
+        methods,
+        innerClasses,
+        classReferences,
+        memberReferences,
+        typeReferences);
+  }
+
+  private void readConstantPool() throws IOException {
+    int count = input.readUnsignedShort();
+    tags = new int[count];
+    utf8s = new String[count];
+    firstIndices = new int[count];
+    secondIndices = new int[count];
+    for (int i = 1; i < count; i++) {
+      int tag = input.readUnsignedByte();
+      tags[i] = tag;
+      switch (tag) {
+        case CONSTANT_UTF8:
+          utf8s[i] = input.readUTF();
+          break;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+          input.readInt();
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          input.readLong();
+          i++; // eight byte constants take up two entries
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          firstIndices[i] = input.readUnsignedShort();
+          break;
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          firstIndices[i] = input.readUnsignedShort();
+          secondIndices[i] = input.readUnsignedShort();
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          firstIndices[i] = input.readUnsignedByte();
+          secondIndices[i] = input.readUnsignedShort();
+          break;
+        default:
+          throw new IOException(
+              String.format("Unknown constant pool tag %d at index %d", tag, i));
+      }
+    }
+  }
+
+  private List<ClassFile.Member> readMembers() throws IOException {
+    int count = input.readUnsignedShort();
+    List<ClassFile.Member> members = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int accessFlags = input.readUnsignedShort();
+      String name = getUtf8(input.readUnsignedShort());
+      String descriptor = getUtf8(input.readUnsignedShort());
+      addTypeReferences(descriptor);
+      int attributeCount = input.readUnsignedShort();
+      for (int j = 0; j < attributeCount; j++) {
+        String attributeName = getUtf8(input.readUnsignedShort());
+        readAttribute(attributeName, input.readInt());
+      }
+      members.add(ClassFile.Member.create(name, descriptor, accessFlags));
+    }
+    return members;
+  }
+
+  private List<ClassFile.InnerClass> readInnerClasses() throws IOException {
+    int count = input.readUnsignedShort();
+    List<ClassFile.InnerClass> innerClasses = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String name = getClassName(input.readUnsignedShort());
+      int outerIndex = input.readUnsignedShort();
+      int simpleNameIndex = input.readUnsignedShort();
+      int accessFlags = input.readUnsignedShort();
+      innerClasses.add(
+          ClassFile.InnerClass.create(
+              name,
+              outerIndex == 0 ? Optional.empty() : Optional.of(getClassName(outerIndex)),
+              simpleNameIndex == 0 ? Optional.empty() : Optional.of(getUtf8(simpleNameIndex)),
+              accessFlags));
+    }
+    return innerClasses;
+  }
+
+  private void readBootstrapMethods() throws IOException {
+    int count = input.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      bootstrapMethodHandles.add(input.readUnsignedShort());
+      skip(2L * input.readUnsignedShort()); // static arguments
+    }
+  }
+
+  /**
+   * Reads an attribute of a class, field, method or Code attribute, keeping the type names of
+   * the ones that can name types without a class constant, and skipping all others.
+   */
+  private void readAttribute(String attributeName, int length) throws IOException {
+    switch (attributeName) {
+      case "Signature":
+        addTypeReferences(getUtf8(input.readUnsignedShort()));
+        break;
+      case "RuntimeVisibleAnnotations":
+      case "RuntimeInvisibleAnnotations":
+        readAnnotations();
+        break;
+      case "RuntimeVisibleParameterAnnotations":
+      case "RuntimeInvisibleParameterAnnotations":
+        int parameterCount = input.readUnsignedByte();
+        for (int i = 0; i < parameterCount; i++) {
+          readAnnotations();
+        }
+        break;
+      case "AnnotationDefault":
+        readElementValue();
+        break;
+      case "Code":
+        readCode();
+        break;
+      case "LocalVariableTable":
+      case "LocalVariableTypeTable":
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+          input.readUnsignedShort(); // start pc
+          input.readUnsignedShort(); // length
+          input.readUnsignedShort(); // name
+          addTypeReferences(getUtf8(input.readUnsignedShort()));
+          input.readUnsignedShort(); // slot
+        }
+        break;
+      default:
+        skip(length);
+    }
+  }
+
+  private void readCode() throws IOException {
+    input.readUnsignedShort(); // max stack
+    input.readUnsignedShort(); // max locals
+    skip(input.readInt()); // instructions
+    skip(8L * input.readUnsignedShort()); // exception table
+    int attributeCount = input.readUnsignedShort();
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = getUtf8(input.readUnsignedShort());
+      readAttribute(attributeName, input.readInt());
+    }
+  }
+
+  private void readAnnotations() throws IOException {
+    int count = input.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      readAnnotation();
+    }
+  }
+
+  private void readAnnotation() throws IOException {
+    addTypeReferences(getUtf8(input.readUnsignedShort()));
+    int pairCount = input.readUnsignedShort();
+    for (int i = 0; i < pairCount; i++) {
+      input.readUnsignedShort(); // element name
+      readElementValue();
+    }
+  }
+
+  private void readElementValue() throws IOException {
+    int tag = input.readUnsignedByte();
+    switch (tag) {
+      case 'e':
+        addTypeReferences(getUtf8(input.readUnsignedShort()));
+        input.readUnsignedShort(); // constant name
+        break;
+      case 'c':
+        addTypeReferences(getUtf8(input.readUnsignedShort()));
+        break;
+      case '@':
+        readAnnotation();
+        break;
+      case '[':
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+          readElementValue();
+        }
+        break;
+      default: // a constant
+        input.readUnsignedShort();
+    }
+  }
+
+  private void skip(long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      int skipped = input.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+      if (skipped == 0) {
+        input.readByte(); // throws at the end of the stream
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private void addTypeReferences(String descriptorOrSignature) {
+    typeReferences.addAll(Descriptors.getClassNames(descriptorOrSignature));
+  }
+
+  private String getClassName(int classIndex) throws IOException {
+    checkTag(classIndex, CONSTANT_CLASS);
+    return getUtf8(firstIndices[classIndex]);
+  }
+
+  private String getUtf8(int index) throws IOException {
+    checkTag(index, CONSTANT_UTF8);
+    return utf8s[index];
+  }
+
+  private void checkTag(int index, int expectedTag) throws IOException {
+    if (index <= 0 || index >= tags.length || tags[index] != expectedTag) {
+      throw new IOException(
+          String.format("Expected constant pool entry %d to have tag %d", index, expectedTag));
+    }
+  }
+}
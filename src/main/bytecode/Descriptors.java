@@ -0,0 +1,114 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the class names in field and method descriptors and in generic signatures (JVMS 4.3 and
+ * 4.7.9.1), which share the same grammar for types. Primitive types and type variables are
+ * skipped, and array types are reduced to their element type.
+ */
+public class Descriptors {
+
+  private final String text;
+  private final List<String> classNames = new ArrayList<>();
+  private int position = 0;
+
+  /**
+   * Gets the internal names of every class in a descriptor or signature. Member classes of
+   * parameterized types are named like in a descriptor, with {@code $} separating them from their
+   * outer class.
+   */
+  public static List<String> getClassNames(String descriptorOrSignature) {
+    Descriptors descriptors = new Descriptors(descriptorOrSignature);
+    descriptors.readAll();
+    return descriptors.classNames;
+  }
+
+  /** Gets the element class of a class name from a class constant, unless it is a primitive. */
+  public static List<String> getClassNamesOfClassConstant(String name) {
+    return name.startsWith("[") ? getClassNames(name) : List.of(name);
+  }
+
+  private Descriptors(String text) {
+    this.text = text;
+  }
+
+  private void readAll() {
+    if (text.startsWith("<")) {
+      readTypeParameters();
+    }
+    while (position < text.length()) {
+      char c = peek();
+      if (c == '(' || c == ')' || c == '^') {
+        position++; // method parameters, return type and thrown types are all just types
+      } else {
+        readType();
+      }
+    }
+  }
+
+  private void readTypeParameters() {
+    position++; // '<'
+    while (peek() != '>') {
+      position = text.indexOf(':', position) + 1; // the parameter name
+      if (peek() != ':') {
+        readType(); // class bound, which is left out if there are only interface bounds
+      }
+      while (peek() == ':') {
+        position++;
+        readType();
+      }
+    }
+    position++; // '>'
+  }
+
+  private void readType() {
+    char c = peek();
+    switch (c) {
+      case 'L':
+        readClassType();
+        break;
+      case 'T':
+        position = text.indexOf(';', position) + 1;
+        break;
+      case '[':
+      case '+':
+      case '-':
+        position++;
+        readType();
+        break;
+      default: // a primitive type, void or an unbounded wildcard
+        position++;
+    }
+  }
+
+  private void readClassType() {
+    position++; // 'L'
+    StringBuilder name = new StringBuilder();
+    while (true) {
+      char c = peek();
+      position++;
+      if (c == ';') {
+        break;
+      } else if (c == '<') {
+        while (peek() != '>') {
+          readType();
+        }
+        position++;
+      } else if (c == '.') {
+        name.append('$'); // a member class of a parameterized type
+      } else {
+        name.append(c);
+      }
+    }
+    classNames.add(name.toString());
+  }
+
+  private char peek() {
+    if (position >= text.length()) {
+      throw new IllegalArgumentException("Malformed descriptor or signature: " + text);
+    }
+    return text.charAt(position);
+  }
+}
@@ -1,6 +1,9 @@
 package com.stripe.build.dependencyanalyzer.cli;
 
 import com.stripe.build.dependencyanalyzer.analysis.BazelTargetFilter;
+import com.stripe.build.dependencyanalyzer.analysis.DatabaseGraphStore;
+import com.stripe.build.dependencyanalyzer.analysis.DependencyGraphStore;
+import com.stripe.build.dependencyanalyzer.analysis.GraphSnapshot;
 import com.stripe.build.dependencyanalyzer.analysis.ThirdPartySymbolsIndex;
 import com.stripe.build.dependencyanalyzer.analysis.UnusedDepsAnalysisResult;
 import com.stripe.build.dependencyanalyzer.analysis.UnusedDepsAnalyzer;
@@ -29,7 +32,11 @@ import picocli.CommandLine.Parameters;
 public class AnalyzeUnusedCommand implements Runnable {
 
   @Nullable
-  @Parameters(paramLabel = "<databaseFile>", description = "Path to database file to read")
+  @Parameters(
+      paramLabel = "<databaseFile>",
+      description =
+          "Path to database file to read, or to a graph snapshot written by collect --snapshot,"
+              + " which is memory-mapped instead of loaded")
   private String databaseFile;
 
   @Nullable
@@ -63,10 +70,15 @@ public class AnalyzeUnusedCommand implements Runnable {
         throw new IllegalArgumentException(
             "Passed null argument, which should have been handled by Picocli.");
       }
-      Database database = Database.open(Path.of(databaseFile));
+      DependencyGraphStore dependencyGraph;
+      if (GraphSnapshot.isSnapshotFile(Path.of(databaseFile))) {
+        dependencyGraph = GraphSnapshot.open(Path.of(databaseFile));
+      } else {
+        dependencyGraph = DatabaseGraphStore.load(Database.open(Path.of(databaseFile)));
+      }
       UnusedDepsAnalysisResult analysisResult =
           UnusedDepsAnalyzer.analyze(
-              database,
+              dependencyGraph,
               new ThirdPartySymbolsIndex(Path.of(bazelWorkspace)),
               new BazelTargetFilter(StringUtils.defaultIfEmpty(filter, "")));
       outputResult(analysisResult);
@@ -0,0 +1,95 @@
+package com.stripe.build.dependencyanalyzer.cli;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The external repository, passed to Bazel with {@code --override_repository=unused_deps=...},
+ * that holds the analyzer aspect and the compiler plugin jar bundled with the CLI.
+ *
+ * <p>Its version is a digest of all of its files. The repository is written to a directory named
+ * after the version, so that every run with the same CLI passes Bazel the same flags and keeps its
+ * analysis cache. The version is also passed to the aspect, which makes it part of the key of every
+ * analyzer action, so that cached outputs are only reused by the plugin that produced them.
+ */
+public class AnalyzerRepository {
+
+  private static final List<String> OVERRIDE_FILES = List.of("WORKSPACE", "BUILD", "defs.bzl");
+  private static final String PLUGIN_JAR = "plugin-binary_deploy.jar";
+
+  private final Path directory;
+  private final String version;
+
+  /** Writes the repository to a directory for its version, unless it already exists. */
+  public static AnalyzerRepository create() throws IOException {
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    for (String file : OVERRIDE_FILES) {
+      files.put(file, readResource("resources/cli/" + file + ".override"));
+    }
+    files.put(PLUGIN_JAR, readResource("main/plugin/" + PLUGIN_JAR));
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    files.forEach(
+        (name, bytes) -> {
+          hasher.putString(name, StandardCharsets.UTF_8);
+          hasher.putInt(bytes.length);
+          hasher.putBytes(bytes);
+        });
+    String version = hasher.hash().toString().substring(0, 16);
+
+    Path directory =
+        Path.of(System.getProperty("java.io.tmpdir")).resolve("unused_deps-" + version);
+    if (!Files.isDirectory(directory)) {
+      // write to a fresh directory first, so that a concurrent run never sees a partial repository
+      Path staging = Files.createTempDirectory("unused_deps");
+      for (Map.Entry<String, byte[]> file : files.entrySet()) {
+        Files.write(staging.resolve(file.getKey()), file.getValue());
+      }
+      try {
+        Files.move(staging, directory, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+        // another run wrote the same version first, and its files are identical
+        MoreFiles.deleteRecursively(staging, RecursiveDeleteOption.ALLOW_INSECURE);
+      }
+    }
+    return new AnalyzerRepository(directory, version);
+  }
+
+  private AnalyzerRepository(Path directory, String version) {
+    this.directory = directory;
+    this.version = version;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /** Hex digest of the aspect and the plugin jar. */
+  public String getVersion() {
+    return version;
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    try (InputStream inputStream =
+        Objects.requireNonNull(
+            AnalyzerRepository.class.getClassLoader().getResourceAsStream(name),
+            "Missing resource " + name)) {
+      return ByteStreams.toByteArray(inputStream);
+    }
+  }
+}
@@ -1,22 +1,38 @@
 package com.stripe.build.dependencyanalyzer.cli;
 
+import com.stripe.build.dependencyanalyzer.analysis.GraphSnapshotWriter;
 import com.stripe.build.dependencyanalyzer.bazel.BazelBuildResult;
 import com.stripe.build.dependencyanalyzer.bazel.BazelBuildRunner;
+import com.stripe.build.dependencyanalyzer.bazel.BazelRuleLabel;
+import com.stripe.build.dependencyanalyzer.bazel.BuildEventOutputs;
+import com.stripe.build.dependencyanalyzer.bazel.RunningBazelBuild;
 import com.stripe.build.dependencyanalyzer.bazel.TargetDependencyGraphLoadResult;
 import com.stripe.build.dependencyanalyzer.bazel.TargetDependencyGraphLoader;
+import com.stripe.build.dependencyanalyzer.bazel.TargetDependencyGraphLoader.QueryOutput;
+import com.stripe.build.dependencyanalyzer.collection.BytecodeSymbolsGatherer;
+import com.stripe.build.dependencyanalyzer.collection.CompilationStatsReport;
 import com.stripe.build.dependencyanalyzer.collection.SymbolsFileGatherResult;
 import com.stripe.build.dependencyanalyzer.collection.SymbolsFileGatherer;
 import com.stripe.build.dependencyanalyzer.collection.SymbolsPersistResult;
 import com.stripe.build.dependencyanalyzer.collection.SymbolsPersister;
 import com.stripe.build.dependencyanalyzer.collection.TargetDependencyGraphPersistResult;
 import com.stripe.build.dependencyanalyzer.collection.TargetDependencyGraphPersister;
+import com.stripe.build.dependencyanalyzer.collection.TargetShard;
 import com.stripe.build.dependencyanalyzer.database.Database;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolGranularity;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolsFileFormat;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import picocli.CommandLine.Command;
@@ -26,6 +42,20 @@ import picocli.CommandLine.Parameters;
 @Command(name = "collect", description = "Constructs a local database from the Bazel build graph")
 public class CollectCommand implements Runnable {
 
+  /** Output group of the analyzer aspect that holds the symbols and stats files. */
+  private static final String ANALYSIS_OUTPUT_GROUP = "unused_deps_analysis_file";
+
+  /** Checkpoint of a run that has persisted the targets and edges of the Bazel query. */
+  private static final String TARGET_GRAPH_CHECKPOINT = "target graph";
+
+  /** Where the symbols of Java source files are read from. */
+  public enum Extraction {
+    /** Symbols files written by the compiler plugin, run by a Bazel aspect. */
+    PLUGIN,
+    /** Class files in the output jars of an ordinary build, which needs no recompilation. */
+    BYTECODE
+  }
+
   @Nullable
   @Parameters(paramLabel = "<bazelTargetPattern>", description = "Root bazel target pattern")
   private String bazelTarget;
@@ -38,6 +68,15 @@ public class CollectCommand implements Runnable {
   @Parameters(paramLabel = "<outputFile>", description = "Path to database file to write")
   private String outputFile;
 
+  @Option(
+      names = {"--query_output"},
+      description =
+          "Format that the Bazel query writes the dependency graph in: ${COMPLETION-CANDIDATES}"
+              + " (default: ${DEFAULT-VALUE}). STREAMED_PROTO is parsed while the query is still"
+              + " running; PROTO is for versions of Bazel that don't support it.",
+      defaultValue = "STREAMED_PROTO")
+  private QueryOutput queryOutput = QueryOutput.STREAMED_PROTO;
+
   @Option(
       names = {"--skip_compilation"},
       description = "Skip the compilation step that generates the symbols files")
@@ -45,9 +84,141 @@ public class CollectCommand implements Runnable {
 
   @Option(
       names = {"--ignore_cache"},
-      description = "Ignore the action and disk caches")
+      description =
+          "Ignore the action and disk caches. This should not be needed, since the analyzer"
+              + " outputs are deterministic and their action keys include the plugin version.")
   private boolean ignoreCache;
 
+  @Option(
+      names = {"--symbols_format"},
+      description =
+          "Encoding of the symbols files written by the compiler plugin: ${COMPLETION-CANDIDATES}"
+              + " (default: ${DEFAULT-VALUE}). JSON is much larger and slower, but human-readable.",
+      defaultValue = "BINARY")
+  private SymbolsFileFormat symbolsFormat = SymbolsFileFormat.BINARY;
+
+  @Option(
+      names = {"--symbol_granularity"},
+      description =
+          "Granularity of the collected symbols: ${COMPLETION-CANDIDATES} (default:"
+              + " ${DEFAULT-VALUE}). CLASS collapses references to methods and fields into their"
+              + " top-level class, which gives the same unused dependencies with far fewer rows."
+              + " With --skip_compilation, this must match the existing symbols files.",
+      defaultValue = "MEMBER")
+  private SymbolGranularity symbolGranularity = SymbolGranularity.MEMBER;
+
+  @Option(
+      names = {"--extraction"},
+      description =
+          "How to find the symbols of Java source files: ${COMPLETION-CANDIDATES} (default:"
+              + " ${DEFAULT-VALUE}). BYTECODE reads the class files in the output jars of a"
+              + " normal build, so a build that is already cached needs no recompilation, but"
+              + " misses source-only annotations, inlined constants and overloads.",
+      defaultValue = "PLUGIN")
+  private Extraction extraction = Extraction.PLUGIN;
+
+  @Option(
+      names = {"--stop_at_pattern_boundary"},
+      description =
+          "Only compile the targets matching <bazelTargetPattern> with the compiler plugin. Their"
+              + " dependencies outside of the pattern only get their exported symbols, read from"
+              + " the jars built for the targets in the pattern, and their own dependencies are"
+              + " not analyzed.")
+  private boolean stopAtPatternBoundary;
+
+  @Option(
+      names = {"--generate_bytecode"},
+      description =
+          "Let javac generate bytecode for every analyzed target, instead of stopping after the"
+              + " flow analysis that the compiler plugin needs")
+  private boolean generateBytecode;
+
+  @Option(
+      names = {"--plugin_stats"},
+      description =
+          "Let the compiler plugin record what scanning every compilation unit cost, and print a"
+              + " report of the slowest targets and largest symbol producers. The stats contain"
+              + " timings, so they make the analyzer outputs differ between runs.")
+  private boolean pluginStats;
+
+  @Option(
+      names = {"--stats_report_size"},
+      description =
+          "Number of targets to list as slowest and as largest symbol producers in the compiler"
+              + " plugin stats report (default: ${DEFAULT-VALUE})",
+      defaultValue = "10")
+  private int statsReportSize = 10;
+
+  @Option(
+      names = {"--gather_threads"},
+      description =
+          "Number of threads to parse symbols files on (default: the number of available"
+              + " processors)")
+  private int gatherThreads = Runtime.getRuntime().availableProcessors();
+
+  @Option(
+      names = {"--persist_batch_size"},
+      description =
+          "Number of rows to buffer while gathering symbols before writing them to the database,"
+              + " which bounds the memory that persisting needs (default: ${DEFAULT-VALUE})",
+      defaultValue = "" + SymbolsPersister.DEFAULT_BATCH_SIZE)
+  private int persistBatchSize = SymbolsPersister.DEFAULT_BATCH_SIZE;
+
+  @Option(
+      names = {"--insert_batch_size"},
+      description =
+          "Number of rows bound to a prepared insert statement before it is executed as a JDBC"
+              + " batch (default: ${DEFAULT-VALUE})",
+      defaultValue = "" + Database.DEFAULT_INSERT_BATCH_SIZE)
+  private int insertBatchSize = Database.DEFAULT_INSERT_BATCH_SIZE;
+
+  @Option(
+      names = {"--bulk_load"},
+      negatable = true,
+      description =
+          "Fill the database without a rollback journal, fsync or foreign key checks, and create"
+              + " its indexes and statistics once everything is inserted (default: true). The"
+              + " database is not crash safe until collect finishes, so this is never used with"
+              + " --shard_size or --resume, which rely on checkpoints. Turn it off with"
+              + " --no-bulk_load.",
+      defaultValue = "true")
+  private boolean bulkLoad = true;
+
+  @Option(
+      names = {"--shard_size"},
+      description =
+          "Build and persist the targets matching <bazelTargetPattern> in shards of this many"
+              + " targets, each of which is recorded as complete in the database once its symbols"
+              + " have been persisted. 0 builds the whole pattern at once (default:"
+              + " ${DEFAULT-VALUE}). The pattern must be a single target pattern like //foo/...",
+      defaultValue = "0")
+  private int shardSize;
+
+  @Option(
+      names = {"--shard_by"},
+      description =
+          "How to split the targets into shards with --shard_size: ${COMPLETION-CANDIDATES}"
+              + " (default: ${DEFAULT-VALUE}). PACKAGE never splits a package, so shards can be"
+              + " larger than --shard_size.",
+      defaultValue = "PACKAGE")
+  private TargetShard.Grouping shardBy = TargetShard.Grouping.PACKAGE;
+
+  @Option(
+      names = {"--resume"},
+      description =
+          "Resume collecting into an existing database that an interrupted or partly failed run"
+              + " with the same settings left behind, skipping the Bazel query and every shard"
+              + " that is already complete. Without it, an existing database is replaced.")
+  private boolean resume;
+
+  @Nullable
+  @Option(
+      names = {"--snapshot"},
+      description =
+          "Also write the dependency graph to this file as a memory-mapped snapshot, which"
+              + " analyze can read in place of the database without loading it")
+  private String snapshotFile;
+
   @Option(
       names = {"-d", "--debug"},
       description = "Print full error stacktrace")
@@ -61,70 +232,147 @@ public class CollectCommand implements Runnable {
         throw new IllegalArgumentException(
             "Passed null argument, which should have been handled by Picocli.");
       }
-      Database database = Database.createNew(Path.of(outputFile));
+      if (stopAtPatternBoundary || shardSize > 0) {
+        // checked before querying, since a pattern that matches nothing is only noticed at the end
+        BazelRuleLabel.normalizeTargetPattern(bazelTarget);
+      }
+      Database database = openDatabase(Path.of(outputFile), bazelTarget);
+      database.setInsertBatchSize(insertBatchSize);
+      database.putMetadata(
+          Database.SYMBOL_GRANULARITY_METADATA_KEY, symbolGranularity.getFlagValue());
+      if (stopAtPatternBoundary) {
+        database.putMetadata(Database.TARGET_PATTERN_BOUNDARY_METADATA_KEY, bazelTarget);
+      }
+      Set<String> checkpoints = database.getCheckpoints();
 
-      System.out.println("Querying Bazel to get Bazel dependency graph for target...");
-      TargetDependencyGraphLoadResult loadResult =
-          TargetDependencyGraphLoader.load(bazelTarget, Path.of(bazelWorkspace));
-      System.out.println(loadResult.getDisplay(debug));
+      if (checkpoints.contains(TARGET_GRAPH_CHECKPOINT)) {
+        System.out.println("Skipping Bazel query, whose results were already persisted");
+      } else {
+        System.out.println("Querying Bazel to get Bazel dependency graph for target...");
+        TargetDependencyGraphLoadResult loadResult =
+            TargetDependencyGraphLoader.load(
+                bazelTarget, Path.of(bazelWorkspace), queryOutput);
+        System.out.println(loadResult.getDisplay(debug));
 
-      System.out.println("Persisting Bazel query results to database...");
-      TargetDependencyGraphPersistResult persistResult =
-          TargetDependencyGraphPersister.persist(loadResult.getParsedTargets(), database);
-      System.out.println(persistResult);
+        System.out.println("Persisting Bazel query results to database...");
+        TargetDependencyGraphPersistResult persistResult =
+            TargetDependencyGraphPersister.persist(loadResult.getParsedTargets(), database);
+        System.out.println(persistResult);
+        if (!database.isBulkLoading()) {
+          database.putCheckpoint(TARGET_GRAPH_CHECKPOINT);
+        }
+      }
 
-      if (skipCompilation) {
-        System.out.println("Skipping compiler plugin build step");
+      // symbols are persisted as they are gathered, so that they are never all held in memory
+      SymbolsPersister persister = SymbolsPersister.start(database, persistBatchSize);
+      List<BazelTarget> bazelTargets = database.getAllBazelTargets();
+      SymbolsFileGatherResult symbolsFileGatherResult;
+      int shardsSkipped = 0;
+      int shardsFailed = 0;
+      if (skipCompilation && extraction == Extraction.PLUGIN) {
+        System.out.println("Skipping compilation step");
+        System.out.println("Gathering and persisting generated *-symbols files...");
+        symbolsFileGatherResult =
+            SymbolsFileGatherer.getSymbolsForTargets(
+                Path.of(bazelWorkspace), bazelTargets, gatherThreads, persister::add);
+      } else if (extraction == Extraction.BYTECODE) {
+        if (skipCompilation) {
+          System.out.println("Skipping compilation step");
+        } else {
+          System.out.println("Building targets to extract Java source symbols from bytecode...");
+          BazelBuildResult buildResult =
+              BazelBuildRunner.runBuild(
+                  bazelTarget,
+                  List.of("--curses=no", "--verbose_failures"),
+                  Path.of(bazelWorkspace),
+                  debug);
+          System.out.println(buildResult);
+        }
+        System.out.println("Extracting and persisting Java source symbols from output jars...");
+        symbolsFileGatherResult =
+            BytecodeSymbolsGatherer.getSymbolsForTargets(
+                Path.of(bazelWorkspace), bazelTargets, symbolGranularity, persister::add);
       } else {
         System.out.println("Using compiler plugin to gather Java source symbols...");
-        List<String> bazelFlags = new ArrayList<>();
-        var tmpdir = Files.createTempDirectory("unused_deps");
-        // TODO: delete on exit
-        for (var file : List.of("WORKSPACE", "BUILD", "defs.bzl")) {
-          Files.copy(
-              CollectCommand.class
-                  .getClassLoader()
-                  .getResourceAsStream("resources/cli/" + file + ".override"),
-              tmpdir.resolve(file));
-        }
-        Files.copy(
-            CollectCommand.class
-                .getClassLoader()
-                .getResourceAsStream("main/plugin/plugin-binary_deploy.jar"),
-            tmpdir.resolve("plugin-binary_deploy.jar"));
-
-        bazelFlags.add("--override_repository=unused_deps=" + tmpdir.toAbsolutePath());
-        bazelFlags.add("--aspects=@unused_deps//:defs.bzl%analyzer");
-        bazelFlags.add("--output_groups=unused_deps_analysis_file");
-        if (ignoreCache) {
-          bazelFlags.add("--disk_cache=");
-          bazelFlags.add(String.format("--action_env=\"time=%d\"", System.currentTimeMillis()));
+        List<String> bazelFlags = getAnalyzerBazelFlags(bazelTarget);
+        try (SymbolsFileGatherer gatherer =
+            SymbolsFileGatherer.start(bazelTargets, gatherThreads, persister::add)) {
+          if (shardSize == 0) {
+            buildAndGather(List.of(bazelTarget), bazelFlags, gatherer);
+          } else {
+            List<TargetShard> shards =
+                TargetShard.plan(
+                    getPatternTargetLabels(bazelTargets, bazelTarget), shardBy, shardSize);
+            for (TargetShard shard : shards) {
+              if (checkpoints.contains(shard.getCheckpointName())) {
+                System.out.println("Skipping " + shard + ", which was already persisted");
+                shardsSkipped++;
+                continue;
+              }
+              System.out.println("Collecting " + shard);
+              BazelBuildResult buildResult =
+                  buildAndGather(shard.getTargetLabels(), bazelFlags, gatherer);
+              // only a shard whose symbols have all been written is complete
+              persister.flush();
+              if (buildResult.isSuccess()) {
+                database.putCheckpoint(shard.getCheckpointName());
+              } else {
+                shardsFailed++;
+              }
+            }
+          }
+          symbolsFileGatherResult = gatherer.finish();
         }
-        bazelFlags.add("--announce_rc");
-        bazelFlags.add("--curses=no");
-        bazelFlags.add("--sandbox_debug");
-        bazelFlags.add("--verbose_failures");
-
-        BazelBuildResult buildResult =
-            BazelBuildRunner.runBuild(bazelTarget, bazelFlags, Path.of(bazelWorkspace), debug);
-        System.out.println(buildResult);
       }
-
-      System.out.println("Gathering generated *-symbols.json files...");
-      SymbolsFileGatherResult symbolsFileGatherResult =
-          SymbolsFileGatherer.getSymbolsForTargets(
-              Path.of(bazelWorkspace), database.getAllBazelTargets());
-      if (symbolsFileGatherResult.getSymbolResults().isEmpty()) {
+      if (symbolsFileGatherResult.getResultsGathered() == 0 && shardsSkipped == 0) {
         System.out.println("Failed - did not find any symbol files in " + bazelWorkspace);
         System.exit(1);
         return;
       }
+      if (stopAtPatternBoundary && extraction == Extraction.PLUGIN) {
+        System.out.println("Extracting exported symbols of targets outside of the pattern...");
+        // read back from the database, which also has the targets of the shards of earlier runs
+        persister.flush();
+        Set<Integer> gatheredTargetIds = new HashSet<>();
+        database.forEachJavaFileBazelTarget((fileId, targetId) -> gatheredTargetIds.add(targetId));
+        SymbolsFileGatherResult exportsGatherResult =
+            BytecodeSymbolsGatherer.getExportedSymbolsForTargets(
+                Path.of(bazelWorkspace),
+                bazelTargets.stream()
+                    .filter(target -> !gatheredTargetIds.contains(target.getTargetId()))
+                    .collect(Collectors.toList()),
+                symbolGranularity,
+                persister::add);
+        symbolsFileGatherResult = symbolsFileGatherResult.combine(exportsGatherResult);
+      }
       System.out.println(symbolsFileGatherResult);
+      if (!symbolsFileGatherResult.getCompilationStats().isEmpty()) {
+        System.out.println(
+            CompilationStatsReport.create(
+                symbolsFileGatherResult.getCompilationStats(), statsReportSize));
+      }
 
-      System.out.println("Persisting Java source symbols to database...");
-      SymbolsPersistResult symbolsPersistResult =
-          SymbolsPersister.persistSymbols(symbolsFileGatherResult, database);
+      if (database.isBulkLoading()) {
+        System.out.println("Creating indexes and statistics of the bulk loaded database...");
+        persister.flush();
+        database.finishBulkLoad();
+      }
+      SymbolsPersistResult symbolsPersistResult = persister.finish();
       System.out.println(symbolsPersistResult);
+      System.out.println("Rows inserted per table:");
+      database.getTableInsertStats().forEach(stats -> System.out.println("  " + stats));
+      if (snapshotFile != null) {
+        System.out.println("Writing graph snapshot...");
+        Duration snapshotDuration = GraphSnapshotWriter.write(database, Path.of(snapshotFile));
+        System.out.printf(
+            "Wrote graph snapshot to %s in %d ms%n", snapshotFile, snapshotDuration.toMillis());
+      }
+      if (shardsFailed > 0) {
+        System.out.printf(
+            "%d shards failed to build and are not recorded as complete. Run again with --resume"
+                + " to retry only them.%n",
+            shardsFailed);
+      }
 
     } catch (SQLException | IOException | IllegalArgumentException | InterruptedException e) {
       System.out.println(
@@ -138,4 +386,100 @@ public class CollectCommand implements Runnable {
       }
     }
   }
+
+  /**
+   * Creates a new database, or with {@code --resume} opens the one that an interrupted run with
+   * the same settings left behind.
+   */
+  private Database openDatabase(Path databasePath, String targetPattern)
+      throws IOException, SQLException {
+    String settings =
+        String.format(
+            "pattern=%s extraction=%s granularity=%s stop_at_pattern_boundary=%s shard_by=%s"
+                + " shard_size=%d",
+            targetPattern,
+            extraction,
+            symbolGranularity.getFlagValue(),
+            stopAtPatternBoundary,
+            shardBy,
+            shardSize);
+    if (resume) {
+      Database database = Database.openOrCreate(databasePath);
+      Optional<String> resumedSettings =
+          database.getMetadata(Database.COLLECT_SETTINGS_METADATA_KEY);
+      if (database.getCheckpoints().contains(TARGET_GRAPH_CHECKPOINT)) {
+        if (resumedSettings.isPresent() && !resumedSettings.get().equals(settings)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Cannot resume %s, which was collected with different settings: %s",
+                  databasePath, resumedSettings.get()));
+        }
+        System.out.println("Resuming collection into " + databasePath);
+        return database;
+      }
+      // nothing worth keeping was persisted before the run was interrupted
+      database.close();
+    }
+    Database database =
+        bulkLoad && shardSize == 0 && !resume
+            ? Database.createNewForBulkLoad(databasePath)
+            : Database.createNew(databasePath);
+    database.putMetadata(Database.COLLECT_SETTINGS_METADATA_KEY, settings);
+    return database;
+  }
+
+  private List<String> getAnalyzerBazelFlags(String targetPattern) throws IOException {
+    List<String> bazelFlags = new ArrayList<>();
+    AnalyzerRepository analyzerRepository = AnalyzerRepository.create();
+    bazelFlags.add(
+        "--override_repository=unused_deps=" + analyzerRepository.getDirectory().toAbsolutePath());
+    bazelFlags.add("--aspects=@unused_deps//:defs.bzl%analyzer");
+    bazelFlags.add("--output_groups=" + ANALYSIS_OUTPUT_GROUP);
+    bazelFlags.add("--define=unused_deps_symbols_format=" + symbolsFormat.getFlagValue());
+    bazelFlags.add("--define=unused_deps_symbol_granularity=" + symbolGranularity.getFlagValue());
+    bazelFlags.add("--define=unused_deps_generate_bytecode=" + generateBytecode);
+    bazelFlags.add("--define=unused_deps_plugin_version=" + analyzerRepository.getVersion());
+    bazelFlags.add("--define=unused_deps_stats=" + pluginStats);
+    if (stopAtPatternBoundary) {
+      // the boundary is the whole pattern, even when only a shard of it is built
+      bazelFlags.add("--define=unused_deps_target_pattern=" + targetPattern);
+    }
+    if (ignoreCache) {
+      bazelFlags.add("--disk_cache=");
+      bazelFlags.add(String.format("--action_env=\"time=%d\"", System.currentTimeMillis()));
+    }
+    bazelFlags.add("--announce_rc");
+    bazelFlags.add("--curses=no");
+    bazelFlags.add("--sandbox_debug");
+    bazelFlags.add("--verbose_failures");
+    return bazelFlags;
+  }
+
+  /**
+   * Builds targets with the analyzer aspect. The symbols files of every target are gathered and
+   * persisted as soon as the build events announce that it completed, while the rest of the build
+   * is still running.
+   */
+  private BazelBuildResult buildAndGather(
+      List<String> targets, List<String> bazelFlags, SymbolsFileGatherer gatherer)
+      throws IOException, InterruptedException {
+    Path workspace = Path.of(Objects.requireNonNull(bazelWorkspace));
+    RunningBazelBuild build = BazelBuildRunner.startBuild(targets, bazelFlags, workspace, debug);
+    System.out.println("Gathering and persisting *-symbols files as targets complete...");
+    BuildEventOutputs.follow(
+        build, ANALYSIS_OUTPUT_GROUP, workspace, gatherer::addTargetOutputFiles);
+    gatherer.finish();
+    BazelBuildResult buildResult = build.awaitResult();
+    System.out.println(buildResult);
+    return buildResult;
+  }
+
+  /** Labels of the targets of the main repository that match the target pattern. */
+  private static List<BazelRuleLabel> getPatternTargetLabels(
+      List<BazelTarget> bazelTargets, String targetPattern) {
+    return bazelTargets.stream()
+        .map(target -> BazelRuleLabel.of(target.getTargetLabel()))
+        .filter(label -> label.isInTargetPattern(targetPattern))
+        .collect(Collectors.toList());
+  }
 }
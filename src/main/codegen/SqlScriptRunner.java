@@ -4,6 +4,8 @@ import com.google.common.base.Splitter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 
@@ -28,17 +30,31 @@ public class SqlScriptRunner {
    * @throws SQLException if error occurs
    */
   public static void execute(Connection connection, String script) throws SQLException {
+    for (String statement : splitStatements(script)) {
+      try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
+        preparedStatement.execute();
+      }
+    }
+  }
+
+  /**
+   * Splits a SQL script String into its statements, separating on ';', without comments and with
+   * each statement on a single line.
+   *
+   * @param script String of SQL script
+   * @return the statements of the script, each ending with ';'
+   */
+  public static List<String> splitStatements(String script) {
     String removedComments = COMMENT_PATTERN.matcher(script).replaceAll("");
     Iterable<String> dirtyStatements = Splitter.on(';').split(removedComments);
+    List<String> statements = new ArrayList<>();
     for (String dirty : dirtyStatements) {
       String removedNewLine = dirty.trim().replace("\n", " ");
       if (StringUtils.isBlank(removedNewLine)) {
         continue;
       }
-      String statement = removedNewLine + ";";
-      try (PreparedStatement preparedStatement = connection.prepareStatement(statement)) {
-        preparedStatement.execute();
-      }
+      statements.add(removedNewLine + ";");
     }
+    return statements;
   }
 }
@@ -0,0 +1,147 @@
+package com.stripe.build.dependencyanalyzer.collection;
+
+import com.stripe.build.dependencyanalyzer.bytecode.BytecodeSymbolExtractor;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolGranularity;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Gathers symbols for a set of Bazel targets from the class files in their output jars, instead of
+ * from symbols files written by the compiler plugin, so that the output of an ordinary build can be
+ * used without recompiling anything.
+ */
+public class BytecodeSymbolsGatherer {
+
+  private final Path bazelWorkspace;
+  private final BytecodeSymbolExtractor extractor;
+  private final boolean exportsOnly;
+
+  /**
+   * Extracts symbols from the output jars of a set of Bazel targets in the bazel-bin. Targets
+   * without an output jar, like those of external repositories, are skipped.
+   *
+   * @param bazelWorkspace Bazel workspace root directory (should contain a WORKSPACE file)
+   * @param targets the set of Bazel targets for which to extract symbols
+   * @param granularity granularity of the extracted symbols
+   * @param consumer receives one {@link SymbolCollectionResult} per source file
+   * @return result object containing the number of results and what was read
+   * @throws IOException if error occurs reading an output jar
+   */
+  public static SymbolsFileGatherResult getSymbolsForTargets(
+      Path bazelWorkspace,
+      Collection<BazelTarget> targets,
+      SymbolGranularity granularity,
+      Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    return new BytecodeSymbolsGatherer(bazelWorkspace, granularity, false)
+        .gatherSymbolsForTargets(targets, consumer);
+  }
+
+  /**
+   * Extracts only the exported symbols of a set of Bazel targets, for targets whose imports are
+   * not analyzed. Header jars are enough for this, so they are used if there is no full jar.
+   *
+   * @param bazelWorkspace Bazel workspace root directory (should contain a WORKSPACE file)
+   * @param targets the set of Bazel targets for which to extract exported symbols
+   * @param granularity granularity of the extracted symbols
+   * @param consumer receives one {@link SymbolCollectionResult} without imported symbols per
+   *     source file
+   * @return result object containing the number of results and what was read
+   * @throws IOException if error occurs reading an output jar
+   */
+  public static SymbolsFileGatherResult getExportedSymbolsForTargets(
+      Path bazelWorkspace,
+      Collection<BazelTarget> targets,
+      SymbolGranularity granularity,
+      Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    return new BytecodeSymbolsGatherer(bazelWorkspace, granularity, true)
+        .gatherSymbolsForTargets(targets, consumer);
+  }
+
+  private BytecodeSymbolsGatherer(
+      Path bazelWorkspace, SymbolGranularity granularity, boolean exportsOnly) {
+    this.bazelWorkspace = bazelWorkspace;
+    this.extractor = new BytecodeSymbolExtractor(granularity);
+    this.exportsOnly = exportsOnly;
+  }
+
+  private SymbolsFileGatherResult gatherSymbolsForTargets(
+      Collection<BazelTarget> targets, Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    Instant startTime = Clock.systemUTC().instant();
+    int jarsRead = 0;
+    long bytesRead = 0;
+    for (BazelTarget target : targets) {
+      Optional<Path> jar = findOutputJar(target.getTargetLabel());
+      if (jar.isPresent()) {
+        extractor.addJar(jar.get(), target.getTargetLabel());
+        jarsRead++;
+        bytesRead += Files.size(jar.get());
+      }
+    }
+    Set<SymbolCollectionResult> results = new HashSet<>();
+    for (SymbolCollectionResult result : extractor.getResults()) {
+      results.add(
+          exportsOnly
+              ? SymbolCollectionResult.create(
+                  result.getSourceFileName(),
+                  result.getPackageName(),
+                  result.getBazelTargetLabel(),
+                  result.getExportedSymbols(),
+                  List.of())
+              : result);
+    }
+    results.forEach(consumer);
+    Instant endTime = Clock.systemUTC().instant();
+    return SymbolsFileGatherResult.create(
+        results.size(),
+        List.of(),
+        jarsRead,
+        bytesRead,
+        Duration.between(startTime, endTime));
+  }
+
+  /**
+   * Finds the jar of class files built for a label like {@code //src/foo:bar}, which is named
+   * {@code libbar.jar} for a {@code java_library} and {@code bar.jar} for a {@code java_binary} or
+   * {@code java_test}. When only exports are needed, the {@code libbar-hjar.jar} header jar, which
+   * is all that the targets depending on it are compiled against, is read first: a build that
+   * stops at the boundary of a target pattern only produces the header jars of the targets outside
+   * of it, so their full jars can be left over from an earlier build.
+   */
+  private Optional<Path> findOutputJar(String targetLabel) {
+    if (!targetLabel.startsWith("//")) {
+      return Optional.empty();
+    }
+    String label = targetLabel.substring(2);
+    int colon = label.indexOf(':');
+    String packagePath = colon < 0 ? label : label.substring(0, colon);
+    String name =
+        colon < 0 ? label.substring(label.lastIndexOf('/') + 1) : label.substring(colon + 1);
+    Path packageOutput = bazelWorkspace.resolve("bazel-bin").resolve(packagePath);
+    List<String> jarNames =
+        exportsOnly
+            ? List.of("lib" + name + "-hjar.jar", "lib" + name + ".jar", name + ".jar")
+            : List.of("lib" + name + ".jar", name + ".jar");
+    for (String jarName : jarNames) {
+      Path jar = packageOutput.resolve(jarName);
+      if (Files.isRegularFile(jar)) {
+        return Optional.of(jar);
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,88 @@
+package com.stripe.build.dependencyanalyzer.collection;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.stripe.build.dependencyanalyzer.plugin.CompilationStats;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Aggregates the stats written by the compiler plugin for every target into a report of the
+ * targets that took longest to compile and that produced the most symbols, which are the ones
+ * worth excluding or splitting up.
+ */
+@AutoValue
+public abstract class CompilationStatsReport {
+
+  public abstract int getTargetCount();
+
+  public abstract long getUnitCount();
+
+  public abstract Duration getTotalCompilationTime();
+
+  public abstract Duration getTotalScanTime();
+
+  public abstract long getTotalSymbolsFileBytes();
+
+  public abstract ImmutableList<CompilationStats> getSlowestTargets();
+
+  public abstract ImmutableList<CompilationStats> getLargestProducers();
+
+  /**
+   * Builds a report from the stats of every target.
+   *
+   * @param stats the stats of every target
+   * @param size number of targets to list as slowest and as largest producers
+   */
+  public static CompilationStatsReport create(Collection<CompilationStats> stats, int size) {
+    return new AutoValue_CompilationStatsReport(
+        stats.size(),
+        stats.stream().mapToLong(s -> s.getUnits().size()).sum(),
+        stats.stream()
+            .map(CompilationStats::getCompilationTime)
+            .reduce(Duration.ZERO, Duration::plus),
+        stats.stream().map(CompilationStats::getScanTime).reduce(Duration.ZERO, Duration::plus),
+        stats.stream().mapToLong(CompilationStats::getSymbolsFileBytes).sum(),
+        stats.stream()
+            .sorted(Comparator.comparing(CompilationStats::getCompilationTime).reversed())
+            .limit(size)
+            .collect(ImmutableList.toImmutableList()),
+        stats.stream()
+            .sorted(Comparator.comparingLong(CompilationStats::getSymbolCount).reversed())
+            .limit(size)
+            .collect(ImmutableList.toImmutableList()));
+  }
+
+  @Override
+  public final String toString() {
+    var sb =
+        new StringBuilder(
+            String.format(
+                "Compiler plugin stats for %d targets with %d compilation units\n",
+                getTargetCount(), getUnitCount()));
+    sb.append(
+        String.format(
+            "Total compilation time: %.1f seconds, of which scanning: %.1f seconds\n",
+            getTotalCompilationTime().toMillis() / 1e3, getTotalScanTime().toMillis() / 1e3));
+    sb.append(String.format("Total symbols file size: %d bytes\n", getTotalSymbolsFileBytes()));
+    sb.append("Slowest targets:\n");
+    for (CompilationStats stats : getSlowestTargets()) {
+      sb.append(
+          String.format(
+              "  %8.1f s compiling, %7.1f s scanning %5d units  %s\n",
+              stats.getCompilationTime().toMillis() / 1e3,
+              stats.getScanTime().toMillis() / 1e3,
+              stats.getUnits().size(),
+              stats.getBazelTargetLabel()));
+    }
+    sb.append("Largest symbol producers:\n");
+    for (CompilationStats stats : getLargestProducers()) {
+      sb.append(
+          String.format(
+              "  %10d symbols, %10d bytes  %s\n",
+              stats.getSymbolCount(), stats.getSymbolsFileBytes(), stats.getBazelTargetLabel()));
+    }
+    return sb.toString();
+  }
+}
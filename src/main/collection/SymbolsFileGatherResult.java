@@ -1,35 +1,79 @@
 package com.stripe.build.dependencyanalyzer.collection;
 
 import com.google.auto.value.AutoValue;
-import com.google.common.collect.ImmutableSet;
-import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.google.common.collect.ImmutableList;
+import com.stripe.build.dependencyanalyzer.plugin.CompilationStats;
 import java.time.Duration;
 import java.util.Collection;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @AutoValue
 public abstract class SymbolsFileGatherResult {
-  public abstract ImmutableSet<SymbolCollectionResult> getSymbolResults();
+  private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+  /** Number of results gathered, each of which was handed to the consumer of the gatherer. */
+  public abstract int getResultsGathered();
+
+  /** Stats written by the compiler plugin next to the symbols files, one for every target. */
+  public abstract ImmutableList<CompilationStats> getCompilationStats();
+
+  /** Number of files that were parsed, whether or not they held results for the targets. */
+  public abstract int getFilesRead();
+
+  public abstract long getBytesRead();
 
   public abstract Duration getTimeElapsed();
 
   public static SymbolsFileGatherResult create(
-      Set<SymbolCollectionResult> symbolResults, Duration timeElapsed) {
-    return new AutoValue_SymbolsFileGatherResult(ImmutableSet.copyOf(symbolResults), timeElapsed);
+      int resultsGathered,
+      Collection<CompilationStats> compilationStats,
+      int filesRead,
+      long bytesRead,
+      Duration timeElapsed) {
+    return new AutoValue_SymbolsFileGatherResult(
+        resultsGathered,
+        ImmutableList.copyOf(compilationStats),
+        filesRead,
+        bytesRead,
+        timeElapsed);
+  }
+
+  /** Combines the results of two gatherers, which took the sum of their times. */
+  public SymbolsFileGatherResult combine(SymbolsFileGatherResult other) {
+    return create(
+        getResultsGathered() + other.getResultsGathered(),
+        ImmutableList.<CompilationStats>builder()
+            .addAll(getCompilationStats())
+            .addAll(other.getCompilationStats())
+            .build(),
+        getFilesRead() + other.getFilesRead(),
+        getBytesRead() + other.getBytesRead(),
+        getTimeElapsed().plus(other.getTimeElapsed()));
+  }
+
+  public double getFilesPerSecond() {
+    return getFilesRead() / getSecondsElapsed();
+  }
+
+  public double getMegabytesPerSecond() {
+    return getBytesRead() / BYTES_PER_MEGABYTE / getSecondsElapsed();
   }
 
-  public Set<String> getAllSymbols() {
-    return getSymbolResults().stream()
-        .map(SymbolCollectionResult::getAllSymbols)
-        .flatMap(Collection::stream)
-        .collect(Collectors.toSet());
+  private double getSecondsElapsed() {
+    // never divide by zero for a gather that took no measurable time
+    return Math.max(getTimeElapsed().toNanos(), 1) / 1e9;
   }
 
   @Override
   public final String toString() {
     var sb =
-        new StringBuilder(String.format("Gathered %d symbols files\n", getSymbolResults().size()));
+        new StringBuilder(String.format("Gathered %d symbols files\n", getResultsGathered()));
+    sb.append(
+        String.format(
+            "Read %d files (%.1f MB) at %.1f files/sec, %.1f MB/sec\n",
+            getFilesRead(),
+            getBytesRead() / BYTES_PER_MEGABYTE,
+            getFilesPerSecond(),
+            getMegabytesPerSecond()));
     sb.append(String.format("Time elapsed: %d seconds\n", getTimeElapsed().getSeconds()));
     return sb.toString();
   }
@@ -1,10 +1,18 @@
 package com.stripe.build.dependencyanalyzer.collection;
 
-import com.google.gson.JsonElement;
+import com.google.common.base.Throwables;
 import com.google.gson.JsonStreamParser;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.plugin.BinarySymbolsFormat;
+import com.stripe.build.dependencyanalyzer.plugin.CompilationStats;
+import com.stripe.build.dependencyanalyzer.plugin.JsonSymbolsFormat;
 import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolsFileFormat;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolsFileManager;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
@@ -12,71 +20,278 @@ import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
-public class SymbolsFileGatherer {
+/**
+ * Parses the symbols and stats files written by the compiler plugin. Files are parsed on a pool of
+ * threads, each of which returns what it parsed, and the results are only handed to the consumer
+ * on the calling thread, so the threads share nothing while parsing. Only a bounded number of
+ * files are parsed ahead of the consumer, so that the results are never all held in memory.
+ *
+ * <p>The unit of that bound is a whole file: a parsed file's kept results are held until they are
+ * all consumed, so at most {@code threads * FILES_AHEAD_PER_THREAD} files' results are held at
+ * once. A symbols file holds the results of the source files of a single target, so this is
+ * bounded by the largest targets rather than by the size of the build.
+ *
+ * <p>Files can also be added one target at a time while a build is still running, with {@link
+ * #start}, so that the files of the targets that completed first are parsed and consumed while
+ * the others are still being compiled.
+ */
+public class SymbolsFileGatherer implements AutoCloseable {
 
-  private final Path bazelWorkspace;
-  private final Set<SymbolCollectionResult> symbolsResults = new HashSet<>();
+  /** Number of files, per thread, that may have been parsed but not yet consumed. */
+  private static final int FILES_AHEAD_PER_THREAD = 4;
+
+  private final Set<String> targetLabelSet;
+  private final int threads;
+  private final Consumer<SymbolCollectionResult> consumer;
+  private final ExecutorService executor;
+  private final Instant startTime = Clock.systemUTC().instant();
+  private final Deque<Future<ParsedOutputFile>> parsedFiles = new ArrayDeque<>();
+  private final List<CompilationStats> compilationStats = new ArrayList<>();
+  private int filesRead;
+  private int resultsGathered;
+  private long bytesRead;
 
   /**
-   * Gathers all symbols.json files from the bazel-bin for a set of Bazel targets and returns the
-   * parsed results.
+   * Gathers all symbols files (binary or JSON) from the bazel-bin for a set of Bazel targets and
+   * returns the parsed results, along with the compiler plugin's stats files for those targets.
+   * This walks the whole output tree, so it is only meant for outputs of an earlier build, whose
+   * build events are not known.
    *
    * @param bazelWorkspace Bazel workspace root directory (should contain a WORKSPACE file)
    * @param targets the set of Bazel targets for which to collect symbols files
-   * @return result object containing parsed {@link SymbolCollectionResult} objects
+   * @param threads number of threads to parse the files on
+   * @param consumer receives every parsed {@link SymbolCollectionResult}, on the calling thread
+   * @return result object containing the stats of the targets and what was read
    * @throws IOException if error occurs reading a symbols file
    */
   public static SymbolsFileGatherResult getSymbolsForTargets(
-      Path bazelWorkspace, Collection<BazelTarget> targets) throws IOException {
-    return new SymbolsFileGatherer(bazelWorkspace).gatherSymbolsForTargets(targets);
+      Path bazelWorkspace,
+      Collection<BazelTarget> targets,
+      int threads,
+      Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    List<Path> allOutputFiles;
+    try (Stream<Path> paths =
+        Files.walk(bazelWorkspace.resolve("bazel-bin"), FileVisitOption.FOLLOW_LINKS)) {
+      allOutputFiles = paths.filter(SymbolsFileGatherer::isOutputFile).collect(Collectors.toList());
+    }
+    try (SymbolsFileGatherer gatherer = start(targets, threads, consumer)) {
+      for (Path outputFile : allOutputFiles) {
+        gatherer.addOutputFile(outputFile);
+      }
+      return gatherer.finish();
+    }
   }
 
-  private SymbolsFileGatherer(Path bazelWorkspace) {
-    this.bazelWorkspace = bazelWorkspace;
+  /**
+   * Gathers the symbols and stats files that a build produced for a set of Bazel targets, as
+   * listed in its build events. Only the files of the given targets are read, and files left in
+   * the bazel-bin by earlier builds never are.
+   *
+   * @param outputFiles the files of the analyzer output group by target label, see {@link
+   *     com.stripe.build.dependencyanalyzer.bazel.BuildEventOutputs}
+   * @param targets the set of Bazel targets for which to collect symbols files
+   * @param threads number of threads to parse the files on
+   * @param consumer receives every parsed {@link SymbolCollectionResult}, on the calling thread
+   * @return result object containing the stats of the targets and what was read
+   * @throws IOException if error occurs reading a symbols file
+   */
+  public static SymbolsFileGatherResult getSymbolsFromOutputFiles(
+      Map<String, ? extends Collection<Path>> outputFiles,
+      Collection<BazelTarget> targets,
+      int threads,
+      Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    try (SymbolsFileGatherer gatherer = start(targets, threads, consumer)) {
+      for (Map.Entry<String, ? extends Collection<Path>> entry : outputFiles.entrySet()) {
+        gatherer.addTargetOutputFiles(entry.getKey(), entry.getValue());
+      }
+      return gatherer.finish();
+    }
   }
 
-  private SymbolsFileGatherResult gatherSymbolsForTargets(Collection<BazelTarget> targets)
-      throws IOException {
-    Instant startTime = Clock.systemUTC().instant();
-    Set<String> targetLabelSet =
+  /**
+   * Starts a gatherer that is handed the output files of one target at a time, like those of the
+   * targets of a running build as they complete. It must be closed, which stops its threads.
+   *
+   * @param targets the set of Bazel targets for which to collect symbols files
+   * @param threads number of threads to parse the files on
+   * @param consumer receives every parsed {@link SymbolCollectionResult}, on the calling thread
+   * @return the gatherer, to add files to and then finish
+   */
+  public static SymbolsFileGatherer start(
+      Collection<BazelTarget> targets, int threads, Consumer<SymbolCollectionResult> consumer) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Gathering needs at least one thread, got " + threads);
+    }
+    return new SymbolsFileGatherer(targets, threads, consumer);
+  }
+
+  private SymbolsFileGatherer(
+      Collection<BazelTarget> targets, int threads, Consumer<SymbolCollectionResult> consumer) {
+    this.targetLabelSet =
         targets.stream().map(BazelTarget::getTargetLabel).collect(Collectors.toSet());
+    this.threads = threads;
+    this.consumer = consumer;
+    this.executor = Executors.newFixedThreadPool(threads);
+  }
 
-    try (Stream<Path> paths =
-        Files.walk(bazelWorkspace.resolve("bazel-bin"), FileVisitOption.FOLLOW_LINKS)) {
-      Set<Path> allSymbolsFiles =
-          paths.filter(p -> p.toString().endsWith("symbols.json")).collect(Collectors.toSet());
-      for (Path symbolsFile : allSymbolsFiles) {
-        try (Reader reader = Files.newBufferedReader(symbolsFile)) {
-          var parser = new JsonStreamParser(reader);
-          var doc = parser.next();
-          Iterable<JsonElement> array;
-
-          if (doc.isJsonArray()) {
-            array = doc.getAsJsonArray();
-          } else {
-            array = List.of(doc);
-          }
-          for (JsonElement jsonElement : array) {
-            if (jsonElement.isJsonNull()) {
-              continue;
-            }
-            SymbolCollectionResult result =
-                SymbolCollectionResult.fromJsonObject(jsonElement.getAsJsonObject());
-            if (targetLabelSet.contains(result.getBazelTargetLabel())) {
-              symbolsResults.add(result);
-            }
-          }
-        }
+  /**
+   * Parses the symbols and stats files among the output files of a target, unless the target is
+   * not one of those being gathered. Results of files that were already parsed are consumed
+   * first, so this only blocks while too many files are waiting to be consumed.
+   *
+   * @param targetLabel label of the target that produced the files
+   * @param outputFiles the files of the analyzer output group of the target
+   * @throws IOException if error occurs reading a symbols file that was already parsed
+   */
+  public void addTargetOutputFiles(String targetLabel, Collection<Path> outputFiles)
+      throws IOException {
+    if (!targetLabelSet.contains(targetLabel)) {
+      return;
+    }
+    for (Path outputFile : outputFiles) {
+      if (isOutputFile(outputFile)) {
+        addOutputFile(outputFile);
       }
     }
+  }
+
+  /**
+   * Consumes the results of every file that is still being parsed. More files may be added
+   * afterwards, like those of the next shard of targets, and finishing again covers them too.
+   *
+   * @return result object containing the stats of the targets and what was read so far
+   * @throws IOException if error occurs reading a symbols file
+   */
+  public SymbolsFileGatherResult finish() throws IOException {
+    while (!parsedFiles.isEmpty()) {
+      consumeNextFile();
+    }
     Instant endTime = Clock.systemUTC().instant();
-    return SymbolsFileGatherResult.create(symbolsResults, Duration.between(startTime, endTime));
+    return SymbolsFileGatherResult.create(
+        resultsGathered,
+        compilationStats,
+        filesRead,
+        bytesRead,
+        Duration.between(startTime, endTime));
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static boolean isOutputFile(Path path) {
+    return SymbolsFileFormat.fromFileName(path.toString()).isPresent()
+        || path.toString().endsWith(SymbolsFileManager.STATS_FILE_SUFFIX);
+  }
+
+  /** Parses a file on the pool, whose results are consumed in the order the files were added. */
+  private void addOutputFile(Path outputFile) throws IOException {
+    while (!parsedFiles.isEmpty()
+        && (parsedFiles.peek().isDone()
+            || parsedFiles.size() >= threads * FILES_AHEAD_PER_THREAD)) {
+      consumeNextFile();
+    }
+    parsedFiles.add(
+        executor.submit(() -> ParsedOutputFile.parse(outputFile, this::isTargetResult)));
+    filesRead++;
+  }
+
+  private void consumeNextFile() throws IOException {
+    ParsedOutputFile parsedFile;
+    try {
+      parsedFile = parsedFiles.remove().get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing symbols files");
+    }
+    bytesRead += parsedFile.bytes;
+    if (parsedFile.stats != null
+        && targetLabelSet.contains(parsedFile.stats.getBazelTargetLabel())) {
+      compilationStats.add(parsedFile.stats);
+    }
+    resultsGathered += parsedFile.symbolsResults.size();
+    parsedFile.symbolsResults.forEach(consumer);
+  }
+
+  /** Only read by the parsing threads, since the set of targets never changes. */
+  private boolean isTargetResult(SymbolCollectionResult result) {
+    return targetLabelSet.contains(result.getBazelTargetLabel());
+  }
+
+  /** What one thread parsed from a symbols or stats file. */
+  private static final class ParsedOutputFile {
+    private final long bytes;
+    private final List<SymbolCollectionResult> symbolsResults;
+    @Nullable private final CompilationStats stats;
+
+    private ParsedOutputFile(
+        long bytes, List<SymbolCollectionResult> symbolsResults, @Nullable CompilationStats stats) {
+      this.bytes = bytes;
+      this.symbolsResults = symbolsResults;
+      this.stats = stats;
+    }
+
+    static ParsedOutputFile parse(Path outputFile, Predicate<SymbolCollectionResult> filter)
+        throws IOException {
+      long bytes = Files.size(outputFile);
+      if (outputFile.toString().endsWith(SymbolsFileManager.STATS_FILE_SUFFIX)) {
+        return new ParsedOutputFile(bytes, List.of(), parseStatsFile(outputFile));
+      }
+      return new ParsedOutputFile(bytes, parseSymbolsFile(outputFile, filter), null);
+    }
+  }
+
+  private static CompilationStats parseStatsFile(Path statsFile) throws IOException {
+    try (Reader reader = Files.newBufferedReader(statsFile)) {
+      return CompilationStats.fromJsonObject(new JsonStreamParser(reader).next().getAsJsonObject());
+    }
+  }
+
+  private static List<SymbolCollectionResult> parseSymbolsFile(
+      Path symbolsFile, Predicate<SymbolCollectionResult> filter) throws IOException {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    if (SymbolsFileFormat.fromFileName(symbolsFile.toString()).orElseThrow()
+        == SymbolsFileFormat.BINARY) {
+      try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(symbolsFile))) {
+        BinarySymbolsFormat.read(inputStream).stream().filter(filter).forEach(results::add);
+      }
+      return results;
+    }
+
+    // results are streamed from the file, so only those that are kept are ever held at once
+    try (Reader reader = Files.newBufferedReader(symbolsFile)) {
+      JsonSymbolsFormat.read(
+          reader,
+          result -> {
+            if (filter.test(result)) {
+              results.add(result);
+            }
+          });
+    }
+    return results;
   }
 }
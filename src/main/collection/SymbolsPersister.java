@@ -1,7 +1,6 @@
 package com.stripe.build.dependencyanalyzer.collection;
 
 import com.stripe.build.dependencyanalyzer.database.Database;
-import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFile;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileBazelTarget;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileExportedSymbol;
@@ -12,103 +11,178 @@ import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * Persists the many-to-many relationships between Java files and imported/exported symbols, as
+ * well as Java files and Bazel targets, as results arrive. Symbols and files get their ids from
+ * dictionaries that intern their names, and rows are written to the database in batches, so that
+ * only the dictionaries and a single batch are ever held in memory rather than every result.
+ *
+ * <p>A persister is not thread-safe: results must all be added from the same thread.
+ */
 public class SymbolsPersister {
 
+  /** Number of rows buffered before they are written, if no other batch size is given. */
+  public static final int DEFAULT_BATCH_SIZE = 100_000;
+
   private final Database database;
+  private final int batchSize;
+  private final Instant startTime;
+  private final Map<String, Integer> labelToTargetId = new HashMap<>();
+
+  /** Ids of every symbol and file seen so far, assigned in the order they were first seen. */
+  private final Map<String, Integer> symbolIds = new HashMap<>();
+
+  private final Map<String, Integer> fileIds = new HashMap<>();
+
+  private final List<Symbol> symbolsToInsert = new ArrayList<>();
+  private final List<JavaFile> javaFilesToInsert = new ArrayList<>();
+  private final List<JavaFileBazelTarget> javaFileBazelTargetsToInsert = new ArrayList<>();
+  private final List<JavaFileExportedSymbol> javaFileExportedSymbolsToInsert = new ArrayList<>();
+  private final List<JavaFileImportedSymbol> javaFileImportedSymbolsToInsert = new ArrayList<>();
+  private final int numResumedSymbols;
+  private final int numResumedFiles;
+  /** Edges that were inserted, which excludes duplicates of edges that already existed. */
+  private int numExportedSymbolsInserted;
+
+  private int numImportedSymbolsInserted;
 
   /**
-   * Persists the information stored in the symbols.json files gathered and passed in to this method
-   * via symbolsFiles to the database. The basic mapping being stored in this step is the
-   * many-to-many relationships between Java files and imported/exported symbols, as well as Java
-   * files and Bazel targets.
+   * Starts persisting results to a database whose Bazel targets have already been persisted.
    *
-   * @param symbolsFiles all the gathered symbols files parsed and loaded into memory
    * @param database the database to persist the information in
-   * @return a results object containing stats about the database
-   * @throws IOException if error getting the size of the database
+   * @param batchSize number of rows to buffer before writing them to the database
+   * @return a persister to {@link #add} results to, and {@link #finish} once they have all been
+   *     added
    */
-  public static SymbolsPersistResult persistSymbols(
-      SymbolsFileGatherResult symbolsFiles, Database database) throws IOException {
-    return new SymbolsPersister(database).persist(symbolsFiles);
+  public static SymbolsPersister start(Database database, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+    }
+    return new SymbolsPersister(database, batchSize);
   }
 
-  private SymbolsPersister(Database database) {
+  private SymbolsPersister(Database database, int batchSize) {
     this.database = database;
+    this.batchSize = batchSize;
+    this.startTime = Clock.systemUTC().instant();
+    database.forEachBazelTarget(
+        (targetId, targetLabel) -> labelToTargetId.put(targetLabel, targetId));
+    // a resumed collect run continues from the symbols and files that were already persisted,
+    // which are only read back when there are any
+    this.numResumedSymbols = database.countSymbols();
+    this.numResumedFiles = database.countJavaFiles();
+    if (numResumedSymbols > 0) {
+      database.forEachSymbol((symbolId, name) -> symbolIds.put(name, symbolId));
+    }
+    if (numResumedFiles > 0) {
+      database.forEachJavaFile((fileId, path) -> fileIds.put(path, fileId));
+    }
   }
 
-  private SymbolsPersistResult persist(SymbolsFileGatherResult symbolsFileGatherResult)
-      throws IOException {
-    Instant startTime = Clock.systemUTC().instant();
+  /** Queues the rows of a result, and writes the queued rows once there is a batch of them. */
+  public void add(SymbolCollectionResult result) {
+    int targetId =
+        Objects.requireNonNull(
+            labelToTargetId.get(result.getBazelTargetLabel()),
+            () -> "Unknown Bazel target " + result.getBazelTargetLabel());
+    int fileId = internFile(result.getSourceFileName());
+    javaFileBazelTargetsToInsert.add(new JavaFileBazelTarget(targetId, fileId));
 
-    Map<String, BazelTarget> labelToBazelTarget =
-        database.getAllBazelTargets().stream()
-            .collect(Collectors.toMap(BazelTarget::getTargetLabel, target -> target));
+    // persist the edges between Java files and the symbols they export
+    for (String symbol : result.getExportedSymbols()) {
+      javaFileExportedSymbolsToInsert.add(new JavaFileExportedSymbol(fileId, internSymbol(symbol)));
+    }
 
-    Set<Symbol> symbolsToInsert = new HashSet<>();
-    int nextSymbolId = 1;
-    for (String fullyQualifiedName : symbolsFileGatherResult.getAllSymbols()) {
-      symbolsToInsert.add(new Symbol(nextSymbolId++, fullyQualifiedName));
+    // persist the edges between Java files and the symbols they import
+    for (String symbol : result.getImportedSymbols()) {
+      javaFileImportedSymbolsToInsert.add(new JavaFileImportedSymbol(fileId, internSymbol(symbol)));
     }
-    database.bulkInsertSymbols(symbolsToInsert);
-    symbolsToInsert.clear();
 
-    Map<String, Symbol> symbolNameToSymbol =
-        database.getAllSymbols().stream()
-            .collect(Collectors.toMap(Symbol::getFullyQualifiedName, symbol -> symbol));
-
-    int nextFileId = 1;
-    Map<String, JavaFile> fileNameToJavaFile = new HashMap<>();
-    Set<JavaFileBazelTarget> javaFileBazelTargetsToInsert = new HashSet<>();
-    Set<JavaFileExportedSymbol> javaFileExportedSymbolsToInsert = new HashSet<>();
-    Set<JavaFileImportedSymbol> javaFileImportedSymbolsToInsert = new HashSet<>();
-    for (SymbolCollectionResult symbolsFile : symbolsFileGatherResult.getSymbolResults()) {
-      BazelTarget bazelTarget =
-          Objects.requireNonNull(labelToBazelTarget.get(symbolsFile.getBazelTargetLabel()));
-
-      JavaFile javaFile =
-          fileNameToJavaFile.getOrDefault(
-              symbolsFile.getSourceFileName(),
-              new JavaFile(nextFileId++, symbolsFile.getSourceFileName()));
-      fileNameToJavaFile.putIfAbsent(javaFile.getFilePath(), javaFile);
-      javaFileBazelTargetsToInsert.add(
-          new JavaFileBazelTarget(bazelTarget.getTargetId(), javaFile.getFileId()));
-
-      // persist the edges between Java files and the symbols they export
-      symbolsFile.getExportedSymbols().stream()
-          .map(s -> Objects.requireNonNull(symbolNameToSymbol.get(s)))
-          .forEach(
-              symbol ->
-                  javaFileExportedSymbolsToInsert.add(
-                      new JavaFileExportedSymbol(javaFile.getFileId(), symbol.getSymbolId())));
-
-      // persist the edges between Java files and the symbols they import
-      symbolsFile.getImportedSymbols().stream()
-          .map(s -> Objects.requireNonNull(symbolNameToSymbol.get(s)))
-          .forEach(
-              symbol ->
-                  javaFileImportedSymbolsToInsert.add(
-                      new JavaFileImportedSymbol(javaFile.getFileId(), symbol.getSymbolId())));
+    if (getQueuedRows() >= batchSize) {
+      flush();
     }
-    database.bulkInsertJavaFiles(fileNameToJavaFile.values());
-    database.bulkInsertJavaFileBazelTargets(javaFileBazelTargetsToInsert);
-    database.bulkInsertJavaFileExportedSymbol(javaFileExportedSymbolsToInsert);
-    database.bulkInsertJavaFileImportedSymbol(javaFileImportedSymbolsToInsert);
+  }
 
+  /**
+   * Writes the remaining queued rows.
+   *
+   * @return a results object containing stats about the database
+   * @throws IOException if error getting the size of the database
+   */
+  public SymbolsPersistResult finish() throws IOException {
+    flush();
     Instant endTime = Clock.systemUTC().instant();
     return SymbolsPersistResult.create(
-        database.getAllJavaFiles().size(),
-        database.getAllSymbols().size(),
-        database.getAllJavaFileExportedSymbols().size(),
-        database.getAllJavaFileImportedSymbols().size(),
+        fileIds.size() - numResumedFiles,
+        symbolIds.size() - numResumedSymbols,
+        numExportedSymbolsInserted,
+        numImportedSymbolsInserted,
         database.getFilePath(),
         database.getFileSize(),
         Duration.between(startTime, endTime));
   }
+
+  private int internSymbol(String fullyQualifiedName) {
+    Integer symbolId = symbolIds.get(fullyQualifiedName);
+    if (symbolId == null) {
+      symbolId = symbolIds.size() + 1;
+      symbolIds.put(fullyQualifiedName, symbolId);
+      symbolsToInsert.add(new Symbol(symbolId, fullyQualifiedName));
+    }
+    return symbolId;
+  }
+
+  private int internFile(String filePath) {
+    Integer fileId = fileIds.get(filePath);
+    if (fileId == null) {
+      fileId = fileIds.size() + 1;
+      fileIds.put(filePath, fileId);
+      javaFilesToInsert.add(new JavaFile(fileId, filePath));
+    }
+    return fileId;
+  }
+
+  private int getQueuedRows() {
+    return symbolsToInsert.size()
+        + javaFilesToInsert.size()
+        + javaFileBazelTargetsToInsert.size()
+        + javaFileExportedSymbolsToInsert.size()
+        + javaFileImportedSymbolsToInsert.size();
+  }
+
+  /**
+   * Writes the queued rows, like at the end of a shard of targets, before it is recorded as
+   * complete. Symbols and files are written before the edges that refer to them.
+   */
+  public void flush() {
+    // edges are inserted in the order of their primary keys, so that they are appended to the keys
+    javaFileBazelTargetsToInsert.sort(
+        Comparator.comparing(JavaFileBazelTarget::getTargetId)
+            .thenComparing(JavaFileBazelTarget::getFileId));
+    javaFileExportedSymbolsToInsert.sort(
+        Comparator.comparing(JavaFileExportedSymbol::getFileId)
+            .thenComparing(JavaFileExportedSymbol::getSymbolId));
+    javaFileImportedSymbolsToInsert.sort(
+        Comparator.comparing(JavaFileImportedSymbol::getFileId)
+            .thenComparing(JavaFileImportedSymbol::getSymbolId));
+    database.bulkInsertSymbols(symbolsToInsert);
+    database.bulkInsertJavaFiles(javaFilesToInsert);
+    database.bulkInsertJavaFileBazelTargets(javaFileBazelTargetsToInsert);
+    numExportedSymbolsInserted +=
+        database.bulkInsertJavaFileExportedSymbol(javaFileExportedSymbolsToInsert);
+    numImportedSymbolsInserted +=
+        database.bulkInsertJavaFileImportedSymbol(javaFileImportedSymbolsToInsert);
+    symbolsToInsert.clear();
+    javaFilesToInsert.clear();
+    javaFileBazelTargetsToInsert.clear();
+    javaFileExportedSymbolsToInsert.clear();
+    javaFileImportedSymbolsToInsert.clear();
+  }
 }
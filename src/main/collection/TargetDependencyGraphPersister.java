@@ -10,7 +10,11 @@ import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -51,44 +55,49 @@ public class TargetDependencyGraphPersister {
       allTargetLabels.addAll(parsedTarget.getDeps());
     }
 
-    Set<BazelTarget> targetsToInsert = new HashSet<>();
+    // targets are inserted in the order of their ids, as are the edges between them
+    List<BazelTarget> targetsToInsert = new ArrayList<>();
+    Map<String, Integer> labelToTargetId = new HashMap<>();
     int targetId = 1;
     for (BazelRuleLabel label : allTargetLabels) {
+      labelToTargetId.put(label.value(), targetId);
       targetsToInsert.add(new BazelTarget(targetId++, label.value()));
     }
     database.bulkInsertBazelTargets(targetsToInsert);
     targetsToInsert.clear();
 
-    Map<String, BazelTarget> labelToInsertedTarget =
-        database.getAllBazelTargets().stream()
-            .collect(Collectors.toMap(BazelTarget::getTargetLabel, target -> target));
-
     Set<BazelEdge> bazelEdgesToInsert = new HashSet<>();
     Set<BazelExportEdge> exportEdgesToInsert = new HashSet<>();
     for (ParsedBazelTarget fromParsedTarget : labelToParsedTarget.values()) {
-      BazelTarget fromInsertedTarget =
-          Objects.requireNonNull(labelToInsertedTarget.get(fromParsedTarget.getLabel().value()));
+      int fromTargetId =
+          Objects.requireNonNull(labelToTargetId.get(fromParsedTarget.getLabel().value()));
       for (BazelRuleLabel depLabel : fromParsedTarget.getDeps()) {
-        BazelTarget toInsertedTarget =
-            Objects.requireNonNull(labelToInsertedTarget.get(depLabel.value()));
-        bazelEdgesToInsert.add(
-            new BazelEdge(fromInsertedTarget.getTargetId(), toInsertedTarget.getTargetId()));
+        int toTargetId = Objects.requireNonNull(labelToTargetId.get(depLabel.value()));
+        bazelEdgesToInsert.add(new BazelEdge(fromTargetId, toTargetId));
       }
 
       for (BazelRuleLabel exportedLabel : fromParsedTarget.getExports()) {
-        BazelTarget exportedTarget =
-            Objects.requireNonNull(labelToInsertedTarget.get(exportedLabel.value()));
-        exportEdgesToInsert.add(
-            new BazelExportEdge(fromInsertedTarget.getTargetId(), exportedTarget.getTargetId()));
+        int exportedTargetId = Objects.requireNonNull(labelToTargetId.get(exportedLabel.value()));
+        exportEdgesToInsert.add(new BazelExportEdge(fromTargetId, exportedTargetId));
       }
     }
-    database.bulkInsertBazelEdges(bazelEdgesToInsert);
-    database.bulkInsertExportEdges(exportEdgesToInsert);
+    database.bulkInsertBazelEdges(
+        bazelEdgesToInsert.stream()
+            .sorted(
+                Comparator.comparing(BazelEdge::getFromTargetId)
+                    .thenComparing(BazelEdge::getToTargetId))
+            .collect(Collectors.toList()));
+    database.bulkInsertExportEdges(
+        exportEdgesToInsert.stream()
+            .sorted(
+                Comparator.comparing(BazelExportEdge::getExporterTargetId)
+                    .thenComparing(BazelExportEdge::getExportedTargetId))
+            .collect(Collectors.toList()));
     Instant endTime = Clock.systemUTC().instant();
     return TargetDependencyGraphPersistResult.create(
         database.getFilePath(),
-        database.getAllBazelTargets().size(),
-        database.getAllBazelEdges().size(),
+        database.countBazelTargets(),
+        database.countBazelEdges(),
         database.getFileSize(),
         Duration.between(startTime, endTime));
   }
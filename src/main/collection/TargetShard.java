@@ -0,0 +1,101 @@
+package com.stripe.build.dependencyanalyzer.collection;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.stripe.build.dependencyanalyzer.bazel.BazelRuleLabel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A slice of the targets of a target pattern that collect builds and persists on its own, so that
+ * a run that fails late only has to redo the shard it failed in. Shards are planned from the
+ * sorted labels, so the same targets and settings always give the same shards.
+ */
+@AutoValue
+public abstract class TargetShard {
+
+  /** How the targets are split into shards. */
+  public enum Grouping {
+    /** Whole packages, packed together until a shard has as many targets as it may have. */
+    PACKAGE,
+    /** Exactly as many targets as a shard may have, splitting packages. */
+    TARGET
+  }
+
+  /** Position of the shard, starting at 1. */
+  public abstract int getIndex();
+
+  public abstract int getShardCount();
+
+  public abstract ImmutableList<String> getTargetLabels();
+
+  private static TargetShard create(int index, int shardCount, List<String> targetLabels) {
+    return new AutoValue_TargetShard(index, shardCount, ImmutableList.copyOf(targetLabels));
+  }
+
+  /**
+   * Splits targets into shards.
+   *
+   * @param targetLabels labels of the targets to split, in the main repository
+   * @param grouping how to split the targets
+   * @param targetsPerShard number of targets a shard may have, which a single package that is
+   *     larger than this exceeds when grouping by package
+   * @return the shards, in the order of their labels
+   */
+  public static List<TargetShard> plan(
+      Collection<BazelRuleLabel> targetLabels, Grouping grouping, int targetsPerShard) {
+    if (targetsPerShard < 1) {
+      throw new IllegalArgumentException(
+          "Shards must have at least one target, got " + targetsPerShard);
+    }
+    Map<String, List<String>> packageToLabels = new TreeMap<>();
+    for (BazelRuleLabel label : targetLabels) {
+      packageToLabels
+          .computeIfAbsent(label.getPackage(), p -> new ArrayList<>())
+          .add(label.value());
+    }
+    List<List<String>> shardLabels = new ArrayList<>();
+    if (grouping == Grouping.TARGET) {
+      List<String> sortedLabels = new ArrayList<>();
+      for (List<String> packageLabels : packageToLabels.values()) {
+        packageLabels.stream().sorted().forEach(sortedLabels::add);
+      }
+      shardLabels.addAll(Lists.partition(sortedLabels, targetsPerShard));
+    } else {
+      List<String> shard = new ArrayList<>();
+      for (List<String> packageLabels : packageToLabels.values()) {
+        if (!shard.isEmpty() && shard.size() + packageLabels.size() > targetsPerShard) {
+          shardLabels.add(shard);
+          shard = new ArrayList<>();
+        }
+        packageLabels.stream().sorted().forEach(shard::add);
+      }
+      if (!shard.isEmpty()) {
+        shardLabels.add(shard);
+      }
+    }
+
+    List<TargetShard> shards = new ArrayList<>();
+    for (int i = 0; i < shardLabels.size(); i++) {
+      shards.add(create(i + 1, shardLabels.size(), shardLabels.get(i)));
+    }
+    return shards;
+  }
+
+  /** Name that the shard is recorded as complete under in the database. */
+  public String getCheckpointName() {
+    return String.format("shard %d of %d", getIndex(), getShardCount());
+  }
+
+  @Override
+  public final String toString() {
+    ImmutableList<String> labels = getTargetLabels();
+    return String.format(
+        "Shard %d of %d: %d targets, %s to %s",
+        getIndex(), getShardCount(), labels.size(), labels.get(0), labels.get(labels.size() - 1));
+  }
+}
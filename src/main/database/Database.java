@@ -3,10 +3,12 @@ package com.stripe.build.dependencyanalyzer.database;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.BAZEL_EDGE;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.BAZEL_EXPORT_EDGE;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.BAZEL_TARGET;
+import static com.stripe.build.dependencyanalyzer.database.generated.Tables.COLLECT_CHECKPOINT;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.JAVA_FILE;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.JAVA_FILE_BAZEL_TARGET;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.JAVA_FILE_EXPORTED_SYMBOL;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.JAVA_FILE_IMPORTED_SYMBOL;
+import static com.stripe.build.dependencyanalyzer.database.generated.Tables.METADATA;
 import static com.stripe.build.dependencyanalyzer.database.generated.Tables.SYMBOL;
 
 import com.google.common.io.Resources;
@@ -14,10 +16,12 @@ import com.stripe.build.dependencyanalyzer.codegen.SqlScriptRunner;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelEdge;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelExportEdge;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.CollectCheckpoint;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFile;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileBazelTarget;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileExportedSymbol;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileImportedSymbol;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.Metadata;
 import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.Symbol;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -25,23 +29,81 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.function.BiConsumer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import org.jooq.BatchBindStep;
 import org.jooq.Configuration;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
 import org.jooq.Record;
+import org.jooq.Record2;
 import org.jooq.SQLDialect;
+import org.jooq.Table;
 import org.jooq.impl.DSL;
 import org.jooq.impl.TableImpl;
 
 /** Handles the connection to the SQLite database storing dependency graph tables. */
 public class Database implements AutoCloseable {
 
+  /** Metadata key for the granularity of the symbols the database was collected with. */
+  public static final String SYMBOL_GRANULARITY_METADATA_KEY = "symbol_granularity";
+
+  /**
+   * Metadata key for the target pattern that the compiler plugin stopped at, if any. Targets
+   * outside of it only have exported symbols.
+   */
+  public static final String TARGET_PATTERN_BOUNDARY_METADATA_KEY = "target_pattern_boundary";
+
+  /**
+   * Metadata key for the settings of the collect run that wrote the database, which a resumed run
+   * must share.
+   */
+  public static final String COLLECT_SETTINGS_METADATA_KEY = "collect_settings";
+
+  /** Number of rows bound to an insert statement before it is executed, by default. */
+  public static final int DEFAULT_INSERT_BATCH_SIZE = 10_000;
+
+  /** Page cache of a database being bulk loaded, in KiB, which SQLite takes as a negative size. */
+  private static final int BULK_LOAD_CACHE_KIB = 512 * 1024;
+
+  /** Page cache that SQLite uses by default, which is restored once bulk loading is finished. */
+  private static final int DEFAULT_CACHE_SIZE = -2000;
+
+  /** Receives the two ids of a row that relates them, like the targets of a dependency edge. */
+  @FunctionalInterface
+  public interface IdPairConsumer {
+    void accept(int firstId, int secondId);
+  }
+
+  /** Receives the id of a row and the name it identifies, like the label of a target. */
+  @FunctionalInterface
+  public interface IdNameConsumer {
+    void accept(int id, String name);
+  }
+
   private final Path filePath;
   private final Connection connection;
+  private final Map<String, TableInsertStats> tableInsertStats = new LinkedHashMap<>();
+  private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+
+  /** Indexes of the schema that a database being bulk loaded creates once it is finished. */
+  private final List<String> deferredIndexStatements = new ArrayList<>();
+
+  private boolean bulkLoading;
 
   public static Database createNew(Path filePath) throws IOException, SQLException {
     if (Files.exists(filePath)) {
@@ -52,10 +114,36 @@ public class Database implements AutoCloseable {
     return database;
   }
 
+  /**
+   * Creates a new database to be filled in a single run, which is much faster to insert into but
+   * is not crash safe until {@link #finishBulkLoad} has been called. Neither the rollback journal
+   * nor fsync are used, foreign keys are not enforced, and the unique indexes are only created at
+   * the end, so that rows are appended without maintaining them.
+   */
+  public static Database createNewForBulkLoad(Path filePath) throws IOException, SQLException {
+    if (Files.exists(filePath)) {
+      Files.delete(filePath); // delete database if already exists
+    }
+    var database = new Database(filePath);
+    database.startBulkLoad();
+    return database;
+  }
+
   public static Database open(Path filePath) throws SQLException {
     return new Database(filePath);
   }
 
+  /**
+   * Opens a database that an interrupted collect run left behind, so that it can be resumed, or
+   * creates a new one if there is none.
+   */
+  public static Database openOrCreate(Path filePath) throws IOException, SQLException {
+    if (!Files.exists(filePath)) {
+      return createNew(filePath);
+    }
+    return open(filePath);
+  }
+
   private Database(Path filePath) throws SQLException {
     this.filePath = filePath.toAbsolutePath();
     connection = DriverManager.getConnection(SqlScriptRunner.SQLITE_PREFIX + this.filePath);
@@ -66,108 +154,235 @@ public class Database implements AutoCloseable {
     connection.close();
   }
 
+  public void putMetadata(String key, String value) {
+    getDSLContext()
+        .insertInto(METADATA, METADATA.METADATA_KEY, METADATA.METADATA_VALUE)
+        .values(key, value)
+        .onConflict(METADATA.METADATA_KEY)
+        .doUpdate()
+        .set(METADATA.METADATA_VALUE, value)
+        .execute();
+  }
+
+  public Optional<String> getMetadata(String key) {
+    return getDSLContext()
+        .select(METADATA.METADATA_VALUE)
+        .from(METADATA)
+        .where(METADATA.METADATA_KEY.eq(key))
+        .fetchOptional(METADATA.METADATA_VALUE);
+  }
+
+  /** Gets every metadata key and its value. */
+  public Map<String, String> getAllMetadata() {
+    Map<String, String> metadata = new LinkedHashMap<>();
+    for (Metadata row : getAllRowsInTable(METADATA, Metadata.class)) {
+      metadata.put(row.getMetadataKey(), row.getMetadataValue());
+    }
+    return metadata;
+  }
+
+  /** Records that a step of a collect run has completed, unless it already has been. */
+  public void putCheckpoint(String checkpointName) {
+    getDSLContext()
+        .insertInto(
+            COLLECT_CHECKPOINT,
+            COLLECT_CHECKPOINT.CHECKPOINT_NAME,
+            COLLECT_CHECKPOINT.COMPLETED_AT)
+        .values(checkpointName, Instant.now().toString())
+        .onDuplicateKeyIgnore()
+        .execute();
+  }
+
+  public Set<String> getCheckpoints() {
+    return getAllRowsInTable(COLLECT_CHECKPOINT, CollectCheckpoint.class).stream()
+        .map(CollectCheckpoint::getCheckpointName)
+        .collect(Collectors.toSet());
+  }
+
   public void bulkInsertBazelTargets(Collection<BazelTarget> bazelTargets) {
-    wrapBulkInsertionInTransaction(
-        bazelTargets,
-        (DSLContext context, BazelTarget target) ->
+    batchInsert(
+        BAZEL_TARGET,
+        context ->
             context
                 .insertInto(BAZEL_TARGET, BAZEL_TARGET.TARGET_ID, BAZEL_TARGET.TARGET_LABEL)
-                .values(target.getTargetId(), target.getTargetLabel())
-                .execute());
+                .values((Integer) null, null),
+        bazelTargets,
+        target -> new Object[] {target.getTargetId(), target.getTargetLabel()});
   }
 
   public void bulkInsertBazelEdges(Collection<BazelEdge> bazelEdges) {
-    wrapBulkInsertionInTransaction(
-        bazelEdges,
-        (DSLContext context, BazelEdge edge) ->
+    batchInsert(
+        BAZEL_EDGE,
+        context ->
             context
                 .insertInto(BAZEL_EDGE, BAZEL_EDGE.FROM_TARGET_ID, BAZEL_EDGE.TO_TARGET_ID)
-                .values(edge.getFromTargetId(), edge.getToTargetId())
-                .execute());
+                .values((Integer) null, null),
+        bazelEdges,
+        edge -> new Object[] {edge.getFromTargetId(), edge.getToTargetId()});
   }
 
   public void bulkInsertExportEdges(Collection<BazelExportEdge> exportEdges) {
-    wrapBulkInsertionInTransaction(
-        exportEdges,
-        (DSLContext context, BazelExportEdge exportEdge) ->
+    batchInsert(
+        BAZEL_EXPORT_EDGE,
+        context ->
             context
                 .insertInto(
                     BAZEL_EXPORT_EDGE,
                     BAZEL_EXPORT_EDGE.EXPORTER_TARGET_ID,
                     BAZEL_EXPORT_EDGE.EXPORTED_TARGET_ID)
-                .values(exportEdge.getExporterTargetId(), exportEdge.getExportedTargetId())
-                .execute());
+                .values((Integer) null, null),
+        exportEdges,
+        exportEdge ->
+            new Object[] {exportEdge.getExporterTargetId(), exportEdge.getExportedTargetId()});
   }
 
   public void bulkInsertJavaFiles(Collection<JavaFile> filesToInsert) {
-    wrapBulkInsertionInTransaction(
-        filesToInsert,
-        (DSLContext context, JavaFile file) ->
+    batchInsert(
+        JAVA_FILE,
+        context ->
             context
                 .insertInto(JAVA_FILE, JAVA_FILE.FILE_ID, JAVA_FILE.FILE_PATH)
-                .values(file.getFileId(), file.getFilePath())
-                .execute());
+                .values((Integer) null, null),
+        filesToInsert,
+        file -> new Object[] {file.getFileId(), file.getFilePath()});
   }
 
-  public void bulkInsertJavaFileBazelTargets(Collection<JavaFileBazelTarget> edges) {
-    wrapBulkInsertionInTransaction(
-        edges,
-        (DSLContext context, JavaFileBazelTarget edge) ->
+  /**
+   * Inserts edges between Java files and Bazel targets, and, like the methods inserting edges
+   * between Java files and symbols, ignores edges that already exist. Symbols are persisted as they
+   * are gathered, so the same edge can be inserted twice, for example by a source file that is
+   * compiled by several targets.
+   *
+   * @return number of edges inserted, which excludes those that already existed
+   */
+  public int bulkInsertJavaFileBazelTargets(Collection<JavaFileBazelTarget> edges) {
+    return batchInsert(
+        JAVA_FILE_BAZEL_TARGET,
+        context ->
             context
                 .insertInto(
                     JAVA_FILE_BAZEL_TARGET,
                     JAVA_FILE_BAZEL_TARGET.FILE_ID,
                     JAVA_FILE_BAZEL_TARGET.TARGET_ID)
-                .values(edge.getFileId(), edge.getTargetId())
-                .execute());
+                .values((Integer) null, null)
+                .onDuplicateKeyIgnore(),
+        edges,
+        edge -> new Object[] {edge.getFileId(), edge.getTargetId()});
   }
 
   public void bulkInsertSymbols(Collection<Symbol> symbols) {
-    wrapBulkInsertionInTransaction(
-        symbols,
-        (DSLContext context, Symbol symbol) ->
+    batchInsert(
+        SYMBOL,
+        context ->
             context
                 .insertInto(SYMBOL, SYMBOL.SYMBOL_ID, SYMBOL.FULLY_QUALIFIED_NAME)
-                .values(symbol.getSymbolId(), symbol.getFullyQualifiedName())
-                .execute());
+                .values((Integer) null, null),
+        symbols,
+        symbol -> new Object[] {symbol.getSymbolId(), symbol.getFullyQualifiedName()});
   }
 
-  public void bulkInsertJavaFileExportedSymbol(Collection<JavaFileExportedSymbol> edges) {
-    wrapBulkInsertionInTransaction(
-        edges,
-        (DSLContext context, JavaFileExportedSymbol edge) ->
+  /** Inserts edges between Java files and the symbols they export, ignoring existing ones. */
+  public int bulkInsertJavaFileExportedSymbol(Collection<JavaFileExportedSymbol> edges) {
+    return batchInsert(
+        JAVA_FILE_EXPORTED_SYMBOL,
+        context ->
             context
                 .insertInto(
                     JAVA_FILE_EXPORTED_SYMBOL,
                     JAVA_FILE_EXPORTED_SYMBOL.FILE_ID,
                     JAVA_FILE_EXPORTED_SYMBOL.SYMBOL_ID)
-                .values(edge.getFileId(), edge.getSymbolId())
-                .execute());
+                .values((Integer) null, null)
+                .onDuplicateKeyIgnore(),
+        edges,
+        edge -> new Object[] {edge.getFileId(), edge.getSymbolId()});
   }
 
-  public void bulkInsertJavaFileImportedSymbol(Collection<JavaFileImportedSymbol> edges) {
-    wrapBulkInsertionInTransaction(
-        edges,
-        (DSLContext context, JavaFileImportedSymbol edge) ->
+  /** Inserts edges between Java files and the symbols they import, ignoring existing ones. */
+  public int bulkInsertJavaFileImportedSymbol(Collection<JavaFileImportedSymbol> edges) {
+    return batchInsert(
+        JAVA_FILE_IMPORTED_SYMBOL,
+        context ->
             context
                 .insertInto(
                     JAVA_FILE_IMPORTED_SYMBOL,
                     JAVA_FILE_IMPORTED_SYMBOL.FILE_ID,
                     JAVA_FILE_IMPORTED_SYMBOL.SYMBOL_ID)
-                .values(edge.getFileId(), edge.getSymbolId())
-                .execute());
+                .values((Integer) null, null)
+                .onDuplicateKeyIgnore(),
+        edges,
+        edge -> new Object[] {edge.getFileId(), edge.getSymbolId()});
   }
 
-  private <T> void wrapBulkInsertionInTransaction(
-      Collection<T> objectsToInsert, BiConsumer<DSLContext, T> insertOneObject) {
-    getDSLContext()
-        .transaction(
-            (Configuration trx) -> {
-              DSLContext context = trx.dsl();
-              for (T object : objectsToInsert) {
-                insertOneObject.accept(context, object);
-              }
-            });
+  /**
+   * Inserts rows in a single transaction, binding the values of every row to one insert statement
+   * that is rendered and prepared once per batch, rather than once per row, and executed as a JDBC
+   * batch.
+   *
+   * @param table the table to insert into, whose statistics are updated
+   * @param insertQuery creates the insert statement, with placeholder values
+   * @param rows the rows to insert
+   * @param bindValues gets the values of a row, in the order of the statement's fields
+   * @return number of rows inserted, which excludes those that an ignoring insert skipped
+   */
+  private <T> int batchInsert(
+      Table<?> table,
+      Function<DSLContext, Query> insertQuery,
+      Collection<T> rows,
+      Function<T, Object[]> bindValues) {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    long startNanos = System.nanoTime();
+    int insertedRows =
+        getDSLContext()
+            .transactionResult(
+                (Configuration trx) -> {
+                  DSLContext context = trx.dsl();
+                  Query query = insertQuery.apply(context);
+                  BatchBindStep batch = context.batch(query);
+                  int inserted = 0;
+                  for (T row : rows) {
+                    batch = batch.bind(bindValues.apply(row));
+                    if (batch.size() >= insertBatchSize) {
+                      inserted += countInsertedRows(batch.execute());
+                      batch = context.batch(query);
+                    }
+                  }
+                  // a batch without bind values would execute the placeholder statement once
+                  if (batch.size() > 0) {
+                    inserted += countInsertedRows(batch.execute());
+                  }
+                  return inserted;
+                });
+    Duration timeElapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+    tableInsertStats.merge(
+        table.getName(),
+        TableInsertStats.create(table.getName(), rows.size(), timeElapsed),
+        TableInsertStats::combine);
+    return insertedRows;
+  }
+
+  /** Sums the update counts of a batch, in which an ignored row counts 0. */
+  private static int countInsertedRows(int[] updateCounts) {
+    int inserted = 0;
+    for (int updateCount : updateCounts) {
+      inserted += Math.max(updateCount, 0);
+    }
+    return inserted;
+  }
+
+  /** Number of rows that are bound to an insert statement before the batch is executed. */
+  public void setInsertBatchSize(int insertBatchSize) {
+    if (insertBatchSize < 1) {
+      throw new IllegalArgumentException(
+          "Insert batch size must be positive, got " + insertBatchSize);
+    }
+    this.insertBatchSize = insertBatchSize;
+  }
+
+  /** Gets the rows inserted into each table so far, and how long inserting them took. */
+  public List<TableInsertStats> getTableInsertStats() {
+    return List.copyOf(tableInsertStats.values());
   }
 
   public List<BazelTarget> getAllBazelTargets() {
@@ -202,6 +417,97 @@ public class Database implements AutoCloseable {
     return getAllRowsInTable(JAVA_FILE_IMPORTED_SYMBOL, JavaFileImportedSymbol.class);
   }
 
+  /**
+   * Streams the id and label of every Bazel target to the consumer, reading them from a cursor one
+   * row at a time instead of loading the table.
+   */
+  public void forEachBazelTarget(IdNameConsumer consumer) {
+    forEachRow(BAZEL_TARGET, BAZEL_TARGET.TARGET_ID, BAZEL_TARGET.TARGET_LABEL, consumer);
+  }
+
+  /** Streams the from and to target ids of every dependency edge to the consumer. */
+  public void forEachBazelEdge(IdPairConsumer consumer) {
+    forEachRow(BAZEL_EDGE, BAZEL_EDGE.FROM_TARGET_ID, BAZEL_EDGE.TO_TARGET_ID, consumer);
+  }
+
+  /** Streams the exporter and exported target ids of every export edge to the consumer. */
+  public void forEachBazelExportEdge(IdPairConsumer consumer) {
+    forEachRow(
+        BAZEL_EXPORT_EDGE,
+        BAZEL_EXPORT_EDGE.EXPORTER_TARGET_ID,
+        BAZEL_EXPORT_EDGE.EXPORTED_TARGET_ID,
+        consumer);
+  }
+
+  /** Streams the id and path of every Java file to the consumer. */
+  public void forEachJavaFile(IdNameConsumer consumer) {
+    forEachRow(JAVA_FILE, JAVA_FILE.FILE_ID, JAVA_FILE.FILE_PATH, consumer);
+  }
+
+  /** Streams the id and fully qualified name of every symbol to the consumer. */
+  public void forEachSymbol(IdNameConsumer consumer) {
+    forEachRow(SYMBOL, SYMBOL.SYMBOL_ID, SYMBOL.FULLY_QUALIFIED_NAME, consumer);
+  }
+
+  /** Streams the file id and target id of every Java file in a Bazel target to the consumer. */
+  public void forEachJavaFileBazelTarget(IdPairConsumer consumer) {
+    forEachRow(
+        JAVA_FILE_BAZEL_TARGET,
+        JAVA_FILE_BAZEL_TARGET.FILE_ID,
+        JAVA_FILE_BAZEL_TARGET.TARGET_ID,
+        consumer);
+  }
+
+  /** Streams the file id and symbol id of every symbol exported by a Java file to the consumer. */
+  public void forEachJavaFileExportedSymbol(IdPairConsumer consumer) {
+    forEachRow(
+        JAVA_FILE_EXPORTED_SYMBOL,
+        JAVA_FILE_EXPORTED_SYMBOL.FILE_ID,
+        JAVA_FILE_EXPORTED_SYMBOL.SYMBOL_ID,
+        consumer);
+  }
+
+  /** Streams the file id and symbol id of every symbol imported by a Java file to the consumer. */
+  public void forEachJavaFileImportedSymbol(IdPairConsumer consumer) {
+    forEachRow(
+        JAVA_FILE_IMPORTED_SYMBOL,
+        JAVA_FILE_IMPORTED_SYMBOL.FILE_ID,
+        JAVA_FILE_IMPORTED_SYMBOL.SYMBOL_ID,
+        consumer);
+  }
+
+  public int countBazelTargets() {
+    return countRowsInTable(BAZEL_TARGET);
+  }
+
+  public int countBazelEdges() {
+    return countRowsInTable(BAZEL_EDGE);
+  }
+
+  public int countBazelExportEdges() {
+    return countRowsInTable(BAZEL_EXPORT_EDGE);
+  }
+
+  public int countJavaFiles() {
+    return countRowsInTable(JAVA_FILE);
+  }
+
+  public int countSymbols() {
+    return countRowsInTable(SYMBOL);
+  }
+
+  public int countJavaFileBazelTargets() {
+    return countRowsInTable(JAVA_FILE_BAZEL_TARGET);
+  }
+
+  public int countJavaFileExportedSymbols() {
+    return countRowsInTable(JAVA_FILE_EXPORTED_SYMBOL);
+  }
+
+  public int countJavaFileImportedSymbols() {
+    return countRowsInTable(JAVA_FILE_IMPORTED_SYMBOL);
+  }
+
   public Path getFilePath() {
     return filePath;
   }
@@ -210,6 +516,63 @@ public class Database implements AutoCloseable {
     return Files.size(filePath);
   }
 
+  public boolean isBulkLoading() {
+    return bulkLoading;
+  }
+
+  /**
+   * Makes a bulk loaded database like any other: creates its unique indexes, checks that every
+   * foreign key has a parent row, updates the statistics that the query planner uses, and restores
+   * the default durability settings.
+   *
+   * @throws SQLException if error occurs creating the indexes, or a foreign key has no parent row
+   */
+  public void finishBulkLoad() throws SQLException {
+    if (!bulkLoading) {
+      throw new IllegalStateException("Database " + filePath + " is not being bulk loaded");
+    }
+    try (Statement statement = connection.createStatement()) {
+      for (String indexStatement : deferredIndexStatements) {
+        statement.execute(indexStatement);
+      }
+      try (ResultSet violations = statement.executeQuery("PRAGMA foreign_key_check;")) {
+        if (violations.next()) {
+          throw new SQLException(
+              String.format(
+                  "Table %s has a row whose foreign key has no parent row in table %s",
+                  violations.getString("table"), violations.getString("parent")));
+        }
+      }
+      statement.execute("ANALYZE;");
+      statement.execute("PRAGMA foreign_keys = ON;");
+      statement.execute("PRAGMA synchronous = FULL;");
+      statement.execute("PRAGMA journal_mode = DELETE;");
+      statement.execute("PRAGMA cache_size = " + DEFAULT_CACHE_SIZE + ";");
+    }
+    deferredIndexStatements.clear();
+    bulkLoading = false;
+  }
+
+  private void startBulkLoad() throws IOException, SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA journal_mode = OFF;");
+      statement.execute("PRAGMA synchronous = OFF;");
+      statement.execute("PRAGMA cache_size = -" + BULK_LOAD_CACHE_KIB + ";");
+      statement.execute("PRAGMA temp_store = MEMORY;");
+      for (String tableStatement : SqlScriptRunner.splitStatements(readSchemaScript())) {
+        if (tableStatement.startsWith("CREATE UNIQUE INDEX")
+            || tableStatement.startsWith("CREATE INDEX")) {
+          deferredIndexStatements.add(tableStatement);
+        } else {
+          statement.execute(tableStatement);
+        }
+      }
+      // after the script, which turns them on
+      statement.execute("PRAGMA foreign_keys = OFF;");
+    }
+    bulkLoading = true;
+  }
+
   /**
    * Create tables using the same SQL script used to create the tables from which the Java source
    * code was generated.
@@ -218,16 +581,54 @@ public class Database implements AutoCloseable {
    * @throws SQLException if error occurs executing SQL script
    */
   public void createTables() throws IOException, SQLException {
-    String script =
-        Resources.toString(
-            Resources.getResource(SqlScriptRunner.SQL_SCRIPT_RESOURCE), StandardCharsets.UTF_8);
-    SqlScriptRunner.execute(connection, script);
+    SqlScriptRunner.execute(connection, readSchemaScript());
+  }
+
+  private static String readSchemaScript() throws IOException {
+    return Resources.toString(
+        Resources.getResource(SqlScriptRunner.SQL_SCRIPT_RESOURCE), StandardCharsets.UTF_8);
   }
 
+  /**
+   * Maps the rows of a table one at a time as they are read from a cursor, so that the records and
+   * the objects they are mapped to are never both held for the whole table.
+   */
   private <R extends Record, C> List<C> getAllRowsInTable(TableImpl<R> table, Class<C> clazz) {
-    return getDSLContext().select().from(table).fetch().stream()
-        .map(r -> r.into(clazz))
-        .collect(Collectors.toList());
+    List<C> rows = new ArrayList<>();
+    try (Cursor<R> cursor = getDSLContext().selectFrom(table).fetchLazy()) {
+      for (R record : cursor) {
+        rows.add(record.into(clazz));
+      }
+    }
+    return rows;
+  }
+
+  private void forEachRow(
+      Table<?> table,
+      Field<Integer> firstIdField,
+      Field<Integer> secondIdField,
+      IdPairConsumer consumer) {
+    try (Cursor<Record2<Integer, Integer>> cursor =
+        getDSLContext().select(firstIdField, secondIdField).from(table).fetchLazy()) {
+      for (Record2<Integer, Integer> record : cursor) {
+        consumer.accept(record.value1(), record.value2());
+      }
+    }
+  }
+
+  private void forEachRow(
+      Table<?> table, Field<Integer> idField, Field<String> nameField, IdNameConsumer consumer) {
+    try (Cursor<Record2<Integer, String>> cursor =
+        getDSLContext().select(idField, nameField).from(table).fetchLazy()) {
+      for (Record2<Integer, String> record : cursor) {
+        consumer.accept(record.value1(), record.value2());
+      }
+    }
+  }
+
+  /** Counts the rows of a table with an aggregate query, rather than by reading every row. */
+  private int countRowsInTable(Table<?> table) {
+    return getDSLContext().fetchCount(table);
   }
 
   private DSLContext getDSLContext() {
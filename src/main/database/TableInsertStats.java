@@ -0,0 +1,41 @@
+package com.stripe.build.dependencyanalyzer.database;
+
+import com.google.auto.value.AutoValue;
+import java.time.Duration;
+
+/** How many rows were inserted into a table, and how long inserting them took. */
+@AutoValue
+public abstract class TableInsertStats {
+  public abstract String getTableName();
+
+  public abstract long getRowsInserted();
+
+  public abstract Duration getTimeElapsed();
+
+  public static TableInsertStats create(String tableName, long rowsInserted, Duration timeElapsed) {
+    return new AutoValue_TableInsertStats(tableName, rowsInserted, timeElapsed);
+  }
+
+  /** Adds up the stats of two inserts into the same table. */
+  public TableInsertStats combine(TableInsertStats other) {
+    return create(
+        getTableName(),
+        getRowsInserted() + other.getRowsInserted(),
+        getTimeElapsed().plus(other.getTimeElapsed()));
+  }
+
+  public double getRowsPerSecond() {
+    // never divide by zero for an insert that took no measurable time
+    return getRowsInserted() / (Math.max(getTimeElapsed().toNanos(), 1) / 1e9);
+  }
+
+  @Override
+  public final String toString() {
+    return String.format(
+        "%s: %d rows in %.1f seconds (%.0f rows/second)",
+        getTableName(),
+        getRowsInserted(),
+        getTimeElapsed().toNanos() / 1e9,
+        getRowsPerSecond());
+  }
+}
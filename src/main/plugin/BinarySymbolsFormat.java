@@ -0,0 +1,258 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compact binary encoding of {@link SymbolCollectionResult} objects, which is an order of
+ * magnitude smaller and faster to read and write than the pretty-printed JSON encoding.
+ *
+ * <p>A symbols file is a sequence of one or more self-delimiting blocks, so that the symbols files
+ * of several compilation units can simply be concatenated together. Every integer is an unsigned
+ * LEB128 varint unless stated otherwise.
+ *
+ * <pre>
+ * block   := magic (4 bytes, "USYM") version length payload[length]
+ * payload := stringCount string[stringCount] recordCount record[recordCount]
+ * string  := byteLength utf8Bytes[byteLength]
+ * record  := sourceFileName packageName bazelTargetLabel exportedSymbols importedSymbols
+ * symbols := count delta[count]
+ * </pre>
+ *
+ * <p>Every string in a block is stored exactly once in its sorted string table, and records refer
+ * to strings by their index in that table. Symbol indices are written in ascending order as the
+ * difference from the previous index, which keeps most of them to a single byte.
+ */
+public final class BinarySymbolsFormat {
+
+  /** The first four bytes of every block: "USYM" in ASCII. */
+  private static final int MAGIC = 0x5553594d;
+
+  /** Bump whenever the layout of a block changes in an incompatible way. */
+  public static final int VERSION = 1;
+
+  /** A string takes at least the byte of its length. */
+  private static final int MIN_STRING_BYTES = 1;
+
+  /** A record takes at least its three string indices and its two symbol counts. */
+  private static final int MIN_RECORD_BYTES = 5;
+
+  private BinarySymbolsFormat() {}
+
+  /**
+   * Writes the results as a single block to the output stream.
+   *
+   * @param results the symbol collection results to encode
+   * @param out the stream to write the block to, which is not closed
+   * @throws IOException if an error occurs writing to the stream
+   */
+  public static void write(Collection<SymbolCollectionResult> results, OutputStream out)
+      throws IOException {
+    Set<String> strings = new TreeSet<>();
+    for (SymbolCollectionResult result : results) {
+      strings.add(result.getSourceFileName());
+      strings.add(result.getPackageName());
+      strings.add(result.getBazelTargetLabel());
+      strings.addAll(result.getExportedSymbols());
+      strings.addAll(result.getImportedSymbols());
+    }
+
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    Map<String, Integer> stringToIndex = new HashMap<>();
+    writeVarint(payload, strings.size());
+    for (String string : strings) {
+      stringToIndex.put(string, stringToIndex.size());
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      writeVarint(payload, bytes.length);
+      payload.write(bytes);
+    }
+
+    writeVarint(payload, results.size());
+    for (SymbolCollectionResult result : results) {
+      writeVarint(payload, stringToIndex.get(result.getSourceFileName()));
+      writeVarint(payload, stringToIndex.get(result.getPackageName()));
+      writeVarint(payload, stringToIndex.get(result.getBazelTargetLabel()));
+      writeSymbols(payload, result.getExportedSymbols(), stringToIndex);
+      writeSymbols(payload, result.getImportedSymbols(), stringToIndex);
+    }
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    header.write(MAGIC >>> 24);
+    header.write(MAGIC >>> 16);
+    header.write(MAGIC >>> 8);
+    header.write(MAGIC);
+    writeVarint(header, VERSION);
+    writeVarint(header, payload.size());
+    header.writeTo(out);
+    payload.writeTo(out);
+  }
+
+  /**
+   * Reads every block in the input stream until the end of the stream is reached.
+   *
+   * @param in the stream to read, which is not closed
+   * @return the decoded results of every block, in the order they were written
+   * @throws IOException if an error occurs reading the stream or the stream is malformed
+   */
+  public static List<SymbolCollectionResult> read(InputStream in) throws IOException {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    byte[] magic = new byte[4];
+    while (true) {
+      int magicLength = in.readNBytes(magic, 0, magic.length);
+      if (magicLength == 0) {
+        return results;
+      }
+      if (magicLength != magic.length || ByteBuffer.wrap(magic).getInt() != MAGIC) {
+        throw new IOException("Input is not a binary symbols file");
+      }
+      int version = readVarint(in);
+      if (version != VERSION) {
+        throw new IOException(
+            String.format(
+                "Unsupported binary symbols file version %d (expected %d)", version, VERSION));
+      }
+      int length = readVarint(in);
+      if (length < 0) {
+        throw new IOException("Binary symbols file has a corrupt block length " + length);
+      }
+      byte[] payload = in.readNBytes(length);
+      if (payload.length != length) {
+        throw new EOFException("Binary symbols file is truncated");
+      }
+      try {
+        readPayload(ByteBuffer.wrap(payload), results);
+      } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+        throw new IOException("Binary symbols file is malformed", e);
+      }
+    }
+  }
+
+  private static void readPayload(ByteBuffer payload, List<SymbolCollectionResult> results)
+      throws IOException {
+    String[] strings = new String[readCount(payload, MIN_STRING_BYTES)];
+    for (int i = 0; i < strings.length; i++) {
+      int byteLength = readCount(payload, 1);
+      strings[i] =
+          new String(
+              payload.array(),
+              payload.arrayOffset() + payload.position(),
+              byteLength,
+              StandardCharsets.UTF_8);
+      payload.position(payload.position() + byteLength);
+    }
+
+    int recordCount = readCount(payload, MIN_RECORD_BYTES);
+    for (int i = 0; i < recordCount; i++) {
+      results.add(
+          SymbolCollectionResult.create(
+              readString(payload, strings),
+              readString(payload, strings),
+              readString(payload, strings),
+              readSymbols(payload, strings),
+              readSymbols(payload, strings)));
+    }
+  }
+
+  /**
+   * Reads a count or length, and checks it against the bytes left in the payload, each element
+   * taking at least minBytes of them, so that a corrupt count fails before anything is allocated
+   * for it.
+   */
+  private static int readCount(ByteBuffer payload, int minBytes) throws IOException {
+    int count = readVarint(payload);
+    if (count < 0 || count > payload.remaining() / minBytes) {
+      throw new IOException(
+          String.format(
+              "Binary symbols file has a corrupt count %d with %d bytes left",
+              Integer.toUnsignedLong(count), payload.remaining()));
+    }
+    return count;
+  }
+
+  private static String readString(ByteBuffer payload, String[] strings) throws IOException {
+    int index = readVarint(payload);
+    if (index < 0 || index >= strings.length) {
+      throw new IOException("Binary symbols file refers to a missing string " + index);
+    }
+    return strings[index];
+  }
+
+  private static void writeSymbols(
+      OutputStream out, Collection<String> symbols, Map<String, Integer> stringToIndex)
+      throws IOException {
+    int[] indices =
+        symbols.stream().mapToInt(s -> Objects.requireNonNull(stringToIndex.get(s))).toArray();
+    Arrays.sort(indices);
+    writeVarint(out, indices.length);
+    int previous = 0;
+    for (int index : indices) {
+      writeVarint(out, index - previous);
+      previous = index;
+    }
+  }
+
+  private static List<String> readSymbols(ByteBuffer payload, String[] strings)
+      throws IOException {
+    int count = readCount(payload, 1);
+    List<String> symbols = new ArrayList<>(count);
+    long index = 0;
+    for (int i = 0; i < count; i++) {
+      index += Integer.toUnsignedLong(readVarint(payload));
+      if (index >= strings.length) {
+        throw new IOException("Binary symbols file refers to a missing string " + index);
+      }
+      symbols.add(strings[(int) index]);
+    }
+    return symbols;
+  }
+
+  private static void writeVarint(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IndexOutOfBoundsException("Varint is longer than 5 bytes");
+  }
+
+  private static int readVarint(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Binary symbols file is truncated");
+      }
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Varint is longer than 5 bytes");
+  }
+}
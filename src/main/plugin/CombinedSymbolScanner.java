@@ -0,0 +1,89 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.tools.javac.code.Symbol;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Scanner that collects both the exported and the imported symbols of a Java source file
+ * (compilation unit) in a single walk of its tree, with the same results as scanning it with an
+ * {@link ExportedSymbolScanner} followed by an {@link ImportedSymbolScanner}.
+ *
+ * <p>The whole tree has to be walked to find imports, whereas {@link ExportedSymbolScanner} stops
+ * recurring at private classes, methods and variables. This scanner keeps track of whether the
+ * node being visited is one that {@link ExportedSymbolScanner} would have reached, and only
+ * collects exports while that is the case.
+ */
+public class CombinedSymbolScanner extends ImportedSymbolScanner {
+
+  private final SymbolCollector collector;
+  private boolean inExportedScope = true;
+
+  public CombinedSymbolScanner(SymbolCollector collector) {
+    this(collector, new ScannerCache());
+  }
+
+  public CombinedSymbolScanner(SymbolCollector collector, ScannerCache cache) {
+    super(collector, cache);
+    this.collector = collector;
+  }
+
+  @Override
+  public Void visitClass(ClassTree node, Void unused) {
+    Symbol.ClassSymbol symbol = ASTHelpers.getSymbol(node);
+    boolean wasInExportedScope = inExportedScope;
+    if (symbol != null && !isPrivate(symbol)) {
+      addExportedSymbol(symbol);
+    } else {
+      inExportedScope = false; // nothing inside a private class is an export
+    }
+    try {
+      return super.visitClass(node, unused);
+    } finally {
+      inExportedScope = wasInExportedScope;
+    }
+  }
+
+  @Override
+  public Void visitMethod(MethodTree node, Void unused) {
+    Symbol.MethodSymbol symbol = ASTHelpers.getSymbol(node);
+    if (symbol != null && !isPrivate(symbol)) {
+      addExportedSymbol(symbol);
+    }
+    boolean wasInExportedScope = inExportedScope;
+    inExportedScope = false; // nothing inside a method is an export
+    try {
+      return super.visitMethod(node, unused);
+    } finally {
+      inExportedScope = wasInExportedScope;
+    }
+  }
+
+  @Override
+  public Void visitVariable(VariableTree node, Void unused) {
+    Symbol.VarSymbol symbol = ASTHelpers.getSymbol(node);
+    if (symbol != null && !isPrivate(symbol)) {
+      addExportedSymbol(symbol);
+    }
+    boolean wasInExportedScope = inExportedScope;
+    inExportedScope = false; // nothing inside a variable is an export
+    try {
+      return super.visitVariable(node, unused);
+    } finally {
+      inExportedScope = wasInExportedScope;
+    }
+  }
+
+  private void addExportedSymbol(Symbol symbol) {
+    if (inExportedScope) {
+      collector.addExportedSymbol(symbol);
+    }
+  }
+
+  private boolean isPrivate(Symbol symbol) {
+    return symbol.getModifiers().contains(Modifier.PRIVATE);
+  }
+}
@@ -0,0 +1,144 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Utf8;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * What the compiler plugin cost for one Bazel target: the time spent scanning every compilation
+ * unit, the number of symbols each produced and the size of the symbols file. It is written next
+ * to the symbols file so that the targets that make the analysis slow can be found.
+ */
+@AutoValue
+public abstract class CompilationStats {
+
+  private static final String BAZEL_TARGET_LABEL_PROPERTY = "bazelTargetLabel";
+  private static final String COMPILATION_NANOS_PROPERTY = "compilationNanos";
+  private static final String SYMBOLS_FILE_BYTES_PROPERTY = "symbolsFileBytes";
+  private static final String UNITS_PROPERTY = "units";
+  private static final String SOURCE_FILE_NAME_PROPERTY = "sourceFileName";
+  private static final String SCAN_NANOS_PROPERTY = "scanNanos";
+  private static final String EXPORTED_SYMBOLS_PROPERTY = "exportedSymbols";
+  private static final String IMPORTED_SYMBOLS_PROPERTY = "importedSymbols";
+  private static final String SYMBOL_BYTES_PROPERTY = "symbolBytes";
+
+  public abstract String getBazelTargetLabel();
+
+  /** Time from the start of the javac task until the symbols file was written. */
+  public abstract Duration getCompilationTime();
+
+  public abstract long getSymbolsFileBytes();
+
+  public abstract ImmutableList<UnitStats> getUnits();
+
+  public Duration getScanTime() {
+    return getUnits().stream().map(UnitStats::getScanTime).reduce(Duration.ZERO, Duration::plus);
+  }
+
+  public long getSymbolCount() {
+    return getUnits().stream().mapToLong(UnitStats::getSymbolCount).sum();
+  }
+
+  public static CompilationStats create(
+      String bazelTargetLabel,
+      Duration compilationTime,
+      long symbolsFileBytes,
+      Collection<UnitStats> units) {
+    return new AutoValue_CompilationStats(
+        bazelTargetLabel, compilationTime, symbolsFileBytes, ImmutableList.copyOf(units));
+  }
+
+  public JsonObject toJsonObject() {
+    JsonObject object = new JsonObject();
+    object.addProperty(BAZEL_TARGET_LABEL_PROPERTY, getBazelTargetLabel());
+    object.addProperty(COMPILATION_NANOS_PROPERTY, getCompilationTime().toNanos());
+    object.addProperty(SYMBOLS_FILE_BYTES_PROPERTY, getSymbolsFileBytes());
+    JsonArray units = new JsonArray();
+    for (UnitStats unit : getUnits()) {
+      JsonObject unitObject = new JsonObject();
+      unitObject.addProperty(SOURCE_FILE_NAME_PROPERTY, unit.getSourceFileName());
+      unitObject.addProperty(SCAN_NANOS_PROPERTY, unit.getScanTime().toNanos());
+      unitObject.addProperty(EXPORTED_SYMBOLS_PROPERTY, unit.getExportedSymbolCount());
+      unitObject.addProperty(IMPORTED_SYMBOLS_PROPERTY, unit.getImportedSymbolCount());
+      unitObject.addProperty(SYMBOL_BYTES_PROPERTY, unit.getSymbolBytes());
+      units.add(unitObject);
+    }
+    object.add(UNITS_PROPERTY, units);
+    return object;
+  }
+
+  public static CompilationStats fromJsonObject(JsonObject jsonObject) {
+    List<UnitStats> units = new ArrayList<>();
+    for (JsonElement element : jsonObject.getAsJsonArray(UNITS_PROPERTY)) {
+      JsonObject unitObject = element.getAsJsonObject();
+      units.add(
+          UnitStats.create(
+              unitObject.get(SOURCE_FILE_NAME_PROPERTY).getAsString(),
+              Duration.ofNanos(unitObject.get(SCAN_NANOS_PROPERTY).getAsLong()),
+              unitObject.get(EXPORTED_SYMBOLS_PROPERTY).getAsInt(),
+              unitObject.get(IMPORTED_SYMBOLS_PROPERTY).getAsInt(),
+              unitObject.get(SYMBOL_BYTES_PROPERTY).getAsLong()));
+    }
+    return create(
+        jsonObject.get(BAZEL_TARGET_LABEL_PROPERTY).getAsString(),
+        Duration.ofNanos(jsonObject.get(COMPILATION_NANOS_PROPERTY).getAsLong()),
+        jsonObject.get(SYMBOLS_FILE_BYTES_PROPERTY).getAsLong(),
+        units);
+  }
+
+  /** What scanning a single compilation unit cost. */
+  @AutoValue
+  public abstract static class UnitStats {
+    public abstract String getSourceFileName();
+
+    public abstract Duration getScanTime();
+
+    public abstract int getExportedSymbolCount();
+
+    public abstract int getImportedSymbolCount();
+
+    /**
+     * Size of the unit's symbol names encoded as UTF-8. Symbols files share names between units,
+     * so this is an upper bound on what the unit adds to the file.
+     */
+    public abstract long getSymbolBytes();
+
+    public int getSymbolCount() {
+      return getExportedSymbolCount() + getImportedSymbolCount();
+    }
+
+    public static UnitStats create(
+        String sourceFileName,
+        Duration scanTime,
+        int exportedSymbolCount,
+        int importedSymbolCount,
+        long symbolBytes) {
+      return new AutoValue_CompilationStats_UnitStats(
+          sourceFileName, scanTime, exportedSymbolCount, importedSymbolCount, symbolBytes);
+    }
+
+    /** Measures the counts and sizes of a unit's symbols, given the time it took to scan. */
+    public static UnitStats of(SymbolCollectionResult result, Duration scanTime) {
+      long symbolBytes = 0;
+      for (String symbol : result.getExportedSymbols()) {
+        symbolBytes += Utf8.encodedLength(symbol);
+      }
+      for (String symbol : result.getImportedSymbols()) {
+        symbolBytes += Utf8.encodedLength(symbol);
+      }
+      return create(
+          result.getSourceFileName(),
+          scanTime,
+          result.getExportedSymbols().size(),
+          result.getImportedSymbols().size(),
+          symbolBytes);
+    }
+  }
+}
@@ -20,9 +20,12 @@ import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.MethodSymbol;
 import com.sun.tools.javac.code.Symbol.PackageSymbol;
 import com.sun.tools.javac.code.Type;
-import com.sun.tools.javac.code.Type.ClassType;
-import com.sun.tools.javac.code.Type.MethodType;
-import java.util.HashSet;
+import com.sun.tools.javac.util.Name;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import javax.tools.JavaFileObject;
@@ -34,15 +37,36 @@ import javax.tools.JavaFileObject;
 public class ImportedSymbolScanner extends TreePathScanner<Void, Void> {
 
   private final SymbolCollector collector;
+  private final ScannerCache cache;
   private CompilationUnitTree currentCompilationUnit;
 
+  /**
+   * Every type already referenced in the current compilation unit. The closure of a type does not
+   * change while a compilation unit is being scanned, so it only needs to be referenced once.
+   */
+  private final Set<Type> referencedTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * The overload types of classes compiled from source, which are only cached for the current
+   * compilation unit. Unlike classes loaded from class files, javac can still add members to them,
+   * such as bridge methods, once it generates code for an earlier compilation unit.
+   */
+  private final Map<ClassSymbol, Map<Name, List<Type>>> sourceOverloadTypes = new HashMap<>();
+
   public ImportedSymbolScanner(SymbolCollector collector) {
+    this(collector, new ScannerCache());
+  }
+
+  public ImportedSymbolScanner(SymbolCollector collector, ScannerCache cache) {
     this.collector = collector;
+    this.cache = cache;
   }
 
   @Override
   public Void visitCompilationUnit(CompilationUnitTree node, Void unused) {
     currentCompilationUnit = node;
+    referencedTypes.clear();
+    sourceOverloadTypes.clear();
     return super.visitCompilationUnit(node, unused);
   }
 
@@ -126,27 +150,8 @@ public class ImportedSymbolScanner extends TreePathScanner<Void, Void> {
       we need to reference as imported all the return types and argument types
       of every overload of the invoked method because those class needs to be
       loaded at compile time. */
-      ClassSymbol parentClass = symbol.enclClass();
-      if (parentClass.members() != null) {
-        // overloaded methods have the same qualified name as the current symbol
-        var overloadSymbols =
-            parentClass
-                .members()
-                .getSymbols(s -> s.getQualifiedName().contentEquals(symbol.getQualifiedName()));
-        for (Symbol overloadSymbol : overloadSymbols) {
-          if (overloadSymbol instanceof MethodSymbol) {
-            MethodSymbol overloadMethodSymbol = (MethodSymbol) overloadSymbol;
-            referenceType(overloadMethodSymbol.getReturnType());
-            if (overloadMethodSymbol.type instanceof MethodType) {
-              MethodType overloadedMethodType = (MethodType) overloadMethodSymbol.type;
-              if (overloadedMethodType.argtypes != null) {
-                for (Type type : overloadedMethodType.argtypes) {
-                  referenceType(type);
-                }
-              }
-            }
-          }
-        }
+      for (Type type : getOverloadTypes(symbol.enclClass(), symbol.name)) {
+        referenceType(type);
       }
     }
     return super.visitMethodInvocation(node, unused);
@@ -176,26 +181,21 @@ public class ImportedSymbolScanner extends TreePathScanner<Void, Void> {
     return Objects.requireNonNull(currentCompilationUnit).getSourceFile();
   }
 
+  private List<Type> getOverloadTypes(ClassSymbol parentClass, Name methodName) {
+    if (ScannerCache.isLoadedFromClassFile(parentClass)) {
+      return cache.getOverloadTypes(parentClass, methodName);
+    }
+    return sourceOverloadTypes
+        .computeIfAbsent(parentClass, c -> new HashMap<>())
+        .computeIfAbsent(methodName, n -> ScannerCache.collectOverloadTypes(parentClass, n));
+  }
+
   private void referenceType(Type type) {
-    if (type == null) {
+    if (type == null || !referencedTypes.add(type)) {
       return;
     }
-    referenceSymbol(type.tsym);
-    if (type instanceof ClassType) {
-      ClassType classType = (ClassType) type;
-      referenceType(classType.getEnclosingType());
-      referenceType(classType.supertype_field);
-      Set<Type> interfaces = new HashSet<>();
-      if (classType.interfaces_field != null) {
-        interfaces.addAll(classType.interfaces_field);
-      }
-      /* for some reason all_interfaces_field is not a superset of interfaces_field */
-      if (classType.all_interfaces_field != null) {
-        interfaces.addAll(classType.all_interfaces_field);
-      }
-      for (Type interfaceType : interfaces) {
-        referenceType(interfaceType);
-      }
+    for (Symbol symbol : cache.getTypeClosure(type)) {
+      referenceSymbol(symbol);
     }
   }
 
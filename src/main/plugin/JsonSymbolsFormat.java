@@ -0,0 +1,92 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Debug JSON encoding of {@link SymbolCollectionResult} objects: a pretty-printed array with one
+ * object per compilation unit. It is read and written token by token, so that reading a file only
+ * ever holds a single result in memory, rather than a tree of the whole document.
+ *
+ * <p>Besides an array, a file may hold a single result object, and arrays may contain {@code null}
+ * elements, which are skipped. Several documents may follow each other in one file.
+ */
+public final class JsonSymbolsFormat {
+
+  private static final String INDENT = "  ";
+
+  private JsonSymbolsFormat() {}
+
+  /**
+   * Writes the results as a single array to the writer.
+   *
+   * @param results the symbol collection results to encode
+   * @param out the writer to write the array to, which is not closed
+   * @throws IOException if an error occurs writing
+   */
+  public static void write(Collection<SymbolCollectionResult> results, Writer out)
+      throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.setIndent(INDENT);
+    writer.beginArray();
+    for (SymbolCollectionResult result : results) {
+      result.writeJson(writer);
+    }
+    writer.endArray();
+    writer.flush();
+  }
+
+  /**
+   * Reads every result in the input, handing each to the consumer as soon as it has been read.
+   *
+   * @param in the reader to read, which is not closed
+   * @param consumer receives the results in the order they were written
+   * @throws IOException if an error occurs reading or the input is malformed
+   */
+  public static void read(Reader in, Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    JsonReader reader = new JsonReader(in);
+    // lenient, so that documents may follow each other
+    reader.setLenient(true);
+    try {
+      while (reader.peek() != JsonToken.END_DOCUMENT) {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readElement(reader, consumer);
+          }
+          reader.endArray();
+        } else {
+          readElement(reader, consumer);
+        }
+      }
+    } catch (IllegalStateException | JsonParseException e) {
+      throw new IOException("JSON symbols file is malformed", e);
+    }
+  }
+
+  /** Reads every result in the input into a list. */
+  public static List<SymbolCollectionResult> read(Reader in) throws IOException {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    read(in, results::add);
+    return results;
+  }
+
+  private static void readElement(JsonReader reader, Consumer<SymbolCollectionResult> consumer)
+      throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+    } else {
+      consumer.accept(SymbolCollectionResult.readJson(reader));
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.auto.value.AutoValue;
+import java.util.Optional;
+import javax.tools.JavaFileManager;
+
+/**
+ * Arguments passed to the compiler plugin, e.g. {@code -Xplugin:'StripeDependencyAnalyzerPlugin
+ * //src/foo:lib --symbols_format=json'}. Arguments starting with "--" are options, and the
+ * remaining argument is the label of the Bazel target whose sources are being compiled.
+ */
+@AutoValue
+public abstract class PluginOptions {
+
+  public static final String SYMBOLS_FORMAT_FLAG = "--symbols_format=";
+  public static final String SYMBOLS_FILE_FLAG = "--symbols_file=";
+  public static final String SYMBOL_GRANULARITY_FLAG = "--symbol_granularity=";
+  public static final String PLUGIN_VERSION_FLAG = "--plugin_version=";
+  public static final String WRITE_STATS_FLAG = "--write_stats";
+
+  /**
+   * Bazel will pass the label of the target that's source files are being compiled as an argument
+   * to the compiler plugin, but we won't pass that argument in testing, so it's optional.
+   */
+  public abstract String getBazelTargetLabel();
+
+  public abstract SymbolsFileFormat getSymbolsFormat();
+
+  /**
+   * Name of the single symbols file written to the root of the class output. The Bazel aspect
+   * passes the name of the file it declares, so it can extract that jar entry directly.
+   */
+  public abstract Optional<String> getSymbolsFileName();
+
+  public abstract SymbolGranularity getSymbolGranularity();
+
+  /**
+   * Digest of the plugin jar and the aspect that runs it. The plugin does not use it: it is only
+   * passed so that it is part of the javac command line, and so of the key of every analyzer
+   * action, which keeps cached outputs of another version of the plugin from being reused.
+   */
+  public abstract Optional<String> getPluginVersion();
+
+  /**
+   * Whether to write {@link CompilationStats} next to the symbols file. They are left out by
+   * default because their timings would make the otherwise deterministic output differ between
+   * runs.
+   */
+  public abstract boolean getWriteStats();
+
+  public static PluginOptions create(
+      String bazelTargetLabel,
+      SymbolsFileFormat symbolsFormat,
+      Optional<String> symbolsFileName,
+      SymbolGranularity symbolGranularity,
+      Optional<String> pluginVersion,
+      boolean writeStats) {
+    return new AutoValue_PluginOptions(
+        bazelTargetLabel,
+        symbolsFormat,
+        symbolsFileName,
+        symbolGranularity,
+        pluginVersion,
+        writeStats);
+  }
+
+  public static PluginOptions parse(String... args) {
+    String bazelTargetLabel = "";
+    SymbolsFileFormat symbolsFormat = SymbolsFileFormat.BINARY;
+    Optional<String> symbolsFileName = Optional.empty();
+    SymbolGranularity symbolGranularity = SymbolGranularity.MEMBER;
+    Optional<String> pluginVersion = Optional.empty();
+    boolean writeStats = false;
+    for (String arg : args) {
+      if (arg.startsWith(SYMBOLS_FORMAT_FLAG)) {
+        symbolsFormat =
+            SymbolsFileFormat.fromFlagValue(arg.substring(SYMBOLS_FORMAT_FLAG.length()));
+      } else if (arg.startsWith(SYMBOLS_FILE_FLAG)) {
+        symbolsFileName = Optional.of(arg.substring(SYMBOLS_FILE_FLAG.length()));
+      } else if (arg.startsWith(SYMBOL_GRANULARITY_FLAG)) {
+        symbolGranularity =
+            SymbolGranularity.fromFlagValue(arg.substring(SYMBOL_GRANULARITY_FLAG.length()));
+      } else if (arg.startsWith(PLUGIN_VERSION_FLAG)) {
+        pluginVersion = Optional.of(arg.substring(PLUGIN_VERSION_FLAG.length()));
+      } else if (arg.equals(WRITE_STATS_FLAG)) {
+        writeStats = true;
+      } else if (arg.startsWith("--")) {
+        throw new IllegalArgumentException("Unknown compiler plugin option: " + arg);
+      } else {
+        bazelTargetLabel = arg;
+      }
+    }
+    return create(
+        bazelTargetLabel,
+        symbolsFormat,
+        symbolsFileName,
+        symbolGranularity,
+        pluginVersion,
+        writeStats);
+  }
+
+  public SymbolsFileManager createSymbolsFileManager(JavaFileManager javaFileManager) {
+    return getSymbolsFileName()
+        .map(name -> new SymbolsFileManager(javaFileManager, getSymbolsFormat(), name))
+        .orElseGet(() -> new SymbolsFileManager(javaFileManager, getSymbolsFormat()));
+  }
+}
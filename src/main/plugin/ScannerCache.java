@@ -0,0 +1,151 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Type.ClassType;
+import com.sun.tools.javac.code.Type.MethodType;
+import com.sun.tools.javac.util.Name;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.JavaFileObject;
+
+/**
+ * Work shared by the scanners and symbol collectors of every compilation unit in a single javac
+ * task. A single instance must only be used by one javac task, as the symbols and types it holds
+ * belong to that task.
+ */
+public class ScannerCache {
+
+  /**
+   * The symbols referenced by referencing a type, keyed by the identity of that type, since javac
+   * creates a new type object for every distinct use of a parameterized type.
+   */
+  private final Map<Type, List<Symbol>> typeClosures = new IdentityHashMap<>();
+
+  /**
+   * The return and argument types of every overload of a method, keyed by the class that declares
+   * the method and the name of the method. Only classes loaded from class files are cached here, as
+   * their members can no longer change.
+   */
+  private final Map<ClassSymbol, Map<Name, List<Type>>> overloadTypes = new HashMap<>();
+
+  /**
+   * The fully qualified name of every symbol seen so far, keyed by the identity of the symbol. The
+   * names of members are built from the cached names of their owners, so each package and class
+   * name is only converted to a string once.
+   */
+  private final Map<Symbol, String> fullyQualifiedNames = new IdentityHashMap<>();
+
+  /**
+   * Gets the symbols of the type itself, its enclosing type, its supertype and interfaces, and
+   * transitively of all of those types. Each type in the closure is only expanded once, even when
+   * it is reachable through several paths, for example through an interface implemented at every
+   * level of a deep class hierarchy.
+   *
+   * <p>A closure is only kept if javac has already filled in the supertype and interfaces of every
+   * class type in it. Otherwise javac may still fill them in later in the compilation, and reusing
+   * the closure in a later compilation unit would miss the symbols added by doing so.
+   */
+  public List<Symbol> getTypeClosure(Type type) {
+    List<Symbol> closure = typeClosures.get(type);
+    if (closure == null) {
+      closure = new ArrayList<>();
+      Set<Type> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+      if (addTypeClosure(type, visited, closure)) {
+        typeClosures.put(type, closure);
+      }
+    }
+    return closure;
+  }
+
+  /**
+   * Adds the closure of the type to the list, skipping any visited types.
+   *
+   * @return true if the supertype and interfaces of every class type in the closure are known
+   */
+  private static boolean addTypeClosure(Type type, Set<Type> visited, List<Symbol> closure) {
+    if (type == null || !visited.add(type)) {
+      return true;
+    }
+    closure.add(type.tsym);
+    if (!(type instanceof ClassType)) {
+      return true;
+    }
+    ClassType classType = (ClassType) type;
+    boolean settled = classType.supertype_field != null && classType.interfaces_field != null;
+    settled &= addTypeClosure(classType.getEnclosingType(), visited, closure);
+    settled &= addTypeClosure(classType.supertype_field, visited, closure);
+    if (classType.interfaces_field != null) {
+      for (Type interfaceType : classType.interfaces_field) {
+        settled &= addTypeClosure(interfaceType, visited, closure);
+      }
+    }
+    /* for some reason all_interfaces_field is not a superset of interfaces_field */
+    if (classType.all_interfaces_field != null) {
+      for (Type interfaceType : classType.all_interfaces_field) {
+        settled &= addTypeClosure(interfaceType, visited, closure);
+      }
+    }
+    return settled;
+  }
+
+  /** Gets the fully qualified name of a symbol, such as {@code java.util.List.add}. */
+  public String getFullyQualifiedName(Symbol symbol) {
+    String fullyQualifiedName = fullyQualifiedNames.get(symbol);
+    if (fullyQualifiedName == null) {
+      // class and package symbol types already handle fully qualified name
+      fullyQualifiedName =
+          (symbol instanceof ClassSymbol || symbol instanceof PackageSymbol)
+              ? symbol.getQualifiedName().toString()
+              : getFullyQualifiedName(symbol.owner) + "." + symbol.getQualifiedName();
+      fullyQualifiedNames.put(symbol, fullyQualifiedName);
+    }
+    return fullyQualifiedName;
+  }
+
+  /**
+   * Gets the return and argument types of every overload of a method in a class loaded from a
+   * class file, computing them only the first time they are needed in the javac task.
+   */
+  public List<Type> getOverloadTypes(ClassSymbol parentClass, Name methodName) {
+    return overloadTypes
+        .computeIfAbsent(parentClass, c -> new HashMap<>())
+        .computeIfAbsent(methodName, n -> collectOverloadTypes(parentClass, n));
+  }
+
+  /** Whether the members of the class were read from a class file rather than a source file. */
+  public static boolean isLoadedFromClassFile(ClassSymbol classSymbol) {
+    return classSymbol.classfile != null
+        && classSymbol.classfile.getKind() == JavaFileObject.Kind.CLASS;
+  }
+
+  /** Collects the return and argument types of every overload of a method in the class. */
+  public static List<Type> collectOverloadTypes(ClassSymbol parentClass, Name methodName) {
+    List<Type> types = new ArrayList<>();
+    if (parentClass.members() == null) {
+      return types;
+    }
+    // overloaded methods have the same name as the invoked method
+    for (Symbol overloadSymbol : parentClass.members().getSymbolsByName(methodName)) {
+      if (overloadSymbol instanceof MethodSymbol) {
+        MethodSymbol overloadMethodSymbol = (MethodSymbol) overloadSymbol;
+        types.add(overloadMethodSymbol.getReturnType());
+        if (overloadMethodSymbol.type instanceof MethodType) {
+          MethodType overloadedMethodType = (MethodType) overloadMethodSymbol.type;
+          if (overloadedMethodType.argtypes != null) {
+            types.addAll(overloadedMethodType.argtypes);
+          }
+        }
+      }
+    }
+    return types;
+  }
+}
@@ -0,0 +1,46 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.nio.file.Path;
+
+/**
+ * Makes the names of source files relative to the root of the workspace. Bazel runs javac in its
+ * execution root with relative paths, but sandboxed and worker actions can see absolute paths,
+ * which differ between runs and machines and would keep otherwise identical outputs from being
+ * shared through a cache.
+ */
+public final class SourceFileNames {
+
+  private static final String EXECROOT = "/execroot/";
+
+  private SourceFileNames() {}
+
+  public static String toWorkspaceRelative(String sourceFileName) {
+    return toWorkspaceRelative(sourceFileName, Path.of("").toAbsolutePath());
+  }
+
+  /**
+   * Strips the working directory, or else everything up to and including the workspace directory
+   * inside of an execution root, from an absolute source file name. Other names are returned as
+   * they are.
+   */
+  public static String toWorkspaceRelative(String sourceFileName, Path workingDirectory) {
+    if (!sourceFileName.startsWith("/")) {
+      return sourceFileName;
+    }
+    String root =
+        workingDirectory.toString().endsWith("/")
+            ? workingDirectory.toString()
+            : workingDirectory + "/";
+    if (sourceFileName.startsWith(root)) {
+      return sourceFileName.substring(root.length());
+    }
+    int execroot = sourceFileName.indexOf(EXECROOT);
+    if (execroot >= 0) {
+      int workspaceEnd = sourceFileName.indexOf('/', execroot + EXECROOT.length());
+      if (workspaceEnd >= 0) {
+        return sourceFileName.substring(workspaceEnd + 1);
+      }
+    }
+    return sourceFileName;
+  }
+}
@@ -8,15 +8,25 @@ import com.sun.source.util.Plugin;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskEvent.Kind;
 import com.sun.source.util.TaskListener;
-import com.sun.source.util.Trees;
 import com.sun.tools.javac.api.BasicJavacTask;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Position;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
 
 /**
  * Compiler plugin that scans Java source code to find the exported and imported symbols in every
- * compilation unit.
+ * compilation unit. The results for all compilation units are buffered and written to a single
+ * symbols file once the whole compilation has finished, optionally together with {@link
+ * CompilationStats} about what scanning each of them cost.
  */
 @AutoService(Plugin.class)
 public class StripeDependencyAnalyzerPlugin implements Plugin {
@@ -30,47 +40,73 @@ public class StripeDependencyAnalyzerPlugin implements Plugin {
 
   @Override
   public void init(JavacTask task, String... args) {
-    /**
-     * Bazel will pass the label of the target that's source files are being compiled as an argument
-     * to the compiler plugin, but we won't pass that argument in testing, so it's optional.
-     */
-    String bazelTargetLabel = args.length >= 1 ? args[0] : "";
+    long startNanos = System.nanoTime();
+    PluginOptions options = PluginOptions.parse(args);
 
     Context context = ((BasicJavacTask) task).getContext();
-    SymbolsFileManager fileManager = new SymbolsFileManager(context.get(JavaFileManager.class));
-    Trees trees = Trees.instance(task);
+    SymbolsFileManager fileManager =
+        options.createSymbolsFileManager(context.get(JavaFileManager.class));
+    ScannerCache cache = new ScannerCache();
     task.addTaskListener(
         new TaskListener() {
+          /**
+           * ANALYZE is reported once per top-level class, so a compilation unit with several
+           * top-level classes must only be scanned the first time. Results are keyed by source file
+           * rather than by tree so that the trees of analyzed units are not kept alive.
+           */
+          private final Map<JavaFileObject, SymbolCollectionResult> results =
+              new LinkedHashMap<>();
+
+          private final List<CompilationStats.UnitStats> unitStats = new ArrayList<>();
+
           @Override
           public void finished(TaskEvent e) {
-            if (e.getKind() == Kind.ANALYZE) {
-              SymbolCollector collector = new SymbolCollector();
-              new ExportedSymbolScanner(collector).scan(e.getCompilationUnit(), null);
-              new ImportedSymbolScanner(collector).scan(e.getCompilationUnit(), null);
-
-              SymbolCollectionResult result =
-                  SymbolCollectionResult.create(
-                      e.getCompilationUnit().getSourceFile().getName(),
-                      SymbolCollector.getFullyQualifiedName(
-                              ASTHelpers.getSymbol(e.getCompilationUnit().getPackage()))
-                          .toString(),
-                      bazelTargetLabel,
-                      collector.getSortedExportedSymbolStrings(),
-                      collector.getSortedImportedSymbolStrings());
-              writeSymbolsToFile(result, e.getCompilationUnit());
+            if (e.getKind() == Kind.ANALYZE && !results.containsKey(e.getSourceFile())) {
+              results.put(e.getSourceFile(), collectSymbols(e.getCompilationUnit()));
+            } else if (e.getKind() == Kind.COMPILATION) {
+              writeSymbolsToFile();
             }
           }
 
-          private void writeSymbolsToFile(
-              SymbolCollectionResult result, CompilationUnitTree compilationUnit) {
+          private SymbolCollectionResult collectSymbols(CompilationUnitTree compilationUnit) {
+            long scanStartNanos = System.nanoTime();
+            SymbolCollector collector =
+                new SymbolCollector(cache, options.getSymbolGranularity());
+            new CombinedSymbolScanner(collector, cache).scan(compilationUnit, null);
+
+            String sourceFileName = compilationUnit.getSourceFile().getName();
+            SymbolCollectionResult result =
+                SymbolCollectionResult.create(
+                    SourceFileNames.toWorkspaceRelative(sourceFileName),
+                    cache.getFullyQualifiedName(
+                        ASTHelpers.getSymbol(compilationUnit.getPackage())),
+                    options.getBazelTargetLabel(),
+                    collector.getSortedExportedSymbolStrings(),
+                    collector.getSortedImportedSymbolStrings());
+            unitStats.add(
+                CompilationStats.UnitStats.of(
+                    result, Duration.ofNanos(System.nanoTime() - scanStartNanos)));
+            return result;
+          }
+
+          private void writeSymbolsToFile() {
             try {
-              fileManager.writeResultsToSymbolsFile(result);
+              // sorted so that the same sources always give the same file, whatever their order
+              List<SymbolCollectionResult> sortedResults = new ArrayList<>(results.values());
+              sortedResults.sort(Comparator.comparing(SymbolCollectionResult::getSourceFileName));
+              long symbolsFileBytes = fileManager.writeResultsToSymbolsFile(sortedResults);
+              if (!options.getWriteStats()) {
+                return;
+              }
+              fileManager.writeCompilationStats(
+                  CompilationStats.create(
+                      options.getBazelTargetLabel(),
+                      Duration.ofNanos(System.nanoTime() - startNanos),
+                      symbolsFileBytes,
+                      unitStats));
             } catch (IOException ex) {
-              trees.printMessage(
-                  javax.tools.Diagnostic.Kind.ERROR,
-                  "Failed to write to symbols file",
-                  compilationUnit,
-                  compilationUnit);
+              Log.instance(context)
+                  .rawError(Position.NOPOS, "Failed to write to symbols file: " + ex.getMessage());
             }
           }
         });
@@ -2,12 +2,13 @@ package com.stripe.build.dependencyanalyzer.plugin;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import java.lang.reflect.Type;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -73,13 +74,85 @@ public abstract class SymbolCollectionResult {
   }
 
   public static SymbolCollectionResult fromJsonObject(JsonObject jsonObject) {
-    Gson gson = new Gson();
-    Type stringListType = new TypeToken<List<String>>() {}.getType();
     return create(
         jsonObject.get(SOURCE_FILE_NAME_PROPERTY).getAsString(),
         jsonObject.get(PACKAGE_NAME_PROPERTY).getAsString(),
         jsonObject.get(BAZEL_TARGET_LABEL_PROPERTY).getAsString(),
-        gson.fromJson(jsonObject.getAsJsonArray(EXPORTED_SYMBOLS_PROPERTY), stringListType),
-        gson.fromJson(jsonObject.getAsJsonArray(IMPORTED_SYMBOLS_PROPERTY), stringListType));
+        toSymbolSet(jsonObject.getAsJsonArray(EXPORTED_SYMBOLS_PROPERTY)),
+        toSymbolSet(jsonObject.getAsJsonArray(IMPORTED_SYMBOLS_PROPERTY)));
+  }
+
+  private static ImmutableSet<String> toSymbolSet(JsonArray array) {
+    ImmutableSet.Builder<String> symbols = ImmutableSet.builderWithExpectedSize(array.size());
+    array.forEach(element -> symbols.add(element.getAsString()));
+    return symbols.build();
+  }
+
+  /** Writes the result as a JSON object with the same properties as {@link #toJsonObject()}. */
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name(SOURCE_FILE_NAME_PROPERTY).value(getSourceFileName());
+    writer.name(PACKAGE_NAME_PROPERTY).value(getPackageName());
+    writer.name(BAZEL_TARGET_LABEL_PROPERTY).value(getBazelTargetLabel());
+    writeSymbols(writer.name(EXPORTED_SYMBOLS_PROPERTY), getExportedSymbols());
+    writeSymbols(writer.name(IMPORTED_SYMBOLS_PROPERTY), getImportedSymbols());
+    writer.endObject();
+  }
+
+  private static void writeSymbols(JsonWriter writer, Set<String> symbols) throws IOException {
+    writer.beginArray();
+    for (String symbol : symbols) {
+      writer.value(symbol);
+    }
+    writer.endArray();
+  }
+
+  /**
+   * Reads a single JSON object token by token, without building a tree of it first. Properties
+   * that are not known are skipped.
+   */
+  public static SymbolCollectionResult readJson(JsonReader reader) throws IOException {
+    String sourceFileName = null;
+    String packageName = null;
+    String bazelTargetLabel = null;
+    ImmutableSet<String> exportedSymbols = ImmutableSet.of();
+    ImmutableSet<String> importedSymbols = ImmutableSet.of();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case SOURCE_FILE_NAME_PROPERTY:
+          sourceFileName = reader.nextString();
+          break;
+        case PACKAGE_NAME_PROPERTY:
+          packageName = reader.nextString();
+          break;
+        case BAZEL_TARGET_LABEL_PROPERTY:
+          bazelTargetLabel = reader.nextString();
+          break;
+        case EXPORTED_SYMBOLS_PROPERTY:
+          exportedSymbols = readSymbols(reader);
+          break;
+        case IMPORTED_SYMBOLS_PROPERTY:
+          importedSymbols = readSymbols(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (sourceFileName == null || packageName == null || bazelTargetLabel == null) {
+      throw new JsonParseException("Symbols result is missing a property at " + reader.getPath());
+    }
+    return create(sourceFileName, packageName, bazelTargetLabel, exportedSymbols, importedSymbols);
+  }
+
+  private static ImmutableSet<String> readSymbols(JsonReader reader) throws IOException {
+    ImmutableSet.Builder<String> symbols = ImmutableSet.builder();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      symbols.add(reader.nextString());
+    }
+    reader.endArray();
+    return symbols.build();
   }
 }
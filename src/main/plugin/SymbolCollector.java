@@ -1,7 +1,8 @@
 package com.stripe.build.dependencyanalyzer.plugin;
 
 import com.sun.tools.javac.code.Symbol;
-import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -10,15 +11,30 @@ import java.util.stream.Collectors;
 
 public class SymbolCollector {
 
+  private final ScannerCache cache;
+  private final SymbolGranularity granularity;
   private final Set<Symbol> exportedSymbols = new HashSet<>();
   private final Set<Symbol> importedSymbols = new HashSet<>();
 
+  public SymbolCollector() {
+    this(new ScannerCache());
+  }
+
+  public SymbolCollector(ScannerCache cache) {
+    this(cache, SymbolGranularity.MEMBER);
+  }
+
+  public SymbolCollector(ScannerCache cache, SymbolGranularity granularity) {
+    this.cache = cache;
+    this.granularity = granularity;
+  }
+
   public void addExportedSymbol(Symbol symbol) {
-    exportedSymbols.add(symbol);
+    exportedSymbols.add(applyGranularity(symbol));
   }
 
   public void addImportedSymbol(Symbol symbol) {
-    importedSymbols.add(symbol);
+    importedSymbols.add(applyGranularity(symbol));
   }
 
   public List<String> getSortedExportedSymbolStrings() {
@@ -29,16 +45,27 @@ public class SymbolCollector {
     return getSortedSymbolStrings(importedSymbols);
   }
 
-  public static Name getFullyQualifiedName(Symbol symbol) {
-    // class and package symbol types already handle fully qualified name
-    return (symbol instanceof Symbol.ClassSymbol || symbol instanceof Symbol.PackageSymbol)
-        ? symbol.getQualifiedName()
-        : getFullyQualifiedName(symbol.owner).append('.', symbol.getQualifiedName());
+  private Symbol applyGranularity(Symbol symbol) {
+    if (granularity == SymbolGranularity.MEMBER) {
+      return symbol;
+    }
+    // the outermost class symbol in the owner chain, stopping at the package
+    Symbol topLevelClass = symbol;
+    for (Symbol owner = symbol; owner != null; owner = owner.owner) {
+      if (owner instanceof PackageSymbol) {
+        break;
+      } else if (owner instanceof ClassSymbol) {
+        topLevelClass = owner;
+      }
+    }
+    return topLevelClass;
   }
 
   private List<String> getSortedSymbolStrings(Collection<Symbol> symbols) {
+    // overloaded methods are distinct symbols with the same name
     return symbols.stream()
-        .map(s -> getFullyQualifiedName(s).toString())
+        .map(cache::getFullyQualifiedName)
+        .distinct()
         .sorted()
         .collect(Collectors.toList());
   }
@@ -0,0 +1,24 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.util.Locale;
+
+/** How finely the compiler plugin distinguishes the symbols that source files export and import. */
+public enum SymbolGranularity {
+  /** Every class, method and field is its own symbol, e.g. {@code com.foo.Bar.getVal}. */
+  MEMBER,
+  /**
+   * Every symbol is collapsed into the top-level class that declares it, e.g. {@code com.foo.Bar}.
+   * A top-level class is declared in exactly one source file, so this is enough to find the file,
+   * and therefore the Bazel targets, that a symbol is imported from, with far fewer symbols.
+   */
+  CLASS;
+
+  /** Name used for this granularity on the command line, e.g. {@code class}. */
+  public String getFlagValue() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  public static SymbolGranularity fromFlagValue(String flagValue) {
+    return valueOf(flagValue.toUpperCase(Locale.ROOT));
+  }
+}
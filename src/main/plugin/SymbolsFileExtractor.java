@@ -0,0 +1,151 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonStreamParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copies the files that the compiler plugin wrote into the output jar of an analyzer action, the
+ * symbols file and optionally its stats file, out of the jar so that they can be outputs of their
+ * own.
+ *
+ * <p>With {@link #PERSISTENT_WORKER_FLAG} it runs as a Bazel persistent worker that reads work
+ * requests from stdin using the JSON worker protocol, so that a single warm JVM serves the
+ * extraction actions of every target instead of a new process being started for each of them.
+ * Otherwise it handles the arguments it is started with, expanding {@code @flagfile} arguments.
+ *
+ * <p>Usage: {@code --jar=<path> --output_dir=<path> <entry name>...}
+ */
+public class SymbolsFileExtractor {
+
+  public static final String PERSISTENT_WORKER_FLAG = "--persistent_worker";
+  public static final String JAR_FLAG = "--jar=";
+  public static final String OUTPUT_DIR_FLAG = "--output_dir=";
+
+  private SymbolsFileExtractor() {}
+
+  public static void main(String[] args) throws IOException {
+    if (List.of(args).contains(PERSISTENT_WORKER_FLAG)) {
+      runPersistentWorker(System.in, System.out);
+    } else {
+      extract(expandFlagFiles(List.of(args)));
+    }
+  }
+
+  /**
+   * Handles work requests until stdin is closed. Each request is a JSON object with the arguments
+   * of one action, and gets a JSON response on its own line with the same request id.
+   */
+  public static void runPersistentWorker(InputStream requests, OutputStream responses)
+      throws IOException {
+    JsonStreamParser parser =
+        new JsonStreamParser(new InputStreamReader(requests, StandardCharsets.UTF_8));
+    Writer writer = new OutputStreamWriter(responses, StandardCharsets.UTF_8);
+    while (parser.hasNext()) {
+      JsonObject request = parser.next().getAsJsonObject();
+      writer.write(handleWorkRequest(request).toString());
+      writer.write('\n');
+      writer.flush();
+    }
+  }
+
+  private static JsonObject handleWorkRequest(JsonObject request) {
+    List<String> arguments = new ArrayList<>();
+    JsonArray requestArguments = request.getAsJsonArray("arguments");
+    if (requestArguments != null) {
+      for (JsonElement argument : requestArguments) {
+        arguments.add(argument.getAsString());
+      }
+    }
+    int exitCode = 0;
+    StringWriter output = new StringWriter();
+    try {
+      extract(expandFlagFiles(arguments));
+    } catch (IOException | RuntimeException e) {
+      // a failed action must not take down the worker, which serves the other actions too
+      exitCode = 1;
+      e.printStackTrace(new PrintWriter(output));
+    }
+    JsonObject response = new JsonObject();
+    response.addProperty("exitCode", exitCode);
+    response.addProperty("output", output.toString());
+    response.addProperty(
+        "requestId", request.has("requestId") ? request.get("requestId").getAsInt() : 0);
+    return response;
+  }
+
+  /**
+   * Copies the named entries of a jar into the output directory, reading each from the jar's
+   * central directory rather than decompressing the whole jar.
+   */
+  public static void extract(List<String> arguments) throws IOException {
+    Path jar = null;
+    Path outputDirectory = null;
+    List<String> entryNames = new ArrayList<>();
+    for (String argument : arguments) {
+      if (argument.startsWith(JAR_FLAG)) {
+        jar = Path.of(argument.substring(JAR_FLAG.length()));
+      } else if (argument.startsWith(OUTPUT_DIR_FLAG)) {
+        outputDirectory = Path.of(argument.substring(OUTPUT_DIR_FLAG.length()));
+      } else if (argument.startsWith("--")) {
+        throw new IllegalArgumentException("Unknown extractor option: " + argument);
+      } else {
+        entryNames.add(argument);
+      }
+    }
+    if (jar == null || outputDirectory == null) {
+      throw new IllegalArgumentException(
+          String.format("Both %s and %s are required", JAR_FLAG, OUTPUT_DIR_FLAG));
+    }
+
+    Files.createDirectories(outputDirectory);
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      for (String entryName : entryNames) {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+          throw new IOException(String.format("%s has no entry %s", jar, entryName));
+        }
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+          Files.copy(
+              inputStream,
+              outputDirectory.resolve(entryName),
+              StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+  }
+
+  /** Replaces every {@code @path} argument with the lines of the file at that path. */
+  private static List<String> expandFlagFiles(List<String> arguments) throws IOException {
+    List<String> expanded = new ArrayList<>();
+    for (String argument : arguments) {
+      if (argument.startsWith("@")) {
+        for (String line : Files.readAllLines(Path.of(argument.substring(1)))) {
+          if (!line.isEmpty()) {
+            expanded.add(line);
+          }
+        }
+      } else {
+        expanded.add(argument);
+      }
+    }
+    return expanded;
+  }
+}
@@ -0,0 +1,44 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/** The on-disk encodings the compiler plugin can write symbols files in. */
+public enum SymbolsFileFormat {
+  /** Compact, versioned encoding read and written by {@link BinarySymbolsFormat}. */
+  BINARY("-symbols.bin"),
+  /** Pretty-printed JSON, which is much larger and slower to parse but useful for debugging. */
+  JSON("-symbols.json");
+
+  private final String fileSuffix;
+
+  SymbolsFileFormat(String fileSuffix) {
+    this.fileSuffix = fileSuffix;
+  }
+
+  public String getFileSuffix() {
+    return fileSuffix;
+  }
+
+  /** Name used for this format on the command line, e.g. {@code --symbols_format=json}. */
+  public String getFlagValue() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  public static SymbolsFileFormat fromFlagValue(String flagValue) {
+    return valueOf(flagValue.toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Determines the format of a symbols file from its name, for example {@code
+   * Foo-symbols.json} or {@code pkg--lib-all-symbols.bin}.
+   */
+  public static Optional<SymbolsFileFormat> fromFileName(String fileName) {
+    for (SymbolsFileFormat format : values()) {
+      if (fileName.endsWith(format.getFileSuffix())) {
+        return Optional.of(format);
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -1,46 +1,104 @@
 package com.stripe.build.dependencyanalyzer.plugin;
 
-import com.google.common.io.Files;
+import com.google.common.io.CountingOutputStream;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonStreamParser;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
-import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
 import javax.tools.FileObject;
 import javax.tools.JavaFileManager;
 import javax.tools.StandardLocation;
 
+/**
+ * Reads and writes the single symbols file that holds the results for every compilation unit of a
+ * compilation. The file is written to the root of the class output, so for a Bazel target it ends
+ * up as one entry of the output jar. The stats of the compilation are written next to it, in a
+ * file with the same name followed by {@link #STATS_FILE_SUFFIX}.
+ */
 public class SymbolsFileManager {
+
+  /** Name of the symbols file, without its format suffix, if none is passed to the plugin. */
+  private static final String DEFAULT_SYMBOLS_FILE_NAME = "unused-deps";
+
+  /** Suffix appended to the name of a symbols file to get the name of its stats file. */
+  public static final String STATS_FILE_SUFFIX = ".stats.json";
+
   private final JavaFileManager javaFileManager;
+  private final SymbolsFileFormat format;
+  private final String symbolsFileName;
 
-  public SymbolsFileManager(JavaFileManager javaFileManager) {
+  public SymbolsFileManager(JavaFileManager javaFileManager, SymbolsFileFormat format) {
+    this(javaFileManager, format, DEFAULT_SYMBOLS_FILE_NAME + format.getFileSuffix());
+  }
+
+  public SymbolsFileManager(
+      JavaFileManager javaFileManager, SymbolsFileFormat format, String symbolsFileName) {
     this.javaFileManager = javaFileManager;
+    this.format = format;
+    this.symbolsFileName = symbolsFileName;
   }
 
-  public URI writeResultsToSymbolsFile(SymbolCollectionResult symbolsResult) throws IOException {
-    FileObject outputFile =
-        getSymbolsFile(symbolsResult.getSourceFileName(), symbolsResult.getPackageName());
-    Writer writer = outputFile.openWriter();
-    writer.append(symbolsResult.toJsonString());
-    writer.close();
+  /**
+   * Writes the results of every compilation unit to the symbols file.
+   *
+   * @return the size of the written file in bytes
+   */
+  public long writeResultsToSymbolsFile(Collection<SymbolCollectionResult> symbolsResults)
+      throws IOException {
+    FileObject outputFile = getSymbolsFile();
+    CountingOutputStream countingStream = new CountingOutputStream(outputFile.openOutputStream());
+    if (format == SymbolsFileFormat.JSON) {
+      try (Writer writer = new OutputStreamWriter(countingStream, StandardCharsets.UTF_8)) {
+        JsonSymbolsFormat.write(symbolsResults, writer);
+      }
+    } else {
+      try (OutputStream outputStream = countingStream) {
+        BinarySymbolsFormat.write(symbolsResults, outputStream);
+      }
+    }
     javaFileManager.flush();
-    return outputFile.toUri();
+    return countingStream.getCount();
   }
 
-  public SymbolCollectionResult readResultsFromSymbolsFile(
-      String sourceFileName, String packageName) throws IOException {
-    return parseSymbolsFile(getSymbolsFile(sourceFileName, packageName));
+  public void writeCompilationStats(CompilationStats stats) throws IOException {
+    try (Writer writer = getStatsFile().openWriter()) {
+      new GsonBuilder().setPrettyPrinting().create().toJson(stats.toJsonObject(), writer);
+    }
+    javaFileManager.flush();
   }
 
-  private FileObject getSymbolsFile(String sourceFileName, String packageName) throws IOException {
-    String symbolsFileName = Files.getNameWithoutExtension(sourceFileName) + "-symbols.json";
+  public CompilationStats readCompilationStats() throws IOException {
+    try (Reader reader = getStatsFile().openReader(false)) {
+      return CompilationStats.fromJsonObject(new JsonStreamParser(reader).next().getAsJsonObject());
+    }
+  }
+
+  public List<SymbolCollectionResult> readResultsFromSymbolsFile() throws IOException {
+    FileObject symbolsFile = getSymbolsFile();
+    if (format == SymbolsFileFormat.BINARY) {
+      try (InputStream inputStream = symbolsFile.openInputStream()) {
+        return BinarySymbolsFormat.read(inputStream);
+      }
+    }
+    try (Reader reader = symbolsFile.openReader(false)) {
+      return JsonSymbolsFormat.read(reader);
+    }
+  }
+
+  private FileObject getSymbolsFile() throws IOException {
     return javaFileManager.getFileForOutput(
-        StandardLocation.CLASS_OUTPUT, packageName, symbolsFileName, null);
+        StandardLocation.CLASS_OUTPUT, "", symbolsFileName, null);
   }
 
-  private SymbolCollectionResult parseSymbolsFile(FileObject symbolsFile) throws IOException {
-    Reader reader = symbolsFile.openReader(false);
-    var parser = new JsonStreamParser(reader);
-    return SymbolCollectionResult.fromJsonObject(parser.next().getAsJsonObject());
+  private FileObject getStatsFile() throws IOException {
+    return javaFileManager.getFileForOutput(
+        StandardLocation.CLASS_OUTPUT, "", symbolsFileName + STATS_FILE_SUFFIX, null);
   }
 }
@@ -2,19 +2,34 @@
  This script defines the database schema for the DependencyAnalyzer tool.
  codegen/JooqCodeGenerator.java uses this script to generate Java source code
  modeling the schema.
+
+ Unique columns are constrained by separate indexes rather than by UNIQUE
+ column constraints, so that a database being bulk loaded can create them
+ once all of its rows have been inserted.
  */
 
 -- foreign keys are deactivated by default in SQLite, so we need to activate
 PRAGMA FOREIGN_KEYS = ON;
 
+/*
+ Stores key-value metadata describing how the database was collected, such as
+ the granularity of the symbols in the symbol table.
+ */
+CREATE TABLE metadata (
+    metadata_key TEXT PRIMARY KEY,
+    metadata_value TEXT NOT NULL
+);
+
 /*
  Stores information about a bazel target.
  */
 CREATE TABLE bazel_target (
     target_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    target_label TEXT NOT NULL UNIQUE
+    target_label TEXT NOT NULL
 );
 
+CREATE UNIQUE INDEX bazel_target_label ON bazel_target (target_label);
+
 /*
  Stores a dependency edge between two Bazel targets where the target with id
  from_target_id depends on the target with id to_target_id.
@@ -48,17 +63,22 @@ CREATE TABLE bazel_export_edge (
  */
 CREATE TABLE java_file (
     file_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    file_path TEXT NOT NULL UNIQUE
+    file_path TEXT NOT NULL
 );
 
+CREATE UNIQUE INDEX java_file_path ON java_file (file_path);
+
 /*
- Stores a symbol with a fully qualified name (eg. com.stripe.foo.Bar.getVal)
+ Stores a symbol with a fully qualified name (eg. com.stripe.foo.Bar.getVal), or
+ only the top-level class (eg. com.stripe.foo.Bar) in a class-granular database.
  */
 CREATE TABLE symbol (
     symbol_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    fully_qualified_name TEXT NOT NULL UNIQUE
+    fully_qualified_name TEXT NOT NULL
 );
 
+CREATE UNIQUE INDEX symbol_fully_qualified_name ON symbol (fully_qualified_name);
+
 /*
  Stores the many to many mapping from Java source files to Bazel targets.
  */
@@ -97,3 +117,13 @@ CREATE TABLE java_file_imported_symbol (
         REFERENCES symbol,
     PRIMARY KEY (file_id, symbol_id)
 );
+
+/*
+ Stores the steps of a collect run that have completed, such as persisting the
+ Bazel dependency graph or building and persisting a shard of the target
+ pattern, so that a run resumed with --resume skips them.
+ */
+CREATE TABLE collect_checkpoint (
+    checkpoint_name TEXT PRIMARY KEY,
+    completed_at TEXT NOT NULL
+);
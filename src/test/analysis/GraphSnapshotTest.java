@@ -0,0 +1,238 @@
+package com.stripe.build.dependencyanalyzer.analysis;
+
+import com.stripe.build.dependencyanalyzer.database.Database;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelEdge;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelExportEdge;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFile;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileBazelTarget;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileExportedSymbol;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.JavaFileImportedSymbol;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.Symbol;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GraphSnapshotTest {
+
+  private static final String APP = "//src/zoo:app";
+  private static final String LIB = "//src/lib:lib";
+  private static final String API = "//src/lib:api";
+  private static final String UTIL = "//src/util:util";
+  private static final String GUAVA = "@maven//:com_google_guava_guava";
+
+  private Path directory;
+  private Path databaseFile;
+  private Path snapshotFile;
+
+  @Before
+  public void setUp() throws IOException, SQLException {
+    directory = Files.createTempDirectory("graph-snapshot-test");
+    databaseFile = directory.resolve("graph.db");
+    snapshotFile = directory.resolve("graph.snapshot");
+    // the database ids are not in the order of the labels, so the snapshot renumbers them
+    try (Database database = Database.createNew(databaseFile)) {
+      database.bulkInsertBazelTargets(
+          List.of(
+              new BazelTarget(1, APP),
+              new BazelTarget(2, LIB),
+              new BazelTarget(3, API),
+              new BazelTarget(4, UTIL),
+              new BazelTarget(5, GUAVA)));
+      database.bulkInsertBazelEdges(
+          List.of(
+              new BazelEdge(1, 3),
+              new BazelEdge(1, 4),
+              new BazelEdge(1, 5),
+              new BazelEdge(2, 4),
+              new BazelEdge(4, 5)));
+      database.bulkInsertExportEdges(List.of(new BazelExportEdge(3, 2)));
+      database.bulkInsertJavaFiles(
+          List.of(
+              new JavaFile(1, "src/zoo/App.java"),
+              new JavaFile(2, "src/lib/Lib.java"),
+              new JavaFile(3, "src/util/Util.java")));
+      database.bulkInsertJavaFileBazelTargets(
+          List.of(
+              new JavaFileBazelTarget(1, 1),
+              new JavaFileBazelTarget(2, 2),
+              new JavaFileBazelTarget(4, 3)));
+      database.bulkInsertSymbols(
+          List.of(
+              new Symbol(1, "com.example.lib.Lib"),
+              new Symbol(2, "com.example.util.Util"),
+              new Symbol(3, "com.google.common.collect.ImmutableList")));
+      database.bulkInsertJavaFileExportedSymbol(
+          List.of(new JavaFileExportedSymbol(2, 1), new JavaFileExportedSymbol(3, 2)));
+      database.bulkInsertJavaFileImportedSymbol(
+          List.of(
+              new JavaFileImportedSymbol(1, 1),
+              new JavaFileImportedSymbol(1, 3),
+              new JavaFileImportedSymbol(2, 2)));
+      database.putMetadata(Database.SYMBOL_GRANULARITY_METADATA_KEY, "class");
+      database.putMetadata(Database.TARGET_PATTERN_BOUNDARY_METADATA_KEY, "//src/...");
+      GraphSnapshotWriter.write(database, snapshotFile);
+    }
+  }
+
+  /** Tests that the analysis of a snapshot finds the same edges as that of its database. */
+  @Test
+  public void testAnalysisMatchesDatabase() throws IOException, SQLException {
+    ThirdPartySymbolsIndex thirdPartySymbolsIndex = new ThirdPartySymbolsIndex(directory);
+    BazelTargetFilter targetFilter = new BazelTargetFilter("//src");
+    UnusedDepsAnalysisResult fromDatabase;
+    try (Database database = Database.open(databaseFile)) {
+      fromDatabase =
+          UnusedDepsAnalyzer.analyze(
+              DatabaseGraphStore.load(database), thirdPartySymbolsIndex, targetFilter);
+    }
+    UnusedDepsAnalysisResult fromSnapshot =
+        UnusedDepsAnalyzer.analyze(
+            GraphSnapshot.open(snapshotFile), thirdPartySymbolsIndex, targetFilter);
+
+    Assert.assertEquals(
+        Set.of(APP + " " + API, LIB + " " + UTIL), getLabels(fromDatabase.getUsedEdges()));
+    Assert.assertEquals(
+        Set.of(APP + " " + UTIL, APP + " " + GUAVA), getLabels(fromDatabase.getUnusedEdges()));
+    Assert.assertEquals(Set.of(UTIL + " " + GUAVA), getLabels(fromDatabase.getIgnoredEdges()));
+    Assert.assertEquals(
+        getLabels(fromDatabase.getUsedEdges()), getLabels(fromSnapshot.getUsedEdges()));
+    Assert.assertEquals(
+        getLabels(fromDatabase.getUnusedEdges()), getLabels(fromSnapshot.getUnusedEdges()));
+    Assert.assertEquals(
+        getLabels(fromDatabase.getIgnoredEdges()), getLabels(fromSnapshot.getIgnoredEdges()));
+    Assert.assertEquals(
+        fromDatabase.getBuildozerCommandsToRemoveUnusedDeps(),
+        fromSnapshot.getBuildozerCommandsToRemoveUnusedDeps());
+  }
+
+  /** Tests that targets are found by label with the id they have in the database. */
+  @Test
+  public void testFindTargetId() throws IOException {
+    GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+    for (String label : List.of(APP, LIB, API, UTIL, GUAVA)) {
+      OptionalInt targetId = snapshot.findTargetId(label);
+      Assert.assertTrue(label, targetId.isPresent());
+      Assert.assertEquals(label, snapshot.getTarget(targetId.getAsInt()).getTargetLabel());
+    }
+    int appTargetId = snapshot.findTargetId(APP).getAsInt();
+    Assert.assertEquals(Integer.valueOf(1), snapshot.getTarget(appTargetId).getTargetId());
+    // before the first label, between two labels and after the last label
+    Assert.assertFalse(snapshot.findTargetId("//a:a").isPresent());
+    Assert.assertFalse(snapshot.findTargetId("//src/lib:impl").isPresent());
+    Assert.assertFalse(snapshot.findTargetId("@zzz//:zzz").isPresent());
+  }
+
+  /** Tests that the rows of relations without any pairs are empty. */
+  @Test
+  public void testEmptyRows() throws IOException {
+    GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+    int[] appExporterIds = snapshot.getExporterTargetIds(snapshot.findTargetId(APP).getAsInt());
+    Assert.assertEquals(0, appExporterIds.length);
+    int[] libExporterIds = snapshot.getExporterTargetIds(snapshot.findTargetId(LIB).getAsInt());
+    Assert.assertEquals(Set.of(API), getLabels(snapshot, libExporterIds));
+
+    Set<String> thirdPartySymbols = new TreeSet<>();
+    snapshot.forEachImportedSymbol(
+        (fileId, symbolId) -> {
+          if (snapshot.getExporterFileId(symbolId).isEmpty()) {
+            thirdPartySymbols.add(snapshot.getSymbolName(symbolId));
+          }
+        });
+    Assert.assertEquals(Set.of("com.google.common.collect.ImmutableList"), thirdPartySymbols);
+  }
+
+  /** Tests that the metadata of the database is copied into the snapshot. */
+  @Test
+  public void testMetadata() throws IOException {
+    GraphSnapshot snapshot = GraphSnapshot.open(snapshotFile);
+    Assert.assertEquals(
+        Optional.of("class"), snapshot.getMetadata(Database.SYMBOL_GRANULARITY_METADATA_KEY));
+    Assert.assertEquals(
+        Optional.of("//src/..."),
+        snapshot.getMetadata(Database.TARGET_PATTERN_BOUNDARY_METADATA_KEY));
+    Assert.assertEquals(
+        Optional.empty(), snapshot.getMetadata(Database.COLLECT_SETTINGS_METADATA_KEY));
+  }
+
+  /** Tests that a snapshot of an empty database has no targets, edges or metadata. */
+  @Test
+  public void testEmptyDatabase() throws IOException, SQLException {
+    Path emptySnapshotFile = directory.resolve("empty.snapshot");
+    try (Database database = Database.createNew(directory.resolve("empty.db"))) {
+      GraphSnapshotWriter.write(database, emptySnapshotFile);
+    }
+    GraphSnapshot snapshot = GraphSnapshot.open(emptySnapshotFile);
+    Assert.assertFalse(snapshot.findTargetId(APP).isPresent());
+    Assert.assertEquals(
+        Optional.empty(), snapshot.getMetadata(Database.SYMBOL_GRANULARITY_METADATA_KEY));
+    snapshot.forEachDependencyEdge((fromTargetId, toTargetId) -> Assert.fail("Unexpected edge"));
+    snapshot.forEachImportedSymbol((fileId, symbolId) -> Assert.fail("Unexpected import"));
+  }
+
+  /** Tests that a snapshot is told apart from a database by its first bytes. */
+  @Test
+  public void testIsSnapshotFile() throws IOException {
+    Assert.assertTrue(GraphSnapshot.isSnapshotFile(snapshotFile));
+    Assert.assertFalse(GraphSnapshot.isSnapshotFile(databaseFile));
+  }
+
+  /** Tests that a snapshot whose sections were cut off is rejected when it is opened. */
+  @Test
+  public void testRejectsTruncatedSnapshot() throws IOException {
+    byte[] bytes = Files.readAllBytes(snapshotFile);
+    Files.write(snapshotFile, Arrays.copyOf(bytes, bytes.length - 1));
+    assertOpenFails(snapshotFile);
+    Files.write(snapshotFile, Arrays.copyOf(bytes, GraphSnapshot.HEADER_SIZE - 1));
+    assertOpenFails(snapshotFile);
+  }
+
+  /** Tests that a snapshot written by another version is rejected when it is opened. */
+  @Test
+  public void testRejectsOtherVersion() throws IOException {
+    byte[] bytes = Files.readAllBytes(snapshotFile);
+    ByteBuffer.wrap(bytes).putInt(Integer.BYTES, GraphSnapshot.VERSION + 1);
+    Files.write(snapshotFile, bytes);
+    assertOpenFails(snapshotFile);
+  }
+
+  private static void assertOpenFails(Path file) {
+    try {
+      GraphSnapshot.open(file);
+      Assert.fail("Expected opening " + file + " to fail");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+
+  private static Set<String> getLabels(Collection<RichBazelEdge> edges) {
+    Set<String> labels = new TreeSet<>();
+    for (RichBazelEdge edge : edges) {
+      labels.add(edge.getSortableString());
+    }
+    return labels;
+  }
+
+  private static Set<String> getLabels(DependencyGraphStore graph, int[] targetIds) {
+    Set<String> labels = new TreeSet<>();
+    for (int targetId : targetIds) {
+      labels.add(graph.getTarget(targetId).getTargetLabel());
+    }
+    return labels;
+  }
+}
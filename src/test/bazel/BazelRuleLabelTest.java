@@ -0,0 +1,74 @@
+package com.stripe.build.dependencyanalyzer.bazel;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BazelRuleLabelTest {
+
+  @Test
+  public void getPackage() {
+    assertThat(BazelRuleLabel.of("//src/foo:bar").getPackage()).isEqualTo("src/foo");
+    assertThat(BazelRuleLabel.of("@maven//:guava").getPackage()).isEqualTo("");
+  }
+
+  @Test
+  public void matchesRecursivePattern() {
+    var label = BazelRuleLabel.of("//src/foo/bar:baz");
+    assertThat(label.isInTargetPattern("//...")).isTrue();
+    assertThat(label.isInTargetPattern("//src/...")).isTrue();
+    assertThat(label.isInTargetPattern("//src/foo/bar/...")).isTrue();
+    assertThat(label.isInTargetPattern("//src/fo/...")).isFalse();
+    assertThat(BazelRuleLabel.of("@maven//:guava").isInTargetPattern("//...")).isFalse();
+  }
+
+  @Test
+  public void matchesPackagePattern() {
+    var label = BazelRuleLabel.of("//src/foo:bar");
+    assertThat(label.isInTargetPattern("//src/foo:all")).isTrue();
+    assertThat(label.isInTargetPattern("//src/foo:*")).isTrue();
+    assertThat(label.isInTargetPattern("//src:all")).isFalse();
+    assertThat(label.isInTargetPattern("//src/foo:bar")).isTrue();
+    assertThat(label.isInTargetPattern("//src/foo:baz")).isFalse();
+    assertThat(BazelRuleLabel.of("//src/foo:foo").isInTargetPattern("//src/foo")).isTrue();
+    assertThat(label.isInTargetPattern("//src/foo")).isFalse();
+  }
+
+  @Test
+  public void matchesWildcardRecursivePattern() {
+    var label = BazelRuleLabel.of("//src/foo/bar:baz");
+    assertThat(label.isInTargetPattern("//...:all")).isTrue();
+    assertThat(label.isInTargetPattern("//src/...:all")).isTrue();
+    assertThat(label.isInTargetPattern("//src/...:*")).isTrue();
+    assertThat(label.isInTargetPattern("//src/foo/...:all-targets")).isTrue();
+    assertThat(label.isInTargetPattern("//src/fo/...:all")).isFalse();
+    assertThat(label.isInTargetPattern("@//src/...")).isTrue();
+    assertThat(label.isInTargetPattern("@@//src/foo/bar:baz")).isTrue();
+    assertThat(label.isInTargetPattern("@//src/fo/...:*")).isFalse();
+  }
+
+  @Test
+  public void normalizesTargetPattern() {
+    assertThat(BazelRuleLabel.normalizeTargetPattern("//src/...")).isEqualTo("//src/...");
+    assertThat(BazelRuleLabel.normalizeTargetPattern("@//src/...:*")).isEqualTo("//src/...");
+    assertThat(BazelRuleLabel.normalizeTargetPattern("//...:all")).isEqualTo("//...");
+    assertThat(BazelRuleLabel.normalizeTargetPattern("//src/foo:all")).isEqualTo("//src/foo:all");
+  }
+
+  @Test
+  public void rejectsUnsupportedPattern() {
+    for (String pattern : List.of("src/...", "@maven//...", "-//src/...", "//src/...:bar")) {
+      try {
+        BazelRuleLabel.normalizeTargetPattern(pattern);
+        fail("Expected target pattern " + pattern + " to be rejected");
+      } catch (IllegalArgumentException expected) {
+        assertThat(expected).hasMessageThat().contains(pattern);
+      }
+    }
+  }
+}
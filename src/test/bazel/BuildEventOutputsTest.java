@@ -0,0 +1,86 @@
+package com.stripe.build.dependencyanalyzer.bazel;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BuildEventOutputsTest {
+  private static final Path WORKSPACE = Path.of("/src/myrepo");
+
+  @Test
+  public void readsNestedFileSetsOfOutputGroup() throws IOException {
+    var events =
+        List.of(
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"1\"}}",
+            "{\"id\":{\"namedSet\":{\"id\":\"1\"}},\"namedSetOfFiles\":{\"files\":["
+                + "{\"name\":\"src/a/a.bin\",\"uri\":\"file:///out/bin/src/a/a.bin\"}]}}",
+            "{\"id\":{\"namedSet\":{\"id\":\"0\"}},\"namedSetOfFiles\":{\"files\":["
+                + "{\"name\":\"src/a/a.bin.stats.json\",\"pathPrefix\":[\"bazel-out\",\"bin\"]}],"
+                + "\"fileSets\":[{\"id\":\"1\"}]}}",
+            "{\"id\":{\"targetCompleted\":{\"label\":\"@//src/a:a\","
+                + "\"aspect\":\"defs.bzl%analyzer\"}},"
+                + "\"completed\":{\"success\":true,\"outputGroup\":["
+                + "{\"name\":\"unused_deps_analysis_file\",\"fileSets\":[{\"id\":\"0\"}]},"
+                + "{\"name\":\"other\",\"fileSets\":[{\"id\":\"1\"}]}]}}",
+            "{\"id\":{\"targetCompleted\":{\"label\":\"//src/b:b\"}},"
+                + "\"completed\":{\"success\":true,"
+                + "\"outputGroup\":[{\"name\":\"other\",\"fileSets\":[{\"id\":\"1\"}]}]}}");
+    var buildEventFile = Files.createTempFile("build_events", ".json");
+    Files.write(buildEventFile, events);
+
+    Map<String, Set<Path>> files =
+        BuildEventOutputs.getOutputGroupFiles(
+            buildEventFile, "unused_deps_analysis_file", WORKSPACE);
+
+    assertThat(files.keySet()).containsExactly("//src/a:a");
+    assertThat(files.get("//src/a:a"))
+        .containsExactly(
+            Path.of("/src/myrepo/bazel-out/bin/src/a/a.bin.stats.json"),
+            Path.of("/out/bin/src/a/a.bin"));
+  }
+
+  @Test
+  public void followsTargetsAsTheyComplete() throws IOException, InterruptedException {
+    var events =
+        List.of(
+            "{\"id\":{\"namedSet\":{\"id\":\"0\"}},\"namedSetOfFiles\":{\"files\":["
+                + "{\"name\":\"src/a/a.bin\",\"pathPrefix\":[\"bazel-out\",\"bin\"]}]}}",
+            "{\"id\":{\"targetCompleted\":{\"label\":\"//src/a:a\"}},"
+                + "\"completed\":{\"success\":true,\"outputGroup\":["
+                + "{\"name\":\"unused_deps_analysis_file\",\"fileSets\":[{\"id\":\"0\"}]}]}}",
+            "{\"id\":{\"namedSet\":{\"id\":\"1\"}},\"namedSetOfFiles\":{\"files\":["
+                + "{\"name\":\"src/b/b.bin\",\"pathPrefix\":[\"bazel-out\",\"bin\"]}]}}",
+            "{\"id\":{\"targetCompleted\":{\"label\":\"//src/b:b\"}},"
+                + "\"completed\":{\"success\":true,\"outputGroup\":["
+                + "{\"name\":\"unused_deps_analysis_file\",\"fileSets\":[{\"id\":\"1\"}]}]}}",
+            "{\"id\":{\"buildFinished\":{}},\"lastMessage\":true}",
+            "{\"id\":{\"targetCompleted\":{\"label\":\"//src/c:c\"}},"
+                + "\"completed\":{\"success\":true,\"outputGroup\":["
+                + "{\"name\":\"unused_deps_analysis_file\",\"fileSets\":[{\"id\":\"1\"}]}]}}");
+    var buildEventFile = Files.createTempFile("build_events", ".json");
+    Files.write(buildEventFile, events);
+    var process = new ProcessBuilder("true").start();
+    process.waitFor();
+    var build = new RunningBazelBuild(process, Instant.now(), buildEventFile, true);
+
+    Map<String, Set<Path>> files = new LinkedHashMap<>();
+    BuildEventOutputs.follow(build, "unused_deps_analysis_file", WORKSPACE, files::put);
+
+    assertThat(files)
+        .containsExactly(
+            "//src/a:a", Set.of(Path.of("/src/myrepo/bazel-out/bin/src/a/a.bin")),
+            "//src/b:b", Set.of(Path.of("/src/myrepo/bazel-out/bin/src/b/b.bin")))
+        .inOrder();
+  }
+}
@@ -0,0 +1,153 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import com.google.common.collect.Sets;
+import com.stripe.build.dependencyanalyzer.plugin.StripeDependencyAnalyzerPlugin;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.stripe.build.dependencyanalyzer.plugin.TestCompiler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+
+/**
+ * Compares the symbols that the bytecode extractor finds with those that the compiler plugin finds
+ * for the same source files. The plugin test resources are compiled once with the plugin, and the
+ * class files of that compilation are given to the extractor.
+ *
+ * <p>Usage: {@code bazel run //src/test/bytecode:BytecodeComparison}
+ */
+public class BytecodeComparison {
+
+  private final Map<String, SymbolCollectionResult> pluginResults = new LinkedHashMap<>();
+  private final Map<String, SymbolCollectionResult> bytecodeResults = new LinkedHashMap<>();
+
+  public static void main(String[] args) throws IOException {
+    BytecodeComparison comparison = compareTestResources();
+    int differences = 0;
+    for (String fileName : comparison.getFileNames()) {
+      List<String> fileDifferences = comparison.describeDifferences(fileName);
+      if (!fileDifferences.isEmpty()) {
+        System.out.println(fileName);
+        fileDifferences.forEach(difference -> System.out.println("  " + difference));
+        differences += fileDifferences.size();
+      }
+    }
+    System.out.printf(
+        "%d source files compared, %d symbols differ%n",
+        comparison.getFileNames().size(), differences);
+  }
+
+  /** Compiles every plugin test resource and extracts symbols from the resulting class files. */
+  public static BytecodeComparison compareTestResources() throws IOException {
+    Path classOutput = Files.createTempDirectory("bytecode-comparison");
+    List<JavaFileObject> sourceFiles = TestCompiler.getAllTestResources();
+    TestCompiler compiler =
+        new TestCompiler()
+            .setPlugin(StripeDependencyAnalyzerPlugin.NAME)
+            .addPluginArguments("//test:comparison")
+            .addJavacOptions("-d", classOutput.toString())
+            .addSourceFiles(sourceFiles.toArray(new JavaFileObject[0]));
+    if (!compiler.compile()) {
+      throw new IllegalStateException(
+          "Test resources failed to compile:\n" + compiler.getCompilationOutput());
+    }
+
+    List<ClassFile> classFiles = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(classOutput)) {
+      for (Path path : paths.filter(p -> p.toString().endsWith(".class")).toArray(Path[]::new)) {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+          classFiles.add(ClassFileParser.parse(inputStream));
+        }
+      }
+    }
+    BytecodeSymbolExtractor extractor = new BytecodeSymbolExtractor();
+    extractor.addClassFiles(classFiles, "//test:comparison");
+
+    BytecodeComparison comparison = new BytecodeComparison();
+    // the plugin names source files by their resource path, the extractor relative to the package
+    compiler
+        .getSymbolCollectionResults()
+        .forEach(r -> comparison.pluginResults.put(getBaseName(r.getSourceFileName()), r));
+    extractor
+        .getResults()
+        .forEach(r -> comparison.bytecodeResults.put(getBaseName(r.getSourceFileName()), r));
+    return comparison;
+  }
+
+  public Set<String> getFileNames() {
+    return Sets.union(pluginResults.keySet(), bytecodeResults.keySet());
+  }
+
+  public SymbolCollectionResult getPluginResult(String fileName) {
+    return pluginResults.get(fileName);
+  }
+
+  public SymbolCollectionResult getBytecodeResult(String fileName) {
+    return bytecodeResults.get(fileName);
+  }
+
+  /** Lists the symbols that only one of the plugin and the extractor found for a source file. */
+  public List<String> describeDifferences(String fileName) {
+    SymbolCollectionResult plugin = pluginResults.get(fileName);
+    SymbolCollectionResult bytecode = bytecodeResults.get(fileName);
+    if (plugin == null || bytecode == null) {
+      return List.of(plugin == null ? "only found in bytecode" : "only found by the plugin");
+    }
+    List<String> differences = new ArrayList<>();
+    describe(differences, "export", plugin.getExportedSymbols(), bytecode.getExportedSymbols());
+    describe(differences, "import", plugin.getImportedSymbols(), bytecode.getImportedSymbols());
+    return differences;
+  }
+
+  private static void describe(
+      List<String> differences, String kind, Set<String> plugin, Set<String> bytecode) {
+    Sets.difference(plugin, bytecode).stream()
+        .sorted()
+        .map(symbol -> String.format("%s missing from bytecode: %s", kind, symbol))
+        .forEach(differences::add);
+    Sets.difference(bytecode, plugin).stream()
+        .sorted()
+        .map(symbol -> String.format("%s only in bytecode: %s", kind, symbol))
+        .forEach(differences::add);
+  }
+
+  private static String getBaseName(String sourceFileName) {
+    return sourceFileName.substring(sourceFileName.lastIndexOf('/') + 1);
+  }
+
+  /** Source files whose results have a symbol in common, ignoring the files themselves. */
+  public static Map<String, Set<String>> getFileDependencies(
+      Map<String, SymbolCollectionResult> results) {
+    return results.entrySet().stream()
+        .collect(
+            Collectors.toMap(
+                Map.Entry::getKey,
+                entry ->
+                    results.entrySet().stream()
+                        .filter(other -> !other.getKey().equals(entry.getKey()))
+                        .filter(
+                            other ->
+                                !Sets.intersection(
+                                        entry.getValue().getImportedSymbols(),
+                                        other.getValue().getExportedSymbols())
+                                    .isEmpty())
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toSet())));
+  }
+
+  public Map<String, Set<String>> getPluginFileDependencies() {
+    return getFileDependencies(pluginResults);
+  }
+
+  public Map<String, Set<String>> getBytecodeFileDependencies() {
+    return getFileDependencies(bytecodeResults);
+  }
+}
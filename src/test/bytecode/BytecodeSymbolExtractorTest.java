@@ -0,0 +1,52 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BytecodeSymbolExtractorTest {
+
+  /** Tests that every test source file exports exactly the symbols that the plugin finds. */
+  @Test
+  public void testExportsMatchPlugin() throws IOException {
+    BytecodeComparison comparison = BytecodeComparison.compareTestResources();
+    for (String fileName : comparison.getFileNames()) {
+      Assert.assertNotNull(fileName, comparison.getPluginResult(fileName));
+      Assert.assertNotNull(fileName, comparison.getBytecodeResult(fileName));
+      Assert.assertEquals(
+          fileName,
+          comparison.getPluginResult(fileName).getExportedSymbols(),
+          comparison.getBytecodeResult(fileName).getExportedSymbols());
+    }
+  }
+
+  /**
+   * Tests that for every test source file, the source files that it imports a symbol from are the
+   * same as with the plugin, so that both give the same unused dependencies.
+   */
+  @Test
+  public void testFindsSameFileDependenciesAsPlugin() throws IOException {
+    BytecodeComparison comparison = BytecodeComparison.compareTestResources();
+    Map<String, Set<String>> pluginDependencies = comparison.getPluginFileDependencies();
+    Assert.assertTrue(pluginDependencies.values().stream().anyMatch(files -> !files.isEmpty()));
+    Assert.assertEquals(pluginDependencies, comparison.getBytecodeFileDependencies());
+  }
+
+  /** Tests that symbols defined in the same source file are never imported. */
+  @Test
+  public void testIgnoresSymbolsDefinedInFile() throws IOException {
+    BytecodeComparison comparison = BytecodeComparison.compareTestResources();
+    for (String fileName : comparison.getFileNames()) {
+      Set<String> exportedSymbols = comparison.getBytecodeResult(fileName).getExportedSymbols();
+      for (String importedSymbol : comparison.getBytecodeResult(fileName).getImportedSymbols()) {
+        Assert.assertFalse(
+            fileName + " imports " + importedSymbol, exportedSymbols.contains(importedSymbol));
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.stripe.build.dependencyanalyzer.bytecode;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DescriptorsTest {
+
+  @Test
+  public void testMethodDescriptor() {
+    Assert.assertEquals(
+        List.of("java/lang/String", "java/util/List", "java/lang/Object"),
+        Descriptors.getClassNames("(ILjava/lang/String;[[Ljava/util/List;J)Ljava/lang/Object;"));
+  }
+
+  @Test
+  public void testPrimitivesOnly() {
+    Assert.assertEquals(List.of(), Descriptors.getClassNames("([IDZ)V"));
+  }
+
+  @Test
+  public void testClassSignatureWithTypeParameters() {
+    Assert.assertEquals(
+        List.of(
+            "java/lang/Comparable",
+            "java/lang/Object",
+            "java/lang/Runnable",
+            "java/util/AbstractList",
+            "java/lang/CharSequence",
+            "java/util/Map"),
+        Descriptors.getClassNames(
+            "<T::Ljava/lang/Comparable<TT;>;U:Ljava/lang/Object;:Ljava/lang/Runnable;>"
+                + "Ljava/util/AbstractList<TT;>;Ljava/util/Map<+TU;-Ljava/lang/CharSequence;>;"));
+  }
+
+  @Test
+  public void testMemberClassOfParameterizedType() {
+    Assert.assertEquals(
+        List.of("java/lang/String", "foo/Outer$Inner", "java/io/IOException"),
+        Descriptors.getClassNames(
+            "(Lfoo/Outer<Ljava/lang/String;>.Inner<*>;)V^Ljava/io/IOException;"));
+  }
+
+  @Test
+  public void testClassConstant() {
+    Assert.assertEquals(List.of("foo/Bar"), Descriptors.getClassNamesOfClassConstant("foo/Bar"));
+    Assert.assertEquals(
+        List.of("foo/Bar"), Descriptors.getClassNamesOfClassConstant("[[Lfoo/Bar;"));
+    Assert.assertEquals(List.of(), Descriptors.getClassNamesOfClassConstant("[I"));
+  }
+}
@@ -0,0 +1,95 @@
+package com.stripe.build.dependencyanalyzer.collection;
+
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolCollectionResult;
+import com.stripe.build.dependencyanalyzer.plugin.SymbolGranularity;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BytecodeSymbolsGathererTest {
+
+  private static final BazelTarget TARGET = new BazelTarget(1, "//src/foo:foo");
+
+  private Path workspace;
+  private Path packageOutput;
+
+  @Before
+  public void setUp() throws IOException {
+    workspace = Files.createTempDirectory("bytecode-gatherer-test");
+    packageOutput = Files.createDirectories(workspace.resolve("bazel-bin/src/foo"));
+    // the full jar of an earlier build, and the header jar of the latest one, which added a method
+    writeJar(packageOutput.resolve("libfoo.jar"), "public class Foo {}");
+    writeJar(
+        packageOutput.resolve("libfoo-hjar.jar"),
+        "public class Foo { public void added() {} }");
+  }
+
+  /** Tests that the exports of a target are read from its header jar, rather than a stale jar. */
+  @Test
+  public void testExportsPreferHeaderJar() throws IOException {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    BytecodeSymbolsGatherer.getExportedSymbolsForTargets(
+        workspace, List.of(TARGET), SymbolGranularity.MEMBER, results::add);
+
+    Assert.assertEquals(1, results.size());
+    Assert.assertTrue(
+        results.get(0).getExportedSymbols().toString(),
+        results.get(0).getExportedSymbols().contains("com.example.Foo.added"));
+    Assert.assertTrue(results.get(0).getImportedSymbols().isEmpty());
+  }
+
+  /** Tests that the full jar is read when the imports of a target are needed too. */
+  @Test
+  public void testSymbolsReadFullJar() throws IOException {
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    BytecodeSymbolsGatherer.getSymbolsForTargets(
+        workspace, List.of(TARGET), SymbolGranularity.MEMBER, results::add);
+
+    Assert.assertEquals(1, results.size());
+    Assert.assertFalse(results.get(0).getExportedSymbols().contains("com.example.Foo.added"));
+  }
+
+  /** Tests that the full jar is still read for exports when there is no header jar. */
+  @Test
+  public void testExportsFallBackToFullJar() throws IOException {
+    Files.delete(packageOutput.resolve("libfoo-hjar.jar"));
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    BytecodeSymbolsGatherer.getExportedSymbolsForTargets(
+        workspace, List.of(TARGET), SymbolGranularity.MEMBER, results::add);
+
+    Assert.assertEquals(1, results.size());
+    Assert.assertTrue(results.get(0).getExportedSymbols().contains("com.example.Foo"));
+  }
+
+  /** Compiles a class body in package {@code com.example} into a jar of its own. */
+  private static void writeJar(Path jar, String classBody) throws IOException {
+    Path sources = Files.createTempDirectory("sources");
+    Path classes = Files.createTempDirectory("classes");
+    Path source =
+        Files.writeString(sources.resolve("Foo.java"), "package com.example;\n" + classBody);
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler.run(null, null, null, "-d", classes.toString(), source.toString()) != 0) {
+      throw new IllegalStateException("Failed to compile " + classBody);
+    }
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+        JarOutputStream jarOutput = new JarOutputStream(outputStream)) {
+      jarOutput.putNextEntry(new JarEntry("com/example/Foo.class"));
+      jarOutput.write(Files.readAllBytes(classes.resolve("com/example/Foo.class")));
+      jarOutput.closeEntry();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.stripe.build.dependencyanalyzer.collection;
+
+import com.stripe.build.dependencyanalyzer.bazel.BazelRuleLabel;
+import com.stripe.build.dependencyanalyzer.collection.TargetShard.Grouping;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TargetShardTest {
+
+  private static final List<BazelRuleLabel> LABELS =
+      labels(
+          "//src/a:a1",
+          "//src/a:a2",
+          "//src/b:b1",
+          "//src/c:c1",
+          "//src/c:c2",
+          "//src/c:c3",
+          "//src/c:c4",
+          "//src/d:d1");
+
+  /** Tests that whole packages are packed together, without exceeding the shard size. */
+  @Test
+  public void testPackageGroupingPacksPackages() {
+    List<TargetShard> shards = TargetShard.plan(LABELS, Grouping.PACKAGE, 3);
+
+    Assert.assertEquals(
+        List.of(
+            List.of("//src/a:a1", "//src/a:a2", "//src/b:b1"),
+            List.of("//src/c:c1", "//src/c:c2", "//src/c:c3", "//src/c:c4"),
+            List.of("//src/d:d1")),
+        getTargetLabels(shards));
+  }
+
+  /** Tests that a package larger than the shard size is kept whole, in a shard of its own. */
+  @Test
+  public void testPackageGroupingKeepsOversizedPackage() {
+    List<TargetShard> shards = TargetShard.plan(LABELS, Grouping.PACKAGE, 2);
+
+    Assert.assertEquals(
+        List.of(
+            List.of("//src/a:a1", "//src/a:a2"),
+            List.of("//src/b:b1"),
+            List.of("//src/c:c1", "//src/c:c2", "//src/c:c3", "//src/c:c4"),
+            List.of("//src/d:d1")),
+        getTargetLabels(shards));
+  }
+
+  /** Tests that grouping by target fills every shard but the last, splitting packages. */
+  @Test
+  public void testTargetGroupingSplitsPackages() {
+    List<TargetShard> shards = TargetShard.plan(LABELS, Grouping.TARGET, 3);
+
+    Assert.assertEquals(
+        List.of(
+            List.of("//src/a:a1", "//src/a:a2", "//src/b:b1"),
+            List.of("//src/c:c1", "//src/c:c2", "//src/c:c3"),
+            List.of("//src/c:c4", "//src/d:d1")),
+        getTargetLabels(shards));
+  }
+
+  /** Tests that the same targets give the same shards, whatever order they are listed in. */
+  @Test
+  public void testStableAcrossRuns() {
+    List<BazelRuleLabel> shuffled = new ArrayList<>(LABELS);
+    Collections.reverse(shuffled);
+    for (Grouping grouping : Grouping.values()) {
+      List<TargetShard> shards = TargetShard.plan(LABELS, grouping, 3);
+
+      Assert.assertEquals(shards, TargetShard.plan(shuffled, grouping, 3));
+      for (int i = 0; i < shards.size(); i++) {
+        Assert.assertEquals(i + 1, shards.get(i).getIndex());
+        Assert.assertEquals(shards.size(), shards.get(i).getShardCount());
+      }
+      Assert.assertEquals(
+          List.of("shard 1 of 3", "shard 2 of 3", "shard 3 of 3"),
+          shards.stream().map(TargetShard::getCheckpointName).collect(Collectors.toList()));
+    }
+  }
+
+  /** Tests that shards must be allowed at least one target. */
+  @Test
+  public void testRejectsEmptyShards() {
+    for (int targetsPerShard : new int[] {0, -1}) {
+      try {
+        TargetShard.plan(LABELS, Grouping.PACKAGE, targetsPerShard);
+        Assert.fail("Expected planning shards of " + targetsPerShard + " targets to fail");
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+    }
+  }
+
+  private static List<List<String>> getTargetLabels(List<TargetShard> shards) {
+    return shards.stream()
+        .<List<String>>map(TargetShard::getTargetLabels)
+        .collect(Collectors.toList());
+  }
+
+  private static List<BazelRuleLabel> labels(String... labels) {
+    List<BazelRuleLabel> ruleLabels = new ArrayList<>();
+    for (String label : labels) {
+      ruleLabels.add(BazelRuleLabel.of(label));
+    }
+    return ruleLabels;
+  }
+}
@@ -0,0 +1,101 @@
+package com.stripe.build.dependencyanalyzer.database;
+
+import static com.stripe.build.dependencyanalyzer.database.generated.Tables.BAZEL_EDGE;
+
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelEdge;
+import com.stripe.build.dependencyanalyzer.database.generated.tables.pojos.BazelTarget;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.jooq.Configuration;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+/**
+ * Compares inserting Bazel dependency edges one statement per row, as every bulk insert of {@link
+ * Database} used to, with binding them to a prepared statement that is executed in JDBC batches.
+ * Both insert the same edges into a fresh database, in a single transaction, with foreign keys
+ * enforced.
+ *
+ * <p>Usage: {@code bazel run //src/test/database:BulkInsertBenchmark -- [edges] [batch size]}
+ */
+public class BulkInsertBenchmark {
+
+  private static final int DEFAULT_EDGES = 1_000_000;
+  private static final int DEPS_PER_TARGET = 100;
+
+  public static void main(String[] args) throws IOException, SQLException {
+    int numEdges = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EDGES;
+    int batchSize =
+        args.length > 1 ? Integer.parseInt(args[1]) : Database.DEFAULT_INSERT_BATCH_SIZE;
+    int numTargets = Math.max(numEdges / DEPS_PER_TARGET, 1) + DEPS_PER_TARGET;
+    List<BazelTarget> targets = new ArrayList<>();
+    for (int targetId = 1; targetId <= numTargets; targetId++) {
+      targets.add(new BazelTarget(targetId, "//src/benchmark:target" + targetId));
+    }
+    List<BazelEdge> edges = new ArrayList<>();
+    for (int i = 0; i < numEdges; i++) {
+      int fromTargetId = i / DEPS_PER_TARGET + 1;
+      edges.add(new BazelEdge(fromTargetId, fromTargetId + i % DEPS_PER_TARGET + 1));
+    }
+
+    long perRowNanos = insertPerRow(targets, edges);
+    long batchedNanos = insertBatched(targets, edges, batchSize);
+
+    System.out.printf("%d edges between %d targets%n", numEdges, numTargets);
+    System.out.printf(
+        "one statement per row:      %.1f s, %.0f rows/second%n",
+        perRowNanos / 1e9, numEdges / (perRowNanos / 1e9));
+    System.out.printf(
+        "batches of %-7d          %.1f s, %.0f rows/second%n",
+        batchSize, batchedNanos / 1e9, numEdges / (batchedNanos / 1e9));
+  }
+
+  /** Renders and executes a new insert statement for every edge, like the old bulk inserts. */
+  private static long insertPerRow(List<BazelTarget> targets, List<BazelEdge> edges)
+      throws IOException, SQLException {
+    Path file = Files.createTempFile("per_row", ".db");
+    try (Database database = Database.createNew(file)) {
+      database.bulkInsertBazelTargets(targets);
+    }
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+        Statement statement = connection.createStatement()) {
+      // enforced on the connection of a new Database by its schema script, but off by default
+      statement.execute("PRAGMA foreign_keys = ON;");
+      long start = System.nanoTime();
+      DSL.using(connection, SQLDialect.SQLITE)
+          .transaction(
+              (Configuration trx) -> {
+                for (BazelEdge edge : edges) {
+                  trx.dsl()
+                      .insertInto(BAZEL_EDGE, BAZEL_EDGE.FROM_TARGET_ID, BAZEL_EDGE.TO_TARGET_ID)
+                      .values(edge.getFromTargetId(), edge.getToTargetId())
+                      .execute();
+                }
+              });
+      return System.nanoTime() - start;
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static long insertBatched(List<BazelTarget> targets, List<BazelEdge> edges, int batchSize)
+      throws IOException, SQLException {
+    Path file = Files.createTempFile("batched", ".db");
+    try (Database database = Database.createNew(file)) {
+      database.setInsertBatchSize(batchSize);
+      database.bulkInsertBazelTargets(targets);
+      long start = System.nanoTime();
+      database.bulkInsertBazelEdges(edges);
+      return System.nanoTime() - start;
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.BAR;
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.FOO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BinarySymbolsFormatTest {
+
+  /** Tests that symbols files can be concatenated together and read back as one stream. */
+  @Test
+  public void testConcatenatedBlocks() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinarySymbolsFormat.write(List.of(FOO), out);
+    BinarySymbolsFormat.write(List.of(), out);
+    BinarySymbolsFormat.write(List.of(BAR), out);
+
+    List<SymbolCollectionResult> results =
+        BinarySymbolsFormat.read(new ByteArrayInputStream(out.toByteArray()));
+
+    Assert.assertEquals(List.of(FOO, BAR), results);
+  }
+
+  /** Tests that input in another format is rejected rather than silently misread. */
+  @Test
+  public void testRejectsForeignInput() {
+    assertReadFails(FOO.toJsonString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Tests that corrupt counts and lengths are rejected before anything is allocated for them. */
+  @Test
+  public void testRejectsCorruptCounts() {
+    // a block length of -1
+    assertReadFails(new byte[] {'U', 'S', 'Y', 'M', 1, -1, -1, -1, -1, 0x0f});
+    // a string count of -1, and of Integer.MAX_VALUE
+    assertReadFails(block(-1, -1, -1, -1, 0x0f));
+    assertReadFails(block(-1, -1, -1, -1, 0x07));
+    // a string longer than the block
+    assertReadFails(block(1, 100, 'a'));
+    // a record that refers to a string that isn't in the table
+    assertReadFails(block(1, 1, 'a', 1, 0, 0, 1, 0, 0));
+    // an exported symbol count of -1
+    assertReadFails(block(1, 1, 'a', 1, 0, 0, 0, -1, -1, -1, -1, 0x0f, 0));
+  }
+
+  /** Makes a block with the payload, whose length must fit in a single byte varint. */
+  private static byte[] block(int... payload) {
+    byte[] block = new byte[6 + payload.length];
+    block[0] = 'U';
+    block[1] = 'S';
+    block[2] = 'Y';
+    block[3] = 'M';
+    block[4] = BinarySymbolsFormat.VERSION;
+    block[5] = (byte) payload.length;
+    for (int i = 0; i < payload.length; i++) {
+      block[6 + i] = (byte) payload[i];
+    }
+    return block;
+  }
+
+  private void assertReadFails(byte[] input) {
+    try {
+      BinarySymbolsFormat.read(new ByteArrayInputStream(input));
+      Assert.fail("Expected reading malformed input to fail");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+}
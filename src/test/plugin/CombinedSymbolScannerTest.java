@@ -0,0 +1,40 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CombinedSymbolScannerTest {
+
+  /**
+   * Tests that scanning every test source file in a single pass collects exactly the same symbols
+   * as scanning it once for exports and once for imports.
+   */
+  @Test
+  public void testMatchesSeparateScanners() throws IOException {
+    List<CompilationUnitTree> compilationUnits = TestCompiler.analyzeAllTestResources();
+    for (CompilationUnitTree compilationUnit : compilationUnits) {
+      SymbolCollector separateCollector = new SymbolCollector();
+      new ExportedSymbolScanner(separateCollector).scan(compilationUnit, null);
+      new ImportedSymbolScanner(separateCollector).scan(compilationUnit, null);
+
+      SymbolCollector combinedCollector = new SymbolCollector();
+      new CombinedSymbolScanner(combinedCollector).scan(compilationUnit, null);
+
+      String sourceFileName = compilationUnit.getSourceFile().getName();
+      Assert.assertEquals(
+          sourceFileName,
+          separateCollector.getSortedExportedSymbolStrings(),
+          combinedCollector.getSortedExportedSymbolStrings());
+      Assert.assertEquals(
+          sourceFileName,
+          separateCollector.getSortedImportedSymbolStrings(),
+          combinedCollector.getSortedImportedSymbolStrings());
+    }
+  }
+}
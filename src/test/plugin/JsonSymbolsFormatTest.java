@@ -0,0 +1,36 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.BAR;
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.FOO;
+
+import com.google.gson.JsonArray;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class JsonSymbolsFormatTest {
+
+  /**
+   * Tests that the streaming reader accepts what the tree model writes, including the null
+   * elements of arrays that the aspect aggregates and documents that follow each other.
+   */
+  @Test
+  public void testReadsTreeModelOutput() throws IOException {
+    JsonArray array = new JsonArray();
+    array.add(FOO.toJsonObject());
+    array.add((String) null);
+    String input = array.toString() + "\n" + BAR.toJsonString();
+
+    List<SymbolCollectionResult> results = new ArrayList<>();
+    JsonSymbolsFormat.read(new StringReader(input), results::add);
+
+    Assert.assertEquals(List.of(FOO, BAR), results);
+    Assert.assertEquals(FOO, SymbolCollectionResult.fromJsonObject(FOO.toJsonObject()));
+  }
+}
@@ -0,0 +1,231 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreeScanner;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures the overhead that the compiler plugin adds to javac, on a generated corpus of
+ * compilation units that exercise the same constructs as real code: fields, overloaded methods,
+ * nested classes, generics and calls into other units and the JDK. Every unit also uses a class at
+ * the bottom of a deep hierarchy of classes and interfaces, like generated protobuf messages.
+ *
+ * <p>Two numbers are reported: the difference in wall time of a full compilation with and without
+ * the plugin, and the time spent walking the analyzed trees with the combined single-pass scanner
+ * compared to the separate export and import scanners.
+ *
+ * <p>Usage: {@code bazel run //src/test/plugin:PluginOverheadBenchmark -- [units] [iterations]
+ * [hierarchy depth]}
+ */
+public class PluginOverheadBenchmark {
+
+  private static final int DEFAULT_UNITS = 500;
+  private static final int DEFAULT_ITERATIONS = 5;
+  private static final int DEFAULT_HIERARCHY_DEPTH = 20;
+
+  public static void main(String[] args) throws IOException {
+    int units = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_UNITS;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+    int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HIERARCHY_DEPTH;
+    List<JavaFileObject> sourceFiles = generateSourceFiles(units, depth);
+
+    // the first compilations warm up the JIT for both configurations
+    compile(sourceFiles, false);
+    compile(sourceFiles, true);
+    long[] withoutPlugin = new long[iterations];
+    long[] withPlugin = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      withoutPlugin[i] = compile(sourceFiles, false);
+      withPlugin[i] = compile(sourceFiles, true);
+    }
+    long compileWithout = median(withoutPlugin);
+    long compileWith = median(withPlugin);
+    System.out.printf(
+        "javac wall time for %d units: %.1f ms without plugin, %.1f ms with plugin%n",
+        units, compileWithout / 1e6, compileWith / 1e6);
+    System.out.printf(
+        "plugin overhead: %.1f us per unit (%.1f%%)%n",
+        (compileWith - compileWithout) / 1e3 / units,
+        100.0 * (compileWith - compileWithout) / compileWithout);
+
+    JavacTask task = createTask(sourceFiles, List.of("-proc:none"));
+    List<CompilationUnitTree> compilationUnits = new ArrayList<>();
+    task.parse().forEach(compilationUnits::add);
+    task.analyze();
+    long nodes = countNodes(compilationUnits);
+
+    // both include converting the collected symbols to the sorted names written by the plugin
+    Consumer<CompilationUnitTree> separateScanners =
+        compilationUnit -> {
+          SymbolCollector collector = new SymbolCollector();
+          new ExportedSymbolScanner(collector).scan(compilationUnit, null);
+          new ImportedSymbolScanner(collector).scan(compilationUnit, null);
+          collector.getSortedExportedSymbolStrings();
+          collector.getSortedImportedSymbolStrings();
+        };
+    // like the plugin, the combined scanner shares its cache between compilation units
+    ScannerCache cache = new ScannerCache();
+    Consumer<CompilationUnitTree> combinedScanner =
+        compilationUnit -> {
+          SymbolCollector collector = new SymbolCollector(cache);
+          new CombinedSymbolScanner(collector, cache).scan(compilationUnit, null);
+          collector.getSortedExportedSymbolStrings();
+          collector.getSortedImportedSymbolStrings();
+        };
+    // alternate between the two so that neither benefits from running after the other
+    long[] separateTimes = new long[iterations];
+    long[] combinedTimes = new long[iterations];
+    for (int i = -iterations; i < iterations; i++) { // negative iterations only warm up
+      long separateTime = timeScanner(compilationUnits, separateScanners);
+      long combinedTime = timeScanner(compilationUnits, combinedScanner);
+      if (i >= 0) {
+        separateTimes[i] = separateTime;
+        combinedTimes[i] = combinedTime;
+      }
+    }
+    long separate = median(separateTimes);
+    long combined = median(combinedTimes);
+    System.out.printf(
+        "scan time for %d tree nodes: separate scanners %.1f ns per node, combined scanner %.1f ns"
+            + " per node%n",
+        nodes, (double) separate / nodes, (double) combined / nodes);
+  }
+
+  private static long compile(List<JavaFileObject> sourceFiles, boolean withPlugin)
+      throws IOException {
+    Path outputDirectory = Files.createTempDirectory("plugin-benchmark");
+    List<String> options =
+        new ArrayList<>(List.of("-proc:none", "-d", outputDirectory.toString()));
+    if (withPlugin) {
+      options.add("-Xplugin:" + StripeDependencyAnalyzerPlugin.NAME);
+    }
+    long start = System.nanoTime();
+    boolean success = createTask(sourceFiles, options).call();
+    long elapsed = System.nanoTime() - start;
+    if (!success) {
+      throw new IllegalStateException("Benchmark sources failed to compile");
+    }
+    return elapsed;
+  }
+
+  private static JavacTask createTask(List<JavaFileObject> sourceFiles, List<String> options) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    List<String> arguments = new ArrayList<>(options);
+    arguments.add("-classpath");
+    arguments.add(System.getProperty("java.class.path"));
+    return (JavacTask)
+        compiler.getTask(new StringWriter(), null, null, arguments, null, sourceFiles);
+  }
+
+  private static long timeScanner(
+      List<CompilationUnitTree> compilationUnits, Consumer<CompilationUnitTree> scanner) {
+    long start = System.nanoTime();
+    compilationUnits.forEach(scanner);
+    return System.nanoTime() - start;
+  }
+
+  private static long countNodes(List<CompilationUnitTree> compilationUnits) {
+    long[] nodes = new long[1];
+    TreeScanner<Void, Void> counter =
+        new TreeScanner<>() {
+          @Override
+          public Void scan(Tree tree, Void unused) {
+            if (tree != null) {
+              nodes[0]++;
+            }
+            return super.scan(tree, unused);
+          }
+        };
+    compilationUnits.forEach(compilationUnit -> counter.scan(compilationUnit, null));
+    return nodes[0];
+  }
+
+  private static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private static List<JavaFileObject> generateSourceFiles(int units, int depth) {
+    List<JavaFileObject> sourceFiles = new ArrayList<>();
+    StringBuilder hierarchy = new StringBuilder("package benchmark;\npublic class Hierarchy {\n");
+    hierarchy.append("  public interface Level0 {}\n  public static class Class0 {}\n");
+    for (int level = 1; level <= depth; level++) {
+      hierarchy.append(
+          String.format(
+              "  public interface Level%d extends Level%d {}\n"
+                  + "  public static class Class%d extends Class%d implements Level%d {}\n",
+              level, level - 1, level, level - 1, level));
+    }
+    hierarchy.append("}\n");
+    sourceFiles.add(new SourceString("benchmark/Hierarchy.java", hierarchy.toString()));
+    String deepest = "Hierarchy.Class" + depth;
+    for (int i = 0; i < units; i++) {
+      String previous = "Unit" + Math.max(0, i - 1);
+      String source =
+          String.join(
+              "\n",
+              "package benchmark;",
+              "import java.util.ArrayList;",
+              "import java.util.List;",
+              "import java.util.Map;",
+              "import java.util.HashMap;",
+              "public class Unit" + i + " extends java.util.AbstractList<String> {",
+              "  public static final int CONSTANT = " + i + ";",
+              "  private final List<String> values = new ArrayList<>();",
+              "  protected Map<String, " + previous + "> byName = new HashMap<>();",
+              "  protected " + deepest + " deep = new " + deepest + "();",
+              "  @Override public String get(int index) { return values.get(index); }",
+              "  @Override public int size() { return values.size(); }",
+              "  public int sum(int a, int b) { return a + b + CONSTANT; }",
+              "  public long sum(long a, long b) { return a + b; }",
+              "  public String describe(" + previous + " other) {",
+              "    StringBuilder builder = new StringBuilder();",
+              "    for (String value : other) { builder.append(value.trim()); }",
+              "    byName.put(builder.toString(), other);",
+              "    " + deepest + " copy = deep;",
+              "    builder.append(copy.hashCode()).append(deep.toString()).append(other.deep);",
+              "    return builder.append(other.sum(1, 2)).append(sum(3L, 4L)).toString();",
+              "  }",
+              "  public static class Nested implements Comparable<Nested> {",
+              "    int weight = " + previous + ".CONSTANT;",
+              "    @Override public int compareTo(Nested o) {",
+              "      return Integer.compare(weight, o.weight);",
+              "    }",
+              "  }",
+              "  private static class Hidden { void run() { new Nested().compareTo(null); } }",
+              "}",
+              "");
+      sourceFiles.add(new SourceString("benchmark/Unit" + i + ".java", source));
+    }
+    return sourceFiles;
+  }
+
+  private static class SourceString extends SimpleJavaFileObject {
+    private final String source;
+
+    SourceString(String path, String source) {
+      super(URI.create("string:///" + path), Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+}
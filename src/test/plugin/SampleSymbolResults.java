@@ -0,0 +1,55 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Symbol collection results shared by the tests of the symbols file formats. */
+public class SampleSymbolResults {
+
+  public static final SymbolCollectionResult FOO =
+      SymbolCollectionResult.create(
+          "src/main/java/com/example/Foo.java",
+          "com.example",
+          "//src/main/java/com/example:lib",
+          List.of("com.example.Foo", "com.example.Foo.<init>", "com.example.Foo.ünïcödé"),
+          List.of("java.lang.Object", "java.lang.Object.<init>", "com.example.Bar"));
+
+  public static final SymbolCollectionResult BAR =
+      SymbolCollectionResult.create(
+          "src/main/java/com/example/Bar.java",
+          "com.example",
+          "//src/main/java/com/example:lib",
+          List.of("com.example.Bar"),
+          List.of());
+
+  private SampleSymbolResults() {}
+
+  /** Encodes the results in a symbols file format. */
+  public static byte[] write(SymbolsFileFormat format, List<SymbolCollectionResult> results)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (format == SymbolsFileFormat.JSON) {
+      Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      JsonSymbolsFormat.write(results, writer);
+    } else {
+      BinarySymbolsFormat.write(results, out);
+    }
+    return out.toByteArray();
+  }
+
+  /** Decodes every result of a symbols file format. */
+  public static List<SymbolCollectionResult> read(SymbolsFileFormat format, byte[] input)
+      throws IOException {
+    ByteArrayInputStream in = new ByteArrayInputStream(input);
+    if (format == SymbolsFileFormat.JSON) {
+      return JsonSymbolsFormat.read(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+    return BinarySymbolsFormat.read(in);
+  }
+}
@@ -0,0 +1,43 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ScannerCacheTest {
+
+  /**
+   * Tests that sharing a cache between the scanners of every compilation unit collects exactly the
+   * same symbols as giving each compilation unit its own cache, even once the cache is warm.
+   */
+  @Test
+  public void testSharedCacheMatchesFreshCache() throws IOException {
+    List<CompilationUnitTree> compilationUnits = TestCompiler.analyzeAllTestResources();
+    ScannerCache sharedCache = new ScannerCache();
+    for (int pass = 0; pass < 2; pass++) {
+      for (CompilationUnitTree compilationUnit : compilationUnits) {
+        ScannerCache freshCache = new ScannerCache();
+        SymbolCollector freshCollector = new SymbolCollector(freshCache);
+        new CombinedSymbolScanner(freshCollector, freshCache).scan(compilationUnit, null);
+
+        SymbolCollector sharedCollector = new SymbolCollector(sharedCache);
+        new CombinedSymbolScanner(sharedCollector, sharedCache).scan(compilationUnit, null);
+
+        String sourceFileName = compilationUnit.getSourceFile().getName();
+        Assert.assertEquals(
+            sourceFileName,
+            freshCollector.getSortedExportedSymbolStrings(),
+            sharedCollector.getSortedExportedSymbolStrings());
+        Assert.assertEquals(
+            sourceFileName,
+            freshCollector.getSortedImportedSymbolStrings(),
+            sharedCollector.getSortedImportedSymbolStrings());
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SourceFileNamesTest {
+
+  private static final Path WORKING_DIRECTORY =
+      Path.of("/sandbox/linux-sandbox/12/execroot/__main__");
+
+  /** Tests that names relative to the execution root are left as they are. */
+  @Test
+  public void testRelativeNameIsUnchanged() {
+    Assert.assertEquals(
+        "src/main/Foo.java",
+        SourceFileNames.toWorkspaceRelative("src/main/Foo.java", WORKING_DIRECTORY));
+  }
+
+  /** Tests that names inside the working directory are made relative to it. */
+  @Test
+  public void testNameInWorkingDirectory() {
+    Assert.assertEquals(
+        "src/main/Foo.java",
+        SourceFileNames.toWorkspaceRelative(
+            WORKING_DIRECTORY + "/src/main/Foo.java", WORKING_DIRECTORY));
+  }
+
+  /** Tests that names inside another execution root are made relative to its workspace. */
+  @Test
+  public void testNameInOtherExecutionRoot() {
+    Assert.assertEquals(
+        "src/main/Foo.java",
+        SourceFileNames.toWorkspaceRelative(
+            "/home/user/.cache/bazel/_bazel_user/abc/execroot/__main__/src/main/Foo.java",
+            WORKING_DIRECTORY));
+  }
+
+  /** Tests that other absolute names, like those of test resources, are left as they are. */
+  @Test
+  public void testOtherAbsoluteNameIsUnchanged() {
+    Assert.assertEquals(
+        "/testResources/plugin/Foo.java",
+        SourceFileNames.toWorkspaceRelative("/testResources/plugin/Foo.java", WORKING_DIRECTORY));
+  }
+}
@@ -0,0 +1,109 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Compares the analyzer compilation of the plugin test resources when javac generates bytecode,
+ * as the Bazel aspect used to, with stopping javac after flow analysis. For each, it reports the
+ * wall time of the compilation and the size of the output jar that the aspect extracts the
+ * symbols file from.
+ *
+ * <p>Usage: {@code bazel run //src/test/plugin:StopAfterFlowBenchmark -- [iterations]}
+ */
+public class StopAfterFlowBenchmark {
+
+  private static final int DEFAULT_ITERATIONS = 20;
+
+  public static void main(String[] args) throws IOException {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+    List<JavaFileObject> sourceFiles = TestCompiler.getAllTestResources();
+
+    long[] fullTimes = new long[iterations];
+    long[] stopAfterFlowTimes = new long[iterations];
+    long fullJarBytes = 0;
+    long stopAfterFlowJarBytes = 0;
+    // alternate between the two so that neither benefits from running after the other
+    for (int i = -iterations; i < iterations; i++) { // negative iterations only warm up
+      Path fullOutput = Files.createTempDirectory("full");
+      long fullTime = compile(sourceFiles, fullOutput, List.of());
+      Path stopAfterFlowOutput = Files.createTempDirectory("stop-after-flow");
+      long stopAfterFlowTime =
+          compile(
+              sourceFiles, stopAfterFlowOutput, List.of(TestCompiler.STOP_AFTER_FLOW_OPTION));
+      if (i >= 0) {
+        fullTimes[i] = fullTime;
+        stopAfterFlowTimes[i] = stopAfterFlowTime;
+        fullJarBytes = getJarSize(fullOutput);
+        stopAfterFlowJarBytes = getJarSize(stopAfterFlowOutput);
+      }
+    }
+
+    System.out.printf(
+        "%d source files, median of %d compilations%n", sourceFiles.size(), iterations);
+    System.out.printf(
+        "generate bytecode: %.1f ms, output jar %d bytes%n",
+        median(fullTimes) / 1e6, fullJarBytes);
+    System.out.printf(
+        "stop after flow:   %.1f ms, output jar %d bytes%n",
+        median(stopAfterFlowTimes) / 1e6, stopAfterFlowJarBytes);
+  }
+
+  private static long compile(
+      List<JavaFileObject> sourceFiles, Path outputDirectory, List<String> javacOptions) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    List<String> arguments = new ArrayList<>(javacOptions);
+    arguments.addAll(
+        List.of(
+            "-proc:none",
+            "-d",
+            outputDirectory.toString(),
+            "-classpath",
+            System.getProperty("java.class.path"),
+            "-Xplugin:" + StripeDependencyAnalyzerPlugin.NAME));
+    long start = System.nanoTime();
+    boolean success =
+        compiler.getTask(new StringWriter(), null, null, arguments, null, sourceFiles).call();
+    long elapsed = System.nanoTime() - start;
+    if (!success) {
+      throw new IllegalStateException("Benchmark sources failed to compile");
+    }
+    return elapsed;
+  }
+
+  /** Gets the size of a jar of every file in the output directory, as Bazel would write it. */
+  private static long getJarSize(Path outputDirectory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(outputDirectory)) {
+      files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    ByteArrayOutputStream jar = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(jar)) {
+      for (Path file : files) {
+        zip.putNextEntry(new ZipEntry(outputDirectory.relativize(file).toString()));
+        zip.write(Files.readAllBytes(file));
+        zip.closeEntry();
+      }
+    }
+    return jar.size();
+  }
+
+  private static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
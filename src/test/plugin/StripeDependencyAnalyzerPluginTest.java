@@ -6,6 +6,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.testing.compile.JavaFileObjects;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.tools.JavaFileObject;
@@ -183,6 +184,40 @@ public class StripeDependencyAnalyzerPluginTest {
     Assert.assertEquals(expectedImportedSymbols, result.getImportedSymbols());
   }
 
+  /**
+   * Tests that every class and interface in a deep hierarchy is collected as an imported symbol,
+   * including interfaces that are implemented at several levels of the hierarchy.
+   */
+  @Test
+  public void testImportsDeepHierarchy() throws IOException {
+    JavaFileObject source =
+        JavaFileObjects.forResource("testResources/plugin/ImportsDeepHierarchy.java");
+    JavaFileObject hierarchySource =
+        JavaFileObjects.forResource("testResources/plugin/DeepHierarchy.java");
+    compileSourceFiles(source, hierarchySource);
+    SymbolCollectionResult result = testCompiler.getSymbolCollectionResult(source);
+
+    Set<String> expectedImportedSymbols =
+        ImmutableSet.<String>builder()
+            .addAll(
+                qualifySymbols(
+                    getPackageName(hierarchySource),
+                    Set.of(
+                        "DeepHierarchy",
+                        "DeepHierarchy.Base",
+                        "DeepHierarchy.Middle",
+                        "DeepHierarchy.Leaf",
+                        "DeepHierarchy.Leaf.next",
+                        "DeepHierarchy.Level0",
+                        "DeepHierarchy.Level1",
+                        "DeepHierarchy.Level2",
+                        "DeepHierarchy.Level3")))
+            .add("java.io.Serializable")
+            .addAll(OBJECT_IMPORTS)
+            .build();
+    Assert.assertEquals(expectedImportedSymbols, result.getImportedSymbols());
+  }
+
   /** Tests that annotations are collected as imported symbols. */
   @Test
   public void testImportsAnnotations() throws IOException {
@@ -410,6 +445,128 @@ public class StripeDependencyAnalyzerPluginTest {
     Assert.assertEquals(expectedImportedSymbols, result.getImportedSymbols());
   }
 
+  /**
+   * Tests that the results of every compilation unit are written to one symbols file, and that a
+   * compilation unit with several top-level classes is only recorded once.
+   */
+  @Test
+  public void testSingleSymbolsFileForAllCompilationUnits() throws IOException {
+    JavaFileObject multipleClassesSource =
+        JavaFileObjects.forResource("testResources/plugin/MultipleTopLevelClasses.java");
+    JavaFileObject exportsStaticsSource =
+        JavaFileObjects.forResource("testResources/plugin/ExportsStatics.java");
+    compileSourceFiles(multipleClassesSource, exportsStaticsSource);
+
+    Assert.assertEquals(2, testCompiler.getSymbolCollectionResults().size());
+    SymbolCollectionResult result = testCompiler.getSymbolCollectionResult(multipleClassesSource);
+    Set<String> expectedExportedSymbols =
+        qualifySymbols(
+            getPackageName(multipleClassesSource),
+            Set.of(
+                "MultipleTopLevelClasses",
+                "MultipleTopLevelClasses.<init>",
+                "SecondTopLevelClass",
+                "SecondTopLevelClass.<init>"));
+    Assert.assertEquals(expectedExportedSymbols, result.getExportedSymbols());
+  }
+
+  /** Tests that the JSON debug format records the same symbols as the default binary format. */
+  @Test
+  public void testJsonSymbolsFormatMatchesBinary() throws IOException {
+    JavaFileObject source =
+        JavaFileObjects.forResource("testResources/plugin/ImportsMemberSelects.java");
+    JavaFileObject exportsSource =
+        JavaFileObjects.forResource("testResources/plugin/ExportsStatics.java");
+    compileSourceFiles(source, exportsSource);
+    SymbolCollectionResult binaryResult = testCompiler.getSymbolCollectionResult(source);
+
+    testCompiler =
+        new TestCompiler()
+            .setPlugin(StripeDependencyAnalyzerPlugin.NAME)
+            .addPluginArguments(
+                PluginOptions.SYMBOLS_FORMAT_FLAG + SymbolsFileFormat.JSON.getFlagValue());
+    compileSourceFiles(source, exportsSource);
+    SymbolCollectionResult jsonResult = testCompiler.getSymbolCollectionResult(source);
+
+    Assert.assertEquals(binaryResult, jsonResult);
+  }
+
+  /**
+   * Tests that the plugin collects the same symbols when javac stops after flow analysis, as the
+   * Bazel aspect does, as when javac goes on to generate bytecode.
+   */
+  @Test
+  public void testStopAfterFlowMatchesFullCompilation() throws IOException {
+    JavaFileObject source =
+        JavaFileObjects.forResource("testResources/plugin/ImportsOverloadedMethod.java");
+    JavaFileObject exportsSource =
+        JavaFileObjects.forResource("testResources/plugin/ExportsOverloadedMethod.java");
+    compileSourceFiles(source, exportsSource);
+    List<SymbolCollectionResult> fullCompilationResults =
+        testCompiler.getSymbolCollectionResults();
+
+    testCompiler =
+        new TestCompiler()
+            .setPlugin(StripeDependencyAnalyzerPlugin.NAME)
+            .addJavacOptions(TestCompiler.STOP_AFTER_FLOW_OPTION);
+    compileSourceFiles(source, exportsSource);
+
+    Assert.assertEquals(fullCompilationResults, testCompiler.getSymbolCollectionResults());
+  }
+
+  /**
+   * Tests that the plugin records one entry per compilation unit in its stats file, with the
+   * number of symbols that the unit produced.
+   */
+  @Test
+  public void testWritesCompilationStats() throws IOException {
+    JavaFileObject source =
+        JavaFileObjects.forResource("testResources/plugin/ImportsMemberSelects.java");
+    JavaFileObject exportsSource =
+        JavaFileObjects.forResource("testResources/plugin/ExportsStatics.java");
+    testCompiler =
+        new TestCompiler()
+            .setPlugin(StripeDependencyAnalyzerPlugin.NAME)
+            .addPluginArguments("//src/test:stats", PluginOptions.WRITE_STATS_FLAG);
+    compileSourceFiles(source, exportsSource);
+    CompilationStats stats = testCompiler.getCompilationStats();
+
+    Assert.assertEquals("//src/test:stats", stats.getBazelTargetLabel());
+    Assert.assertEquals(2, stats.getUnits().size());
+    Assert.assertTrue(stats.getSymbolsFileBytes() > 0);
+    Assert.assertTrue(stats.getCompilationTime().compareTo(stats.getScanTime()) > 0);
+    for (CompilationStats.UnitStats unit : stats.getUnits()) {
+      SymbolCollectionResult result =
+          source.getName().equals(unit.getSourceFileName())
+              ? testCompiler.getSymbolCollectionResult(source)
+              : testCompiler.getSymbolCollectionResult(exportsSource);
+      Assert.assertEquals(unit.getSourceFileName(), result.getSourceFileName());
+      Assert.assertEquals(result.getExportedSymbols().size(), unit.getExportedSymbolCount());
+      Assert.assertEquals(result.getImportedSymbols().size(), unit.getImportedSymbolCount());
+      Assert.assertTrue(unit.getSymbolBytes() > 0);
+    }
+  }
+
+  /**
+   * Tests that the symbols file lists its results by source file name, so that compiling the same
+   * sources in any order writes the same file and the output can be cached.
+   */
+  @Test
+  public void testSymbolsFileIsSortedBySourceFileName() throws IOException {
+    JavaFileObject[] sourceFiles = {
+      JavaFileObjects.forResource("testResources/plugin/Superclass.java"),
+      JavaFileObjects.forResource("testResources/plugin/ExportsStatics.java"),
+      JavaFileObjects.forResource("testResources/plugin/ImportsMemberSelects.java")
+    };
+    compileSourceFiles(sourceFiles);
+    List<String> sourceFileNames =
+        testCompiler.getSymbolCollectionResults().stream()
+            .map(SymbolCollectionResult::getSourceFileName)
+            .collect(Collectors.toList());
+    Assert.assertEquals(
+        sourceFileNames.stream().sorted().collect(Collectors.toList()), sourceFileNames);
+  }
+
   private void compileSourceFiles(JavaFileObject... sourceFiles) throws IOException {
     boolean compilationResult = testCompiler.addSourceFiles(sourceFiles).compile();
     Assert.assertTrue(
@@ -0,0 +1,97 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.JavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SymbolGranularityTest {
+
+  /** Tests that members and nested classes are collapsed into their top-level class. */
+  @Test
+  public void testClassGranularityCollapsesMembers() throws IOException {
+    JavaFileObject source =
+        JavaFileObjects.forResource("testResources/plugin/ImportsMemberSelects.java");
+    JavaFileObject exportsSource =
+        JavaFileObjects.forResource("testResources/plugin/ExportsStatics.java");
+    TestCompiler testCompiler = compile(SymbolGranularity.CLASS, source, exportsSource);
+
+    String exportsStatics = TestCompiler.getPackageName(exportsSource) + ".ExportsStatics";
+    Assert.assertEquals(
+        Set.of(exportsStatics),
+        testCompiler.getSymbolCollectionResult(exportsSource).getExportedSymbols());
+    Set<String> importedSymbols =
+        testCompiler.getSymbolCollectionResult(source).getImportedSymbols();
+    Assert.assertTrue(importedSymbols.contains(exportsStatics));
+    Assert.assertFalse(importedSymbols.contains(exportsStatics + ".CONSTANT"));
+    Assert.assertFalse(importedSymbols.contains("java.lang.Object.<init>"));
+  }
+
+  /**
+   * Tests that for every test source file, the source files that it imports a symbol from are the
+   * same whether symbols are collected per member or per class, so that both give the same unused
+   * dependencies, and that collecting per class imports fewer symbols.
+   */
+  @Test
+  public void testClassGranularityFindsSameFileDependencies() throws IOException {
+    JavaFileObject[] sourceFiles =
+        TestCompiler.getAllTestResources().toArray(new JavaFileObject[0]);
+    List<SymbolCollectionResult> memberResults =
+        compile(SymbolGranularity.MEMBER, sourceFiles).getSymbolCollectionResults();
+    List<SymbolCollectionResult> classResults =
+        compile(SymbolGranularity.CLASS, sourceFiles).getSymbolCollectionResults();
+
+    Map<String, Set<String>> memberDependencies = getFileDependencies(memberResults);
+    Assert.assertTrue(memberDependencies.values().stream().anyMatch(files -> !files.isEmpty()));
+    Assert.assertEquals(memberDependencies, getFileDependencies(classResults));
+    Assert.assertTrue(countImportedSymbols(classResults) < countImportedSymbols(memberResults));
+  }
+
+  private static TestCompiler compile(
+      SymbolGranularity granularity, JavaFileObject... sourceFiles) throws IOException {
+    TestCompiler testCompiler =
+        new TestCompiler()
+            .setPlugin(StripeDependencyAnalyzerPlugin.NAME)
+            .addPluginArguments(
+                PluginOptions.SYMBOL_GRANULARITY_FLAG + granularity.getFlagValue())
+            .addSourceFiles(sourceFiles);
+    Assert.assertTrue(testCompiler.getCompilationOutput(), testCompiler.compile());
+    return testCompiler;
+  }
+
+  /** Maps every source file to the other source files that export a symbol that it imports. */
+  private static Map<String, Set<String>> getFileDependencies(
+      List<SymbolCollectionResult> results) {
+    Map<String, Set<String>> symbolToExporterFiles = new HashMap<>();
+    for (SymbolCollectionResult result : results) {
+      for (String symbol : result.getExportedSymbols()) {
+        symbolToExporterFiles
+            .computeIfAbsent(symbol, s -> new HashSet<>())
+            .add(result.getSourceFileName());
+      }
+    }
+    Map<String, Set<String>> fileDependencies = new HashMap<>();
+    for (SymbolCollectionResult result : results) {
+      Set<String> dependencies = new HashSet<>();
+      for (String symbol : result.getImportedSymbols()) {
+        dependencies.addAll(symbolToExporterFiles.getOrDefault(symbol, Set.of()));
+      }
+      dependencies.remove(result.getSourceFileName());
+      fileDependencies.put(result.getSourceFileName(), dependencies);
+    }
+    return fileDependencies;
+  }
+
+  private static int countImportedSymbols(List<SymbolCollectionResult> results) {
+    return results.stream().mapToInt(result -> result.getImportedSymbols().size()).sum();
+  }
+}
@@ -0,0 +1,98 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SymbolsFileExtractorTest {
+
+  private Path directory;
+  private Path jar;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("extractor-test");
+    jar = directory.resolve("analysis.jar");
+    try (OutputStream outputStream = Files.newOutputStream(jar);
+        ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+      for (String name : List.of("a-all-symbols.bin", "a-all-symbols.bin.stats.json", "A.class")) {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(("contents of " + name).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+  }
+
+  /** Tests that only the named entries are copied out of the jar. */
+  @Test
+  public void testExtractsNamedEntries() throws IOException {
+    Path output = directory.resolve("output");
+    SymbolsFileExtractor.extract(
+        List.of(
+            SymbolsFileExtractor.JAR_FLAG + jar,
+            SymbolsFileExtractor.OUTPUT_DIR_FLAG + output,
+            "a-all-symbols.bin",
+            "a-all-symbols.bin.stats.json"));
+
+    Assert.assertEquals(
+        "contents of a-all-symbols.bin", Files.readString(output.resolve("a-all-symbols.bin")));
+    Assert.assertEquals(
+        "contents of a-all-symbols.bin.stats.json",
+        Files.readString(output.resolve("a-all-symbols.bin.stats.json")));
+    Assert.assertFalse(Files.exists(output.resolve("A.class")));
+  }
+
+  /**
+   * Tests that a persistent worker answers every request with its request id, and that a failed
+   * request does not keep the worker from handling the next one.
+   */
+  @Test
+  public void testPersistentWorkerHandlesRequests() throws IOException {
+    Path output = directory.resolve("output");
+    Path flagFile = directory.resolve("flags");
+    Files.write(
+        flagFile,
+        List.of(SymbolsFileExtractor.OUTPUT_DIR_FLAG + output, "a-all-symbols.bin"));
+    String requests =
+        String.format(
+            "{\"arguments\": [\"%s%s\", \"%s%s\", \"missing.bin\"], \"requestId\": 1}\n"
+                + "{\"arguments\": [\"%s%s\", \"@%s\"], \"requestId\": 2}\n",
+            SymbolsFileExtractor.JAR_FLAG,
+            jar,
+            SymbolsFileExtractor.OUTPUT_DIR_FLAG,
+            output,
+            SymbolsFileExtractor.JAR_FLAG,
+            jar,
+            flagFile);
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    SymbolsFileExtractor.runPersistentWorker(
+        new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), responses);
+
+    String[] lines = responses.toString(StandardCharsets.UTF_8).split("\n");
+    Assert.assertEquals(2, lines.length);
+    JsonObject failed = JsonParser.parseString(lines[0]).getAsJsonObject();
+    Assert.assertEquals(1, failed.get("requestId").getAsInt());
+    Assert.assertEquals(1, failed.get("exitCode").getAsInt());
+    Assert.assertTrue(failed.get("output").getAsString().contains("missing.bin"));
+    JsonObject succeeded = JsonParser.parseString(lines[1]).getAsJsonObject();
+    Assert.assertEquals(2, succeeded.get("requestId").getAsInt());
+    Assert.assertEquals(0, succeeded.get("exitCode").getAsInt());
+    Assert.assertEquals(
+        "contents of a-all-symbols.bin", Files.readString(output.resolve("a-all-symbols.bin")));
+  }
+}
@@ -0,0 +1,58 @@
+package com.stripe.build.dependencyanalyzer.plugin;
+
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.BAR;
+import static com.stripe.build.dependencyanalyzer.plugin.SampleSymbolResults.FOO;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Tests what every symbols file format must do, once for each format. */
+@RunWith(Parameterized.class)
+public class SymbolsFileFormatTest {
+
+  @Parameters(name = "{0}")
+  public static List<SymbolsFileFormat> formats() {
+    return List.of(SymbolsFileFormat.values());
+  }
+
+  private final SymbolsFileFormat format;
+
+  public SymbolsFileFormatTest(SymbolsFileFormat format) {
+    this.format = format;
+  }
+
+  /** Tests that results survive a round trip through the format unchanged. */
+  @Test
+  public void testRoundTrip() throws IOException {
+    byte[] encoded = SampleSymbolResults.write(format, List.of(FOO, BAR));
+
+    Assert.assertEquals(List.of(FOO, BAR), SampleSymbolResults.read(format, encoded));
+  }
+
+  /** Tests that a file without any results reads back as no results. */
+  @Test
+  public void testRoundTripEmpty() throws IOException {
+    byte[] encoded = SampleSymbolResults.write(format, List.of());
+
+    Assert.assertEquals(List.of(), SampleSymbolResults.read(format, encoded));
+  }
+
+  /** Tests that truncated input is rejected rather than silently misread. */
+  @Test
+  public void testRejectsTruncatedInput() throws IOException {
+    byte[] encoded = SampleSymbolResults.write(format, List.of(FOO));
+    byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+    try {
+      SampleSymbolResults.read(format, truncated);
+      Assert.fail("Expected reading malformed input to fail");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+}
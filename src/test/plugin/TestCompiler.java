@@ -1,6 +1,9 @@
 package com.stripe.build.dependencyanalyzer.plugin;
 
 import com.google.common.base.Splitter;
+import com.google.testing.compile.JavaFileObjects;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -18,19 +21,53 @@ import org.apache.commons.lang3.StringUtils;
 
 public class TestCompiler {
 
+  /**
+   * Makes javac stop once flow analysis has finished instead of generating bytecode, like the
+   * Bazel aspect does by default, since the plugin only needs analyzed trees.
+   */
+  public static final String STOP_AFTER_FLOW_OPTION = "-XDshould-stop.ifNoError=FLOW";
+
+  /** Every source file in the plugin test resources, which all compile together. */
+  private static final List<String> TEST_RESOURCES =
+      List.of(
+          "ConstrainedType.java",
+          "DeepHierarchy.java",
+          "ExportsMembersAccessModifiers.java",
+          "ExportsNestedClass.java",
+          "ExportsNestedPrivateClass.java",
+          "ExportsOverloadedMethod.java",
+          "ExportsStatics.java",
+          "ImportsAnnotations.java",
+          "ImportsClassExtension.java",
+          "ImportsConstrainedType.java",
+          "ImportsConstraints.java",
+          "ImportsDeepHierarchy.java",
+          "ImportsFullyQualifiedNames.java",
+          "ImportsIgnoreDefinedInFile.java",
+          "ImportsInvokedMethodArgumentType.java",
+          "ImportsMemberSelects.java",
+          "ImportsMembersDefinitions.java",
+          "ImportsOverloadedMethod.java",
+          "ImportsStatics.java",
+          "MultipleTopLevelClasses.java",
+          "SimpleInterface.java",
+          "Superclass.java");
+
   private Optional<String> plugin = Optional.empty();
+  private final List<String> pluginArguments = new ArrayList<>();
+  private final List<String> javacOptions = new ArrayList<>();
   private final List<JavaFileObject> sourceFiles = new ArrayList<>();
   private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
   private final StandardJavaFileManager javaFileManager =
       compiler.getStandardFileManager(null, null, null);
   private String compilationOutput = "";
-  private final SymbolsFileManager symbolsFileManager = new SymbolsFileManager(javaFileManager);
-  private final Map<JavaFileObject, String> sourceFileToPackageName = new HashMap<>();
-  private final Map<JavaFileObject, SymbolCollectionResult> sourceFileToSymbolsResults =
+  private final List<SymbolCollectionResult> symbolsResults = new ArrayList<>();
+  private final Map<String, SymbolCollectionResult> sourceFileNameToSymbolsResults =
       new HashMap<>();
+  private Optional<CompilationStats> compilationStats = Optional.empty();
 
   /**
-   * Compiles Java source files and reads the resulting symbols files.
+   * Compiles Java source files and reads the resulting symbols and stats files.
    *
    * @return true if all files compiled successfully, false otherwise
    */
@@ -41,12 +78,14 @@ public class TestCompiler {
     boolean result = task.call();
     compilationOutput = output.toString();
     if (result) {
-      for (JavaFileObject sourceFile : sourceFiles) {
-        sourceFileToSymbolsResults.put(
-            sourceFile,
-            symbolsFileManager.readResultsFromSymbolsFile(
-                sourceFile.getName(),
-                Objects.requireNonNull(sourceFileToPackageName.get(sourceFile))));
+      PluginOptions options = PluginOptions.parse(pluginArguments.toArray(new String[0]));
+      SymbolsFileManager symbolsFileManager = options.createSymbolsFileManager(javaFileManager);
+      symbolsResults.addAll(symbolsFileManager.readResultsFromSymbolsFile());
+      if (options.getWriteStats()) {
+        compilationStats = Optional.of(symbolsFileManager.readCompilationStats());
+      }
+      for (SymbolCollectionResult symbolsResult : symbolsResults) {
+        sourceFileNameToSymbolsResults.put(symbolsResult.getSourceFileName(), symbolsResult);
       }
     }
     javaFileManager.close();
@@ -58,18 +97,34 @@ public class TestCompiler {
     return this;
   }
 
-  public TestCompiler addSourceFiles(JavaFileObject... files) throws IOException {
-    for (JavaFileObject file : files) {
-      sourceFiles.add(file);
-      sourceFileToPackageName.put(file, getPackageName(file));
-    }
+  public TestCompiler addPluginArguments(String... arguments) {
+    pluginArguments.addAll(List.of(arguments));
+    return this;
+  }
+
+  public TestCompiler addJavacOptions(String... options) {
+    javacOptions.addAll(List.of(options));
+    return this;
+  }
+
+  public TestCompiler addSourceFiles(JavaFileObject... files) {
+    sourceFiles.addAll(List.of(files));
     return this;
   }
 
   public SymbolCollectionResult getSymbolCollectionResult(JavaFileObject file) {
     return Objects.requireNonNull(
-        sourceFileToSymbolsResults.get(file),
-        String.format("Could not find *-symbols.json file for %s", file.getName()));
+        sourceFileNameToSymbolsResults.get(file.getName()),
+        String.format("Could not find symbols for %s", file.getName()));
+  }
+
+  /** Gets every result in the symbols file, in the order they were written. */
+  public List<SymbolCollectionResult> getSymbolCollectionResults() {
+    return symbolsResults;
+  }
+
+  public CompilationStats getCompilationStats() {
+    return compilationStats.orElseThrow();
   }
 
   public String getCompilationOutput() {
@@ -80,10 +135,51 @@ public class TestCompiler {
     List<String> arguments = new ArrayList<>();
     arguments.add("-classpath");
     arguments.add(System.getProperty("java.class.path"));
-    plugin.ifPresent(s -> arguments.add(String.format("-Xplugin:%s", s)));
+    arguments.addAll(javacOptions);
+    plugin.ifPresent(
+        s -> {
+          List<String> pluginParts = new ArrayList<>();
+          pluginParts.add(s);
+          pluginParts.addAll(pluginArguments);
+          arguments.add(String.format("-Xplugin:%s", String.join(" ", pluginParts)));
+        });
     return arguments;
   }
 
+  public static List<JavaFileObject> getAllTestResources() {
+    List<JavaFileObject> sourceFiles = new ArrayList<>();
+    for (String resource : TEST_RESOURCES) {
+      sourceFiles.add(JavaFileObjects.forResource("testResources/plugin/" + resource));
+    }
+    return sourceFiles;
+  }
+
+  /**
+   * Parses and analyzes every test resource in a single javac task without running the plugin, so
+   * that tests can run scanners over the attributed trees directly.
+   */
+  public static List<CompilationUnitTree> analyzeAllTestResources() throws IOException {
+    List<JavaFileObject> sourceFiles = getAllTestResources();
+    StringWriter output = new StringWriter();
+    JavacTask task =
+        (JavacTask)
+            ToolProvider.getSystemJavaCompiler()
+                .getTask(
+                    output,
+                    null,
+                    null,
+                    List.of("-classpath", System.getProperty("java.class.path"), "-proc:none"),
+                    null,
+                    sourceFiles);
+    List<CompilationUnitTree> compilationUnits = new ArrayList<>();
+    task.parse().forEach(compilationUnits::add);
+    task.analyze();
+    if (!output.toString().isEmpty()) {
+      throw new IllegalStateException("Analysis of test resources failed:\n" + output);
+    }
+    return compilationUnits;
+  }
+
   public static String getPackageName(JavaFileObject file) throws IOException {
     BufferedReader reader = new BufferedReader(file.openReader(false));
     List<String> firstLineTokens = Splitter.on(" ").splitToList(reader.readLine());
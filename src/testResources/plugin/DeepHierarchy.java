@@ -0,0 +1,21 @@
+package uppsala.src.test.resources.com.stripe.build.dependencyanalyzer;
+
+import java.io.Serializable;
+
+public class DeepHierarchy {
+  public interface Level0 extends Serializable {}
+
+  public interface Level1 extends Level0 {}
+
+  public interface Level2 extends Level1, Level0 {}
+
+  public interface Level3 extends Level2, Level1 {}
+
+  public abstract static class Base implements Level3 {}
+
+  public abstract static class Middle extends Base implements Level2 {}
+
+  public static class Leaf extends Middle implements Level1 {
+    public Leaf next;
+  }
+}
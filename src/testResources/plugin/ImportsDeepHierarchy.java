@@ -0,0 +1,11 @@
+package uppsala.src.test.resources.com.stripe.build.dependencyanalyzer;
+
+public class ImportsDeepHierarchy {
+  public DeepHierarchy.Leaf first(DeepHierarchy.Leaf leaf) {
+    DeepHierarchy.Leaf current = leaf;
+    while (current.next != null) {
+      current = current.next;
+    }
+    return current;
+  }
+}
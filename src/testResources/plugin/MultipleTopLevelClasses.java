@@ -0,0 +1,5 @@
+package uppsala.src.test.resources.com.stripe.build.dependencyanalyzer;
+
+public class MultipleTopLevelClasses {}
+
+class SecondTopLevelClass {}
@@ -29,7 +29,13 @@ BAZEL_TARGET_PATTERN_WITHOUT_DOTS=${BAZEL_TARGET_PATTERN%/...} # drop trailing /
 DB_NAME=${BAZEL_TARGET_PATTERN_WITHOUT_DOTS:2} # drop leading //
 DB_NAME=${DB_NAME//\//-}.db
 DB_PATH=$UNUSED_DEPS_DATABASES/$DB_NAME
-rm -rf "$DB_PATH" # remove old database if exists
+
+# collect replaces an old database, unless UNUSED_DEPS_RESUME is set to continue an interrupted
+# collection from its last completed shard
+COLLECT_FLAGS=(--debug --shard_size="${UNUSED_DEPS_SHARD_SIZE:-0}")
+if [[ -n "${UNUSED_DEPS_RESUME:-}" ]]; then
+    COLLECT_FLAGS+=(--resume)
+fi
 
 # collect dependency graph database
 bazel run //src/main/cli -- \
@@ -37,8 +43,7 @@ bazel run //src/main/cli -- \
     "$BAZEL_TARGET_PATTERN" \
     "$BAZEL_WORKSPACE" \
     "$DB_PATH" \
-    --ignore_cache \
-    --debug
+    "${COLLECT_FLAGS[@]}"
 
 # analyze dependency graph database and output commands to remove unused deps
 bazel run //src/main/cli -- \